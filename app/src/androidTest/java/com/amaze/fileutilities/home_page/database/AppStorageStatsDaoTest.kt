@@ -81,34 +81,6 @@ class AppStorageStatsDaoTest {
         )
     }
 
-    @Test
-    @Throws(IOException::class)
-    fun deleteOlderThanDateTest() {
-        val minDate = Date(1000)
-        val size = 1234L
-
-        val earlierDate = Date(100)
-        val laterDate = Date(5000)
-        appStorageStatsDao.insert(appName, earlierDate, size)
-        appStorageStatsDao.insert(appName, laterDate, size)
-
-        appStorageStatsDao.deleteOlderThan(minDate)
-        val allStorageStats = appStorageStatsDao.findAll()
-        Assert.assertEquals(
-            "Database should only contain one AppStorageStats entry " +
-                "but was $allStorageStats",
-            1,
-            allStorageStats.size
-        )
-        Assert.assertNotNull(
-            "Database did not contain expected entry with timestamp $laterDate " +
-                "but was $allStorageStats",
-            allStorageStats.find {
-                it.timestamp == laterDate && appEntry.packageName == it.packageName
-            }
-        )
-    }
-
     @Test
     @Throws(IOException::class)
     fun findByPackageNameTest() {
@@ -143,22 +115,63 @@ class AppStorageStatsDaoTest {
 
     @Test
     @Throws(IOException::class)
-    fun findOldestInPeriodTest() {
-        val range = LongProgression.fromClosedRange(0, 30, 10)
-        val appNames = listOf(appName, appName2)
-        for (i in range) {
-            for (name in appNames) {
-                appStorageStatsDao.insert(name, Date(i), i)
+    fun insertChangedTest() {
+        appStorageStatsDao.insertChanged(mapOf(appName to 10L, appName2 to 20L), Date(0))
+        appStorageStatsDao.insertChanged(mapOf(appName to 10L, appName2 to 30L), Date(10))
+        val allStorageStats = appStorageStatsDao.findAll()
+        Assert.assertEquals(
+            "Unchanged size of $appName should not be inserted again: $allStorageStats",
+            1,
+            allStorageStats.count { it.packageName == appName }
+        )
+        Assert.assertNotNull(
+            "Did not find changed size of $appName2: $allStorageStats",
+            allStorageStats.find {
+                it.packageName == appName2 && it.packageSize == 30L && it.timestamp == Date(10)
             }
+        )
+    }
+
+    @Test
+    @Throws(IOException::class)
+    fun deleteOlderThanKeepingLatestTest() {
+        for (i in LongProgression.fromClosedRange(0, 30, 10)) {
+            appStorageStatsDao.insert(appName, Date(i), i)
         }
-        val periodStart = Date(4)
-        val periodEnd = Date(43)
-        val entry = appStorageStatsDao.findOldestWithinPeriod(
-            appNames.first(), periodStart, periodEnd
+        appStorageStatsDao.insert(appName2, Date(0), 0)
+
+        appStorageStatsDao.deleteOlderThanKeepingLatest(Date(15))
+        val allStorageStats = appStorageStatsDao.findAll()
+        Assert.assertEquals(
+            "Should keep latest entry before date and newer entries: $allStorageStats",
+            listOf(Date(10), Date(20), Date(30)),
+            allStorageStats.filter { it.packageName == appName }.map { it.timestamp }.sorted()
+        )
+        Assert.assertNotNull(
+            "Should keep only entry of $appName2: $allStorageStats",
+            allStorageStats.find { it.packageName == appName2 }
+        )
+    }
+
+    @Test
+    @Throws(IOException::class)
+    fun findWindowsTest() {
+        for (i in LongProgression.fromClosedRange(0, 30, 10)) {
+            appStorageStatsDao.insert(appName, Date(i), i)
+        }
+        appStorageStatsDao.insert(appName2, Date(20), 5)
+        appStorageStatsDao.insert(appName2, Date(50), 7)
+
+        val windows = appStorageStatsDao.findWindows(Date(15), Date(43))
+        Assert.assertEquals(
+            "Should start at latest entry before period",
+            AppStorageStatsWindow(appName, 10, 30),
+            windows.find { it.packageName == appName }
+        )
+        Assert.assertEquals(
+            "Should start at first entry within period and ignore entries after it",
+            AppStorageStatsWindow(appName2, 5, 5),
+            windows.find { it.packageName == appName2 }
         )
-        Assert.assertNotNull(entry)
-        val statToAppName = entry!!
-        Assert.assertEquals(appNames.first(), statToAppName.packageName)
-        Assert.assertEquals(Date(10), statToAppName.timestamp)
     }
 }
@@ -24,7 +24,13 @@ import androidx.room.Room
 import androidx.room.testing.MigrationTestHelper
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.platform.app.InstrumentationRegistry
+import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_10_11
 import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_4_5
+import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_5_6
+import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_6_7
+import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_7_8
+import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_8_9
+import com.amaze.fileutilities.home_page.database.AppDatabase.Companion.MIGRATION_9_10
 import org.junit.Rule
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -36,7 +42,13 @@ class DatabaseMigrationTest {
 
     // Array of all migrations.
     private val ALL_MIGRATIONS = arrayOf(
-        MIGRATION_4_5
+        MIGRATION_4_5,
+        MIGRATION_5_6,
+        MIGRATION_6_7,
+        MIGRATION_7_8,
+        MIGRATION_8_9,
+        MIGRATION_9_10,
+        MIGRATION_10_11
     )
 
     @get:Rule
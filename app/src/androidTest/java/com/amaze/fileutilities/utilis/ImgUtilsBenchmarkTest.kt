@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.opencv.android.OpenCVLoader
+import org.opencv.core.CvType
+import org.opencv.core.Mat
+import org.opencv.core.Point
+import org.opencv.core.Scalar
+import org.opencv.core.Size
+import org.opencv.imgcodecs.Imgcodecs
+import org.opencv.imgproc.Imgproc
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.File
+import kotlin.random.Random
+
+/**
+ * Compares image analysis on reduced resolution reads ([ImgUtils.readImageForAnalysis]) against
+ * full resolution reads ([ImgUtils.readImage]), both for agreement of analysis results and
+ * for throughput, on generated large photos.
+ */
+@RunWith(AndroidJUnit4::class)
+class ImgUtilsBenchmarkTest {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(ImgUtilsBenchmarkTest::class.java)
+
+        private const val IMAGES_COUNT = 12
+        private const val IMAGE_WIDTH = 4000
+        private const val IMAGE_HEIGHT = 3000
+        private const val MIN_AGREEMENT = 0.9
+    }
+
+    private lateinit var imageFiles: List<File>
+
+    private data class AnalysisResult(
+        val isBlur: Boolean?,
+        val isLowLight: Boolean?,
+        val histogramPeaks: List<List<Pair<Int, Int>>>?
+    )
+
+    @Before
+    fun createImages() {
+        Assert.assertTrue(OpenCVLoader.initDebug())
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val random = Random(42)
+        imageFiles = (0 until IMAGES_COUNT).map {
+            index ->
+            val mat = Mat(
+                IMAGE_HEIGHT, IMAGE_WIDTH, CvType.CV_8UC3,
+                randomColor(random)
+            )
+            for (i in 0 until 30) {
+                Imgproc.rectangle(
+                    mat, randomPoint(random), randomPoint(random),
+                    randomColor(random), -1
+                )
+            }
+            when (index % 3) {
+                // blurred
+                1 -> Imgproc.GaussianBlur(mat, mat, Size(0.0, 0.0), 25.0)
+                // dark
+                2 -> mat.convertTo(mat, -1, 0.2, 0.0)
+            }
+            val file = File(context.cacheDir, "benchmark_$index.jpg")
+            Imgcodecs.imwrite(file.path, mat)
+            mat.release()
+            file
+        }
+    }
+
+    @After
+    fun deleteImages() {
+        imageFiles.forEach { it.delete() }
+    }
+
+    @Test
+    fun reducedReadAgreementTest() {
+        val fullStart = System.currentTimeMillis()
+        val fullResults = imageFiles.map { analyse(ImgUtils.readImage(it.path)) }
+        val fullMillis = System.currentTimeMillis() - fullStart
+
+        val reducedStart = System.currentTimeMillis()
+        val reducedResults = imageFiles.map { analyse(ImgUtils.readImageForAnalysis(it.path)) }
+        val reducedMillis = System.currentTimeMillis() - reducedStart
+
+        val blurAgreement = agreement(fullResults, reducedResults) {
+            full, reduced ->
+            full.isBlur == reduced.isBlur
+        }
+        val lowLightAgreement = agreement(fullResults, reducedResults) {
+            full, reduced ->
+            full.isLowLight == reduced.isLowLight
+        }
+        val histogramAgreement = agreement(fullResults, reducedResults) {
+            full, reduced ->
+            isHistogramMatch(full.histogramPeaks, reduced.histogramPeaks)
+        }
+        log.info(
+            "full resolution read: {} images/s, reduced read: {} images/s",
+            IMAGES_COUNT * 1000.0 / fullMillis.coerceAtLeast(1),
+            IMAGES_COUNT * 1000.0 / reducedMillis.coerceAtLeast(1)
+        )
+        log.info(
+            "agreement blur: {}, low light: {}, histogram: {}",
+            blurAgreement, lowLightAgreement, histogramAgreement
+        )
+        Assert.assertTrue("blur agreement $blurAgreement", blurAgreement >= MIN_AGREEMENT)
+        Assert.assertTrue(
+            "low light agreement $lowLightAgreement",
+            lowLightAgreement >= MIN_AGREEMENT
+        )
+        Assert.assertTrue(
+            "histogram agreement $histogramAgreement",
+            histogramAgreement >= MIN_AGREEMENT
+        )
+    }
+
+    @Test
+    fun reducedReadFlagTest() {
+        Assert.assertEquals(
+            Imgcodecs.IMREAD_COLOR,
+            ImgUtils.getReducedReadFlag(
+                640, 480, ImgUtils.GENERIC_LONG_SIDE, ImgUtils.GENERIC_SHORT_SIDE
+            )
+        )
+        Assert.assertEquals(
+            Imgcodecs.IMREAD_REDUCED_COLOR_2,
+            ImgUtils.getReducedReadFlag(
+                1600, 1200, ImgUtils.GENERIC_LONG_SIDE, ImgUtils.GENERIC_SHORT_SIDE
+            )
+        )
+        Assert.assertEquals(
+            Imgcodecs.IMREAD_REDUCED_COLOR_4,
+            ImgUtils.getReducedReadFlag(
+                3000, 4000, ImgUtils.GENERIC_LONG_SIDE, ImgUtils.GENERIC_SHORT_SIDE
+            )
+        )
+        Assert.assertEquals(
+            Imgcodecs.IMREAD_REDUCED_COLOR_8,
+            ImgUtils.getReducedReadFlag(
+                12000, 9000, ImgUtils.GENERIC_LONG_SIDE, ImgUtils.GENERIC_SHORT_SIDE
+            )
+        )
+        Assert.assertEquals(
+            Imgcodecs.IMREAD_COLOR,
+            ImgUtils.getReducedReadFlag(
+                -1, -1, ImgUtils.GENERIC_LONG_SIDE, ImgUtils.GENERIC_SHORT_SIDE
+            )
+        )
+    }
+
+    private fun analyse(matrix: Mat?): AnalysisResult {
+        Assert.assertNotNull(matrix)
+        val result = AnalysisResult(
+            ImgUtils.isImageBlur(matrix!!),
+            ImgUtils.isImageLowLight(matrix),
+            ImgUtils.getHistogramChannelsWithPeaks(matrix)
+        )
+        matrix.release()
+        return result
+    }
+
+    private fun agreement(
+        fullResults: List<AnalysisResult>,
+        reducedResults: List<AnalysisResult>,
+        predicate: (AnalysisResult, AnalysisResult) -> Boolean
+    ): Double {
+        return fullResults.zip(reducedResults).count {
+            predicate.invoke(it.first, it.second)
+        }.toDouble() / fullResults.size
+    }
+
+    /**
+     * Same criteria as similar images matching, enough normalized peaks match in every channel
+     */
+    private fun isHistogramMatch(
+        first: List<List<Pair<Int, Int>>>?,
+        second: List<List<Pair<Int, Int>>>?
+    ): Boolean {
+        if (first == null || second == null) {
+            return first == second
+        }
+        return first.zip(second).all {
+            (firstChannel, secondChannel) ->
+            val firstNormalized = firstChannel.map { normalizePeak(it) }.toSet()
+            secondChannel.count {
+                firstNormalized.contains(normalizePeak(it))
+            } >= ImgUtils.ASSERT_DATAPOINTS
+        }
+    }
+
+    private fun normalizePeak(peak: Pair<Int, Int>): Pair<Int, Int> {
+        return Pair(
+            peak.first / ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR,
+            peak.second / ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
+        )
+    }
+
+    private fun randomPoint(random: Random): Point {
+        return Point(
+            random.nextInt(IMAGE_WIDTH).toDouble(),
+            random.nextInt(IMAGE_HEIGHT).toDouble()
+        )
+    }
+
+    private fun randomColor(random: Random): Scalar {
+        return Scalar(
+            random.nextInt(256).toDouble(),
+            random.nextInt(256).toDouble(),
+            random.nextInt(256).toDouble()
+        )
+    }
+}
@@ -20,15 +20,16 @@
 
 package com.amaze.fileutilities.utilis
 
+import android.graphics.Bitmap
+
 object MLUtils {
-    fun processImageFeatures(path: String, successCallback: (ImgUtils.ImageFeatures) -> Unit) {
+    fun isImageMeme(bitmap: Bitmap): Boolean {
         // do nothing
+        return false
     }
 
-    fun isImageMeme(
-        path: String,
-        callback: (isMeme: Boolean) -> Unit
-    ) {
+    fun getImageFeatures(bitmap: Bitmap): ImgUtils.ImageFeatures? {
         // do nothing
+        return null
     }
 }
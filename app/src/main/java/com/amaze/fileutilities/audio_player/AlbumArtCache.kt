@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.audio_player
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.provider.MediaStore
+import android.util.LruCache
+import androidx.core.graphics.scale
+import com.amaze.fileutilities.home_page.ui.files.UriObserver
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.FileOutputStream
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * Album arts shared by all songs of an album, keyed by media store album id.
+ * Arts are decoded once as thumbnails of at most [THUMBNAIL_SIZE] px, kept in an LRU memory cache
+ * bounded by bytes, and in a disk cache of thumbnails so that they aren't decoded again from
+ * full size art across app restarts.
+ * Disk thumbnails are also keyed by last modified time of album's newest song, so that art
+ * changed along with a song isn't served stale, least recently used thumbnails are deleted once
+ * disk cache exceeds [MAX_DISK_CACHE_BYTES]. Memory cache and albums known to have no art are
+ * cleared whenever audio media store changes.
+ * Lists load arts through Glide using [AlbumArt] as model, see [AlbumArtModelLoader].
+ */
+object AlbumArtCache {
+
+    private val log: Logger = LoggerFactory.getLogger(AlbumArtCache::class.java)
+
+    private const val THUMBNAIL_SIZE = 256
+    private const val THUMBNAIL_QUALITY = 90
+    private const val DISK_CACHE_DIR = "album_art"
+    private const val MAX_MEMORY_CACHE_BYTES = 16L * 1024 * 1024
+    private const val MAX_DISK_CACHE_BYTES = 8L * 1024 * 1024
+
+    /**
+     * Glide model for art of album [albumId]
+     */
+    data class AlbumArt(val albumId: Long)
+
+    private val memoryCache = object : LruCache<Long, Bitmap>(
+        (Runtime.getRuntime().maxMemory() / 16).coerceAtMost(MAX_MEMORY_CACHE_BYTES).toInt()
+    ) {
+        override fun sizeOf(key: Long, value: Bitmap): Int {
+            return value.byteCount
+        }
+    }
+
+    // albums known to have no art, so that media store isn't asked again for each song
+    private val missingAlbumIds = Collections.newSetFromMap(ConcurrentHashMap<Long, Boolean>())
+    private val observerRegistered = AtomicBoolean(false)
+
+    private val mediaStoreObserver = UriObserver(null) {
+        memoryCache.evictAll()
+        missingAlbumIds.clear()
+    }
+
+    /**
+     * Thumbnail of album art, from memory, disk, or decoded from media store in that order.
+     * Blocks on disk reads, don't call on main thread.
+     */
+    fun getAlbumArt(context: Context, albumId: Long): Bitmap? {
+        registerMediaStoreObserver(context.applicationContext)
+        memoryCache.get(albumId)?.let {
+            return it
+        }
+        if (missingAlbumIds.contains(albumId)) {
+            return null
+        }
+        val diskFile = getDiskFile(context, albumId)
+        var bitmap = readFromDisk(diskFile)
+        if (bitmap == null) {
+            bitmap = decodeThumbnail(context, albumId)
+            if (bitmap == null) {
+                missingAlbumIds.add(albumId)
+                return null
+            }
+            writeToDisk(diskFile, bitmap)
+        }
+        memoryCache.put(albumId, bitmap)
+        return bitmap
+    }
+
+    private fun registerMediaStoreObserver(appContext: Context) {
+        if (observerRegistered.compareAndSet(false, true)) {
+            appContext.contentResolver.registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, mediaStoreObserver
+            )
+        }
+    }
+
+    private fun getDiskFile(context: Context, albumId: Long): File {
+        val version = getAlbumVersion(context, albumId)
+        return File(File(context.cacheDir, DISK_CACHE_DIR), "${albumId}_$version.jpg")
+    }
+
+    /**
+     * Last modified time of newest song of album, 0 if it can't be queried, changes whenever
+     * album art may have. Queries media store, don't call on main thread.
+     */
+    fun getAlbumVersion(context: Context, albumId: Long): Long {
+        try {
+            context.contentResolver.query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                arrayOf(MediaStore.Audio.Media.DATE_MODIFIED),
+                "${MediaStore.Audio.Media.ALBUM_ID}=?", arrayOf(albumId.toString()),
+                "${MediaStore.Audio.Media.DATE_MODIFIED} DESC"
+            )?.use {
+                if (it.moveToFirst()) {
+                    return it.getLong(0)
+                }
+            }
+        } catch (e: Exception) {
+            log.warn("failed to query songs of album {}", albumId, e)
+        }
+        return 0
+    }
+
+    private fun readFromDisk(diskFile: File): Bitmap? {
+        if (!diskFile.exists()) {
+            return null
+        }
+        // mark as recently used for eviction
+        diskFile.setLastModified(System.currentTimeMillis())
+        return BitmapFactory.decodeFile(diskFile.path)
+    }
+
+    private fun decodeThumbnail(context: Context, albumId: Long): Bitmap? {
+        val albumUri = AudioUtils.getMediaStoreAlbumCoverUri(albumId)
+        try {
+            context.contentResolver.openFileDescriptor(albumUri, "r")?.use {
+                parcelFileDescriptor ->
+                val fileDescriptor = parcelFileDescriptor.fileDescriptor
+                val options = BitmapFactory.Options()
+                options.inJustDecodeBounds = true
+                BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options)
+                val largestSide = max(options.outWidth, options.outHeight)
+                if (largestSide <= 0) {
+                    return null
+                }
+                options.inJustDecodeBounds = false
+                options.inSampleSize = 1
+                while (largestSide / (options.inSampleSize * 2) >= THUMBNAIL_SIZE) {
+                    options.inSampleSize *= 2
+                }
+                val sampled = BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options)
+                    ?: return null
+                val sampledSide = max(sampled.width, sampled.height)
+                if (sampledSide <= THUMBNAIL_SIZE) {
+                    return sampled
+                }
+                val ratio = THUMBNAIL_SIZE.toFloat() / sampledSide
+                val thumbnail = sampled.scale(
+                    (sampled.width * ratio).roundToInt(),
+                    (sampled.height * ratio).roundToInt(), true
+                )
+                if (thumbnail != sampled) {
+                    sampled.recycle()
+                }
+                return thumbnail
+            }
+        } catch (e: FileNotFoundException) {
+            // album doesn't have art
+        } catch (e: Exception) {
+            log.info("failed to extract album art", e)
+        }
+        return null
+    }
+
+    private fun writeToDisk(diskFile: File, bitmap: Bitmap) {
+        try {
+            val cacheDir = diskFile.parentFile ?: return
+            cacheDir.mkdirs()
+            val tempFile = File(diskFile.path + ".tmp")
+            FileOutputStream(tempFile).use {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, it)
+            }
+            tempFile.renameTo(diskFile)
+            trimDiskCache(cacheDir)
+        } catch (e: Exception) {
+            log.warn("failed to write album art thumbnail {}", diskFile.path, e)
+        }
+    }
+
+    @Synchronized
+    private fun trimDiskCache(cacheDir: File) {
+        val files = cacheDir.listFiles() ?: return
+        var totalBytes = files.sumOf { it.length() }
+        if (totalBytes <= MAX_DISK_CACHE_BYTES) {
+            return
+        }
+        for (file in files.sortedBy { it.lastModified() }) {
+            if (totalBytes <= MAX_DISK_CACHE_BYTES) {
+                break
+            }
+            val length = file.length()
+            if (file.delete()) {
+                totalBytes -= length
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.audio_player
+
+import android.content.Context
+import android.graphics.Bitmap
+import com.bumptech.glide.Priority
+import com.bumptech.glide.load.DataSource
+import com.bumptech.glide.load.Options
+import com.bumptech.glide.load.data.DataFetcher
+import com.bumptech.glide.load.model.ModelLoader
+import com.bumptech.glide.load.model.ModelLoaderFactory
+import com.bumptech.glide.load.model.MultiModelLoaderFactory
+import com.bumptech.glide.signature.ObjectKey
+import java.io.FileNotFoundException
+
+/**
+ * Loads [AlbumArtCache.AlbumArt] models through [AlbumArtCache], on Glide's threads,
+ * see [com.amaze.fileutilities.image_viewer.GlideModule]
+ */
+class AlbumArtModelLoader(private val context: Context) :
+    ModelLoader<AlbumArtCache.AlbumArt, Bitmap> {
+
+    override fun buildLoadData(
+        model: AlbumArtCache.AlbumArt,
+        width: Int,
+        height: Int,
+        options: Options
+    ): ModelLoader.LoadData<Bitmap> {
+        // called on Glide's threads, key is versioned so that Glide's disk cache of an
+        // album isn't served after it's songs change
+        val version = AlbumArtCache.getAlbumVersion(context, model.albumId)
+        return ModelLoader.LoadData(
+            ObjectKey("${model.albumId}_$version"), AlbumArtFetcher(context, model)
+        )
+    }
+
+    override fun handles(model: AlbumArtCache.AlbumArt): Boolean {
+        return true
+    }
+
+    class Factory(private val context: Context) :
+        ModelLoaderFactory<AlbumArtCache.AlbumArt, Bitmap> {
+        override fun build(
+            multiFactory: MultiModelLoaderFactory
+        ): ModelLoader<AlbumArtCache.AlbumArt, Bitmap> {
+            return AlbumArtModelLoader(context.applicationContext)
+        }
+
+        override fun teardown() {
+            // do nothing
+        }
+    }
+
+    private class AlbumArtFetcher(
+        private val context: Context,
+        private val model: AlbumArtCache.AlbumArt
+    ) : DataFetcher<Bitmap> {
+
+        override fun loadData(priority: Priority, callback: DataFetcher.DataCallback<in Bitmap>) {
+            val bitmap = AlbumArtCache.getAlbumArt(context, model.albumId)
+            if (bitmap != null) {
+                callback.onDataReady(bitmap)
+            } else {
+                callback.onLoadFailed(
+                    FileNotFoundException("no album art for album ${model.albumId}")
+                )
+            }
+        }
+
+        override fun cleanup() {
+            // bitmap is owned by AlbumArtCache
+        }
+
+        override fun cancel() {
+            // do nothing
+        }
+
+        override fun getDataClass(): Class<Bitmap> {
+            return Bitmap::class.java
+        }
+
+        override fun getDataSource(): DataSource {
+            return DataSource.LOCAL
+        }
+    }
+}
@@ -95,8 +95,7 @@ data class AudioPlaybackInfo(
                 val artistId = cursor.getLong(9)
                 val artistName = cursor.getString(10)
                 audioModel.id = id
-                val albumUri = AudioUtils.getMediaStoreAlbumCoverUri(albumId)
-                val albumBitmap = AudioUtils.getAlbumBitmap(context, albumUri)
+                val albumBitmap = AlbumArtCache.getAlbumArt(context, albumId)
                 return AudioPlaybackInfo(
                     audioModel,
                     title, trackNumber, year, duration, data, dateModified, albumId, albumName,
@@ -48,6 +48,7 @@ import com.amaze.fileutilities.home_page.database.AppDatabase
 import com.amaze.fileutilities.utilis.ObtainableServiceBinder
 import com.amaze.fileutilities.utilis.PreferencesConstants
 import com.amaze.fileutilities.utilis.Utils
+import com.amaze.fileutilities.utilis.WaveformPrecomputeWorker
 import com.amaze.fileutilities.utilis.getAppCommonSharedPreferences
 import com.amaze.fileutilities.utilis.startServiceSafely
 import com.google.android.exoplayer2.C
@@ -410,8 +411,7 @@ class AudioPlayerService : Service(), ServiceOperationCallback, OnPlayerRepeatin
                     (audioProgressHandler.playingIndex).toLong()
                 )
                 .putLong(MediaMetadataCompat.METADATA_KEY_YEAR, song.year.toLong())
-            val albumUri = AudioUtils.getMediaStoreAlbumCoverUri(song.albumId)
-            AudioUtils.getAlbumBitmap(applicationContext, albumUri)?.let {
+            AlbumArtCache.getAlbumArt(applicationContext, song.albumId)?.let {
                 bitmap ->
                 metaData.putBitmap(
                     MediaMetadataCompat.METADATA_KEY_ALBUM_ART,
@@ -523,6 +523,21 @@ class AudioPlayerService : Service(), ServiceOperationCallback, OnPlayerRepeatin
         }
         updatePlaybackState(true, renderWaveform)
         invalidateNotificationPlayButton()
+        precomputeUpcomingWaveforms()
+    }
+
+    private fun precomputeUpcomingWaveforms() {
+        if (!sharedPreferences.getBoolean(
+                PreferencesConstants.KEY_ENABLE_WAVEFORM,
+                PreferencesConstants.DEFAULT_AUDIO_PLAYER_WAVEFORM
+            )
+        ) {
+            return
+        }
+        // uris are resolved to files in worker, as that may copy content uris to cache
+        val uris = audioProgressHandler
+            ?.getUpcomingUris(WaveformPrecomputeWorker.UPCOMING_TRACKS_COUNT) ?: return
+        Utils.scheduleWaveformPrecomputeWorker(applicationContext, uris)
     }
 
     var volume = 0f
@@ -817,11 +832,11 @@ class AudioPlayerService : Service(), ServiceOperationCallback, OnPlayerRepeatin
             }
         } else {
             audioProgressHandler.audioPlaybackInfo.currentLyrics =
-                lyricsParser.get()?.getLyrics(exoPlayer!!.currentPosition / 1000)
+                lyricsParser.get()?.getLyrics(exoPlayer!!.currentPosition)
             audioProgressHandler.audioPlaybackInfo.isLyricsSynced =
                 lyricsParser.get()?.lyricsRaw?.isSynced == true
             audioProgressHandler.audioPlaybackInfo.lyricsStrings = lyricsParser
-                .get()?.getLyricsNew(exoPlayer!!.currentPosition / 1000)
+                .get()?.getLyricsNew(exoPlayer!!.currentPosition)
             if (serviceBinderPlaybackUpdate?.shouldListenToUpdates() == true) {
                 serviceBinderPlaybackUpdate?.onPositionUpdate(audioProgressHandler)
             }
@@ -87,6 +87,19 @@ data class AudioProgressHandler(
         return playingIndex
     }
 
+    /**
+     * Next [count] uris to be played after current one, empty if shuffling as next is random
+     */
+    fun getUpcomingUris(count: Int): List<Uri> {
+        val list = uriList
+        if (doShuffle || list.isNullOrEmpty() || playingIndex < 0) {
+            return emptyList()
+        }
+        return (1..count.coerceAtMost(list.size - 1)).map {
+            list[(playingIndex + it) % list.size]
+        }
+    }
+
     fun calculatePlayingIndex(): Int {
         if (uriList != null) {
             var index = 0
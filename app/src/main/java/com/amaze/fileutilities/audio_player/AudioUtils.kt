@@ -24,18 +24,14 @@ import android.content.ContentUris
 import android.content.Context
 import android.database.Cursor
 import android.graphics.Bitmap
-import android.graphics.BitmapFactory
 import android.net.Uri
 import android.os.Environment
-import android.os.ParcelFileDescriptor
 import android.provider.MediaStore
 import android.provider.MediaStore.Audio.AudioColumns
 import androidx.annotation.ColorInt
-import androidx.core.graphics.scale
 import androidx.palette.graphics.Palette
 import androidx.palette.graphics.Palette.Swatch
 import com.amaze.fileutilities.utilis.log
-import java.io.FileDescriptor
 import java.util.Collections
 import java.util.Locale
 
@@ -56,27 +52,6 @@ class AudioUtils {
             return ContentUris.withAppendedId(sArtworkUri, albumId)
         }
 
-        /**
-         * Returns bitmap for content uri compatible album art
-         * eg: content://media/external/audio/albumart/1234
-         */
-        fun getAlbumBitmap(context: Context, uri: Uri): Bitmap? {
-            var bitmap: Bitmap? = null
-            try {
-                val parcelFileDescriptor: ParcelFileDescriptor? =
-                    context.contentResolver.openFileDescriptor(uri, "r")
-                if (parcelFileDescriptor != null) {
-                    val fileDescriptor: FileDescriptor = parcelFileDescriptor.fileDescriptor
-                    bitmap = BitmapFactory.decodeFileDescriptor(fileDescriptor)
-                        .scale(100, 100, true)
-                    parcelFileDescriptor.close()
-                }
-            } catch (e: Exception) {
-                log.info("failed to extract album art", e)
-            }
-            return bitmap
-        }
-
         fun makeSongCursor(
             context: Context,
             uri: Uri?,
@@ -453,7 +453,7 @@ interface IAudioPlayerInterfaceHandler : OnPlaybackInfoUpdate, LifecycleOwner {
                             this.executeAsyncTask<Void, IntArray?>({}, {
                                 if (!getIsWaveformProcessing()) {
                                     setIsWaveformProcessing(true)
-                                    CustomWaveformOptions.getSampleFrom(context, file.path)
+                                    WaveformCache.getSample(context, file)
                                 } else {
                                     null
                                 }
@@ -513,7 +513,7 @@ interface IAudioPlayerInterfaceHandler : OnPlaybackInfoUpdate, LifecycleOwner {
                                 this.executeAsyncTask<Void, IntArray?>({}, {
                                     if (!getIsWaveformProcessing()) {
                                         setIsWaveformProcessing(true)
-                                        CustomWaveformOptions.getSampleFrom(context, file.path)
+                                        WaveformCache.getSample(context, file)
                                     } else {
                                         null
                                     }
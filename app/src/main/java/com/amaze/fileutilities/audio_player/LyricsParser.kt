@@ -27,15 +27,13 @@ import com.amaze.fileutilities.home_page.ui.files.AudiosListFragment
 import kotlinx.parcelize.Parcelize
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import java.util.regex.Matcher
-import java.util.regex.Pattern
 
 class LyricsParser {
 
-    var lyricsMap: LinkedHashMap<Long, String>? = null
+    var lyricsTimeline: LyricsTimeline? = null
     var lyricsRaw: Lyrics? = null
-    var lastLyrics: String? = null
     var lyricsStrings: LyricsStrings? = null
+    private var lyricsStringsIndex = -1
 
     @Parcelize
     data class LyricsStrings(
@@ -63,77 +61,47 @@ class LyricsParser {
 
     companion object {
         private var log: Logger = LoggerFactory.getLogger(AudiosListFragment::class.java)
-        var timerPattern: Pattern = Pattern.compile("(\\[)([\\.:\\w]*)?(\\])")
     }
 
-    fun getLyrics(timestamp: Long): String? {
-        val currentLyric = if (lyricsMap != null) {
-            val mappedLyrics = lyricsMap!![timestamp]
-            if (mappedLyrics == null && lastLyrics == null) {
-                "♪"
-            } else {
-                mappedLyrics
-            }
-        } else if (lyricsRaw != null) {
-            lyricsRaw!!.lyricsText
-        } else {
-            null
-        }
-        return if (currentLyric == null && lastLyrics != null) {
-            lastLyrics
+    /**
+     * Lyrics playing at [positionMillis], whole text if lyrics aren't synced
+     */
+    fun getLyrics(positionMillis: Long): String? {
+        val timeline = lyricsTimeline
+        return if (timeline != null) {
+            timeline.lineAt(timeline.indexAt(positionMillis)) ?: LyricsTimeline.EMPTY_LINE
         } else {
-            lastLyrics = currentLyric
-            currentLyric
+            lyricsRaw?.lyricsText
         }
     }
 
-    fun getLyricsNew(timestamp: Long): LyricsStrings? {
-        var lyricsObj: LyricsStrings?
-        if (lyricsMap != null) {
-            var found = false
-            var lastFound: String? = "♪"
-            var currFound = "♪"
-            var nextFound: String? = "♪"
-            for ((timeStampMapped, lyricsMapped) in lyricsMap!!) {
-                if (timestamp == timeStampMapped && !found) {
-                    found = true
-                    currFound = lyricsMapped
-                } else if (!found) {
-                    lastFound = lyricsMapped
-                } else if (found) {
-                    nextFound = lyricsMapped
-                    break
-                }
-            }
-            if (!found) {
-                // if not found, check previous values
-                if (lyricsStrings != null) {
-                    lastFound = lyricsStrings!!.lastLyrics
-                    nextFound = lyricsStrings!!.nextLyrics
-                    currFound = lyricsStrings!!.currentLyrics
-                } else {
-                    // no previous values so set default values
-                    lastFound = null
-                    nextFound = null
-                }
+    /**
+     * Previous, current and next lyrics at [positionMillis]. Called on every progress update,
+     * so a new object is created only once the playing line changes.
+     */
+    fun getLyricsNew(positionMillis: Long): LyricsStrings? {
+        val timeline = lyricsTimeline
+        if (timeline != null) {
+            val index = timeline.indexAt(positionMillis)
+            if (lyricsStrings == null || index != lyricsStringsIndex) {
+                lyricsStringsIndex = index
+                lyricsStrings = LyricsStrings(
+                    timeline.lineAt(index - 1),
+                    timeline.lineAt(index) ?: LyricsTimeline.EMPTY_LINE,
+                    timeline.lineAt(index + 1),
+                    lyricsRaw?.isSynced == true
+                )
             }
-            lyricsObj = LyricsStrings(
-                lastFound, currFound, nextFound,
-                lyricsRaw?.isSynced == true
-            )
         } else if (lyricsRaw != null) {
-            lyricsObj = if (lyricsStrings == null) {
-                LyricsStrings(
-                    null, lyricsRaw?.lyricsText ?: "♪", null,
+            if (lyricsStrings == null) {
+                lyricsStrings = LyricsStrings(
+                    null, lyricsRaw?.lyricsText ?: LyricsTimeline.EMPTY_LINE, null,
                     lyricsRaw?.isSynced == true
                 )
-            } else {
-                lyricsStrings
             }
         } else {
-            lyricsObj = null
+            lyricsStrings = null
         }
-        lyricsStrings = lyricsObj
         return lyricsStrings
     }
 
@@ -141,49 +109,17 @@ class LyricsParser {
         lyricsRaw?.let {
             lyricsDao.delete(it)
         }
-        if (lyricsMap != null) {
-            lyricsMap = null
-        }
+        lyricsTimeline = null
         lyricsRaw = null
-        lastLyrics = null
+        lyricsStrings = null
+        lyricsStringsIndex = -1
     }
 
     private fun parseAndStore() {
         if (lyricsRaw != null && lyricsRaw!!.isSynced) {
-            lyricsMap = LinkedHashMap()
-            val lyricsLines = lyricsRaw!!.lyricsText.split("\n")
-            lyricsLines.forEach {
-                lyricsLineRaw ->
-                var matcher: Matcher = timerPattern.matcher(lyricsLineRaw)
-                val output: MutableList<Long> = ArrayList()
-                var lyricsLine: String? = null
-                try {
-                    while (matcher.find()) {
-                        val time: String? = matcher.group(2)
-                        time?.let {
-                            val min = time.substring(0, 2).toInt().toLong()
-                            val sec = time.substring(3, 5).toInt().toLong()
-                            val t = min * 60L + sec
-                            output.add(t)
-                        }
-                    }
-                    val lastIdxOf = lyricsLineRaw.lastIndexOf("]") + 1
-                    if (lyricsLineRaw.length > lastIdxOf) {
-                        lyricsLine = lyricsLineRaw.substring(lastIdxOf)
-                    }
-                    if (!lyricsLine.isNullOrBlank()) {
-                        output.forEach {
-                            timeStamp ->
-                            if (!lyricsLine.isNullOrBlank()) {
-                                lyricsMap?.put(timeStamp, lyricsLine)
-                            } else {
-                                lyricsMap?.put(timeStamp, "♪")
-                            }
-                        }
-                    }
-                } catch (e: Exception) {
-                    log.warn("failed to extract lyrics from line {}", lyricsLineRaw)
-                }
+            lyricsTimeline = LyricsTimeline.compile(lyricsRaw!!.lyricsText)
+            if (lyricsTimeline == null) {
+                log.warn("no synced lyrics found for {}", lyricsRaw!!.filePath)
             }
         }
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.audio_player
+
+import java.util.regex.Pattern
+
+/**
+ * Synced lyrics compiled into parallel arrays sorted by time, so that line playing at any
+ * position can be looked up using binary search.
+ * Supports multiple timestamps per line, [offset:] tag and strips enhanced (per word) tags.
+ */
+class LyricsTimeline private constructor(
+    private val timestamps: LongArray,
+    private val lines: Array<String>
+) {
+
+    companion object {
+        const val EMPTY_LINE = "♪"
+
+        private val timestampPattern: Pattern =
+            Pattern.compile("\\[(\\d+):(\\d{1,2})(?:[.:](\\d{1,3}))?]")
+        private val offsetPattern: Pattern =
+            Pattern.compile("\\[offset:\\s*([+-]?\\d+)\\s*]", Pattern.CASE_INSENSITIVE)
+        private val wordTimestampPattern: Pattern =
+            Pattern.compile("<\\d+:\\d{1,2}(?:[.:]\\d{1,3})?>")
+
+        /**
+         * Compiles raw lrc text, returns null if it doesn't contain any timed line
+         */
+        fun compile(lyricsText: String): LyricsTimeline? {
+            val entries = ArrayList<Pair<Long, String>>()
+            var offsetMillis = 0L
+            lyricsText.lineSequence().forEach {
+                lyricsLineRaw ->
+                val line = lyricsLineRaw.trim()
+                val offsetMatcher = offsetPattern.matcher(line)
+                if (offsetMatcher.matches()) {
+                    offsetMillis = offsetMatcher.group(1)?.toLongOrNull() ?: 0L
+                    return@forEach
+                }
+                // timestamps are expected to prefix the line, eg. [00:12.00][01:15.30]text
+                val matcher = timestampPattern.matcher(line)
+                val lineTimestamps = ArrayList<Long>(1)
+                var textStart = 0
+                while (matcher.find() && matcher.start() == textStart) {
+                    lineTimestamps.add(
+                        toMillis(matcher.group(1), matcher.group(2), matcher.group(3))
+                    )
+                    textStart = matcher.end()
+                }
+                if (lineTimestamps.isEmpty()) {
+                    return@forEach
+                }
+                val text = wordTimestampPattern.matcher(line.substring(textStart))
+                    .replaceAll("").trim().ifBlank { EMPTY_LINE }
+                lineTimestamps.forEach {
+                    entries.add(Pair(it, text))
+                }
+            }
+            if (entries.isEmpty()) {
+                return null
+            }
+            // sort is stable, lines sharing a timestamp keep their order in file
+            entries.sortBy { it.first }
+            // positive offset shows lyrics earlier
+            return LyricsTimeline(
+                LongArray(entries.size) {
+                    (entries[it].first - offsetMillis).coerceAtLeast(0)
+                },
+                Array(entries.size) { entries[it].second }
+            )
+        }
+
+        private fun toMillis(minutes: String?, seconds: String?, fraction: String?): Long {
+            val fractionMillis = fraction?.padEnd(3, '0')?.toLong() ?: 0L
+            return ((minutes?.toLong() ?: 0L) * 60L + (seconds?.toLong() ?: 0L)) * 1000L +
+                fractionMillis
+        }
+    }
+
+    val size: Int
+        get() = lines.size
+
+    /**
+     * Index of the line playing at [positionMillis], -1 if position is before the first line
+     */
+    fun indexAt(positionMillis: Long): Int {
+        var low = 0
+        var high = timestamps.size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (timestamps[mid] <= positionMillis) {
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return high
+    }
+
+    /**
+     * Line at [index], or null if index is out of bounds
+     */
+    fun lineAt(index: Int): String? {
+        return if (index in lines.indices) lines[index] else null
+    }
+}
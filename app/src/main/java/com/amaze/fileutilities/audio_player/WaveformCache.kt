@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.audio_player
+
+import android.content.Context
+import android.util.LruCache
+import com.amaze.fileutilities.utilis.Utils
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.File
+import kotlin.math.roundToInt
+
+/**
+ * Waveform samples of audio files, keyed by path, size and last modified time so that a file
+ * changed in place is processed again.
+ * Amplituda output is downsampled to at most [MAX_BUCKETS] peaks of 1 byte each and kept on disk,
+ * least recently used samples are deleted once cache exceeds [MAX_DISK_CACHE_BYTES].
+ */
+object WaveformCache {
+
+    private val log: Logger = LoggerFactory.getLogger(WaveformCache::class.java)
+
+    private const val MAX_BUCKETS = 1024
+    private const val MAX_DISK_CACHE_BYTES = 4L * 1024 * 1024
+    private const val MAX_MEMORY_CACHE_ENTRIES = 8
+    private const val DISK_CACHE_DIR = "waveform"
+
+    private val memoryCache = LruCache<String, IntArray>(MAX_MEMORY_CACHE_ENTRIES)
+
+    /**
+     * Waveform sample of [file], from cache or processed using Amplituda on a miss.
+     * Blocks on disk reads and audio decoding, don't call on main thread.
+     */
+    fun getSample(context: Context, file: File): IntArray? {
+        val key = getKey(file)
+        memoryCache.get(key)?.let {
+            return it
+        }
+        val diskFile = getDiskFile(context, key)
+        readFromDisk(diskFile)?.let {
+            memoryCache.put(key, it)
+            return it
+        }
+        val amplitudes = CustomWaveformOptions.getSampleFrom(context, file.path) ?: return null
+        val buckets = downsample(amplitudes)
+        writeToDisk(context, diskFile, buckets)
+        val sample = toSample(buckets)
+        memoryCache.put(key, sample)
+        return sample
+    }
+
+    /**
+     * Whether sample of [file] is already processed, doesn't read the sample
+     */
+    fun isCached(context: Context, file: File): Boolean {
+        val key = getKey(file)
+        return memoryCache.get(key) != null || getDiskFile(context, key).exists()
+    }
+
+    private fun getKey(file: File): String {
+        return Utils.getMd5ForString("${file.path}:${file.length()}:${file.lastModified()}")
+    }
+
+    private fun getDiskFile(context: Context, key: String): File {
+        return File(File(context.cacheDir, DISK_CACHE_DIR), key)
+    }
+
+    /**
+     * Peak of each bucket scaled to 0..255, waveform is drawn relative to max peak anyway
+     */
+    private fun downsample(amplitudes: IntArray): ByteArray {
+        val bucketCount = amplitudes.size.coerceAtMost(MAX_BUCKETS)
+        val buckets = IntArray(bucketCount)
+        amplitudes.forEachIndexed {
+            index, amplitude ->
+            val bucket = (index.toLong() * bucketCount / amplitudes.size).toInt()
+            if (amplitude > buckets[bucket]) {
+                buckets[bucket] = amplitude
+            }
+        }
+        val maxPeak = buckets.maxOrNull()?.coerceAtLeast(1) ?: 1
+        return ByteArray(bucketCount) {
+            (buckets[it] * 255f / maxPeak).roundToInt().toByte()
+        }
+    }
+
+    private fun toSample(buckets: ByteArray): IntArray {
+        return IntArray(buckets.size) { buckets[it].toInt() and 0xFF }
+    }
+
+    private fun readFromDisk(diskFile: File): IntArray? {
+        if (!diskFile.exists()) {
+            return null
+        }
+        return try {
+            val buckets = diskFile.readBytes()
+            // mark as recently used for eviction
+            diskFile.setLastModified(System.currentTimeMillis())
+            if (buckets.isEmpty()) null else toSample(buckets)
+        } catch (e: Exception) {
+            log.warn("failed to read waveform sample {}", diskFile.path, e)
+            null
+        }
+    }
+
+    private fun writeToDisk(context: Context, diskFile: File, buckets: ByteArray) {
+        try {
+            val cacheDir = File(context.cacheDir, DISK_CACHE_DIR)
+            cacheDir.mkdirs()
+            // unique temp file, same track may be processed by player and precompute worker
+            val tempFile = File.createTempFile(diskFile.name, ".tmp", cacheDir)
+            tempFile.writeBytes(buckets)
+            if (!tempFile.renameTo(diskFile)) {
+                tempFile.delete()
+            }
+            trimDiskCache(cacheDir)
+        } catch (e: Exception) {
+            log.warn("failed to write waveform sample {}", diskFile.path, e)
+        }
+    }
+
+    @Synchronized
+    private fun trimDiskCache(cacheDir: File) {
+        val files = cacheDir.listFiles() ?: return
+        var totalBytes = files.sumOf { it.length() }
+        if (totalBytes <= MAX_DISK_CACHE_BYTES) {
+            return
+        }
+        for (file in files.sortedBy { it.lastModified() }) {
+            if (totalBytes <= MAX_DISK_CACHE_BYTES) {
+                break
+            }
+            val length = file.length()
+            if (file.delete()) {
+                totalBytes -= length
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.audio_player.playlist;
+
+import static android.provider.MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Cache of audio ids in each media store playlist. Memberships are loaded once, reading only audio
+ * ids of each playlist, and are joined with the audio list by the caller. Cache is invalidated by a
+ * {@link ContentObserver} on playlists uri, while changes made through {@link PlaylistsUtil} update
+ * it in place.
+ */
+public class PlaylistRepository {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PlaylistRepository.class);
+
+  // notifications for a playlist we modified within this window are caused by our own change
+  private static final long LOCAL_CHANGE_WINDOW_MILLIS = 2000;
+
+  private static PlaylistRepository instance;
+
+  private final Context context;
+  private final Map<Long, Long> localChangeTimes = new ConcurrentHashMap<>();
+
+  // playlist to audio ids in play order, null until loaded or after being invalidated
+  @Nullable private LinkedHashMap<MediaFileInfo.Playlist, List<Long>> memberships;
+
+  @NonNull
+  public static synchronized PlaylistRepository getInstance(@NonNull final Context context) {
+    if (instance == null) {
+      instance = new PlaylistRepository(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  private PlaylistRepository(@NonNull final Context context) {
+    this.context = context;
+    ContentObserver observer =
+        new ContentObserver(null) {
+          @Override
+          public void onChange(boolean selfChange, @Nullable Uri uri) {
+            onPlaylistsChanged(uri);
+          }
+        };
+    try {
+      context.getContentResolver().registerContentObserver(EXTERNAL_CONTENT_URI, true, observer);
+    } catch (SecurityException se) {
+      LOG.warn("failed to observe playlists", se);
+    }
+  }
+
+  /** Audio ids of each playlist in play order, loaded from media store only if not cached */
+  @NonNull
+  public synchronized Map<MediaFileInfo.Playlist, List<Long>> getMemberships() {
+    if (memberships == null) {
+      memberships = load();
+    }
+    LinkedHashMap<MediaFileInfo.Playlist, List<Long>> copy = new LinkedHashMap<>();
+    for (Map.Entry<MediaFileInfo.Playlist, List<Long>> entry : memberships.entrySet()) {
+      copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
+    return copy;
+  }
+
+  public synchronized void invalidate() {
+    memberships = null;
+  }
+
+  synchronized void onSongsAdded(final long playlistId, @NonNull final List<Long> audioIds) {
+    List<Long> members = findMembers(playlistId);
+    if (members != null) {
+      members.addAll(audioIds);
+    } else {
+      // playlist isn't cached yet, eg. just created
+      invalidate();
+    }
+  }
+
+  synchronized void onSongRemoved(final long playlistId, final long audioId) {
+    List<Long> members = findMembers(playlistId);
+    if (members != null) {
+      while (members.remove(audioId)) {
+        // remove all occurrences, as all are deleted by audio id
+      }
+    }
+  }
+
+  synchronized void onItemMoved(final long playlistId, final int from, final int to) {
+    List<Long> members = findMembers(playlistId);
+    if (members != null) {
+      if (from >= 0 && from < members.size() && to >= 0 && to < members.size()) {
+        members.add(to, members.remove(from));
+      } else {
+        invalidate();
+      }
+    }
+  }
+
+  private void onPlaylistsChanged(@Nullable final Uri uri) {
+    long playlistId = getPlaylistId(uri);
+    Long localChangeTime = playlistId != -1 ? localChangeTimes.get(playlistId) : null;
+    if (localChangeTime != null
+        && SystemClock.elapsedRealtime() - localChangeTime < LOCAL_CHANGE_WINDOW_MILLIS) {
+      return;
+    }
+    invalidate();
+  }
+
+  /** To be called before modifying a playlist, so that notification of the change is ignored */
+  void markLocalChange(final long playlistId) {
+    localChangeTimes.put(playlistId, SystemClock.elapsedRealtime());
+  }
+
+  @Nullable
+  private List<Long> findMembers(final long playlistId) {
+    if (memberships == null) {
+      return null;
+    }
+    for (Map.Entry<MediaFileInfo.Playlist, List<Long>> entry : memberships.entrySet()) {
+      if (entry.getKey().getId() == playlistId) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /** Playlist id of uri's like content://media/external/audio/playlists/12/members, or -1 */
+  private static long getPlaylistId(@Nullable final Uri uri) {
+    if (uri == null) {
+      return -1;
+    }
+    List<String> segments = uri.getPathSegments();
+    int playlistsIdx = segments.indexOf("playlists");
+    if (playlistsIdx == -1 || playlistsIdx + 1 >= segments.size()) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(segments.get(playlistsIdx + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @NonNull
+  private LinkedHashMap<MediaFileInfo.Playlist, List<Long>> load() {
+    LinkedHashMap<MediaFileInfo.Playlist, List<Long>> loaded = new LinkedHashMap<>();
+    for (MediaFileInfo.Playlist playlist : PlaylistLoader.getAllPlaylists(context)) {
+      if (playlist.getId() == -1) {
+        LOG.warn("invalid playlist {}", playlist);
+        continue;
+      }
+      loaded.put(playlist, loadMembers(playlist.getId()));
+    }
+    return loaded;
+  }
+
+  @NonNull
+  private List<Long> loadMembers(final long playlistId) {
+    List<Long> members = new ArrayList<>();
+    try (Cursor cursor =
+        context
+            .getContentResolver()
+            .query(
+                MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId),
+                new String[] {MediaStore.Audio.Playlists.Members.AUDIO_ID},
+                null,
+                null,
+                MediaStore.Audio.Playlists.Members.DEFAULT_SORT_ORDER)) {
+      if (cursor != null) {
+        while (cursor.moveToNext()) {
+          members.add(cursor.getLong(0));
+        }
+      }
+    } catch (SecurityException se) {
+      LOG.warn("failed to get playlist items", se);
+    }
+    return members;
+  }
+}
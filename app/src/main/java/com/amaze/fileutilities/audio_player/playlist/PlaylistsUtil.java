@@ -83,6 +83,7 @@ public class PlaylistsUtil {
           values.put(MediaStore.Audio.PlaylistsColumns.NAME, name);
           final Uri uri = context.getContentResolver().insert(EXTERNAL_CONTENT_URI, values);
           if (uri != null) {
+            PlaylistRepository.getInstance(context).invalidate();
             // Necessary because somehow the MediaStoreObserver doesn't work for playlists
             context.getContentResolver().notifyChange(uri, null);
             Toast.makeText(
@@ -129,6 +130,7 @@ public class PlaylistsUtil {
     selection.append(")");
     try {
       context.getContentResolver().delete(EXTERNAL_CONTENT_URI, selection.toString(), null);
+      PlaylistRepository.getInstance(context).invalidate();
       // Necessary because somehow the MediaStoreObserver doesn't work for playlists
       context.getContentResolver().notifyChange(EXTERNAL_CONTENT_URI, null);
     } catch (SecurityException se) {
@@ -173,11 +175,16 @@ public class PlaylistsUtil {
         }
       }
       List<Integer> songIds = new ArrayList<>();
+      List<Long> audioIds = new ArrayList<>();
       for (MediaFileInfo file : songs) {
         songIds.add((int) file.getId());
+        audioIds.add(file.getId());
       }
 
+      PlaylistRepository playlistRepository = PlaylistRepository.getInstance(context);
+      playlistRepository.markLocalChange(playlistId);
       int numInserted = resolver.bulkInsert(uri, makeInsertItems(songIds, base));
+      playlistRepository.onSongsAdded(playlistId, audioIds);
 
       // Necessary because somehow the MediaStoreObserver doesn't work for playlists
       context.getContentResolver().notifyChange(uri, null);
@@ -242,7 +249,10 @@ public class PlaylistsUtil {
     String selection = MediaStore.Audio.Playlists.Members.AUDIO_ID + " =?";
     try {
       String[] selectionArgs = new String[] {String.valueOf(song.getId())};
+      PlaylistRepository playlistRepository = PlaylistRepository.getInstance(context);
+      playlistRepository.markLocalChange(playlistId);
       context.getContentResolver().delete(uri, selection, selectionArgs);
+      playlistRepository.onSongRemoved(playlistId, song.getId());
       // Necessary because somehow the MediaStoreObserver doesn't work for playlists
       context.getContentResolver().notifyChange(uri, null);
       Toast.makeText(
@@ -316,9 +326,14 @@ public class PlaylistsUtil {
 
   public static boolean moveItem(
       @NonNull final Context context, long playlistId, int from, int to) {
+    PlaylistRepository playlistRepository = PlaylistRepository.getInstance(context);
+    playlistRepository.markLocalChange(playlistId);
     boolean res =
         MediaStore.Audio.Playlists.Members.moveItem(
             context.getContentResolver(), playlistId, from, to);
+    if (res) {
+      playlistRepository.onItemMoved(playlistId, from, to);
+    }
     // Necessary because somehow the MediaStoreObserver doesn't work for playlists
     // NOTE: actually for now lets disable this because it messes with the animation (tested on
     // Android 11)
@@ -335,6 +350,7 @@ public class PlaylistsUtil {
     contentValues.put(MediaStore.Audio.PlaylistsColumns.NAME, newName);
     try {
       context.getContentResolver().update(playlistUri, contentValues, null, null);
+      PlaylistRepository.getInstance(context).invalidate();
 
       // Necessary because somehow the MediaStoreObserver doesn't work for playlists
       context.getContentResolver().notifyChange(playlistUri, null);
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.cast.cloud;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files which can be streamed by {@link CloudStreamer}, each one addressed by an opaque token in
+ * the request URI, so that any number of items (eg. next items of cast queue) can be served while
+ * another one is playing. Least recently used tokens are evicted once there are more than {@link
+ * #MAX_ENTRIES}, and tokens not requested for {@link #TTL_MILLIS} expire.
+ */
+public class CastStreamRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(CastStreamRegistry.class);
+
+  private static final int MAX_ENTRIES = 64;
+  private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(6);
+  private static final int TOKEN_BYTES = 16;
+
+  private final SecureRandom random = new SecureRandom();
+  private final Map<String, String> tokensByPath = new HashMap<>();
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          if (size() > MAX_ENTRIES) {
+            tokensByPath.remove(eldest.getValue().file.getPath());
+            return true;
+          }
+          return false;
+        }
+      };
+
+  /**
+   * Registers file to be streamed, returns same token if file is already registered
+   *
+   * @return token to be used as first segment of request URI
+   */
+  public synchronized String register(File file) {
+    evictExpired();
+    String token = tokensByPath.get(file.getPath());
+    if (token == null) {
+      token = newToken();
+      tokensByPath.put(file.getPath(), token);
+    }
+    entries.put(token, new Entry(file, System.currentTimeMillis()));
+    return token;
+  }
+
+  /** @return file registered for token, or null if token is unknown or expired */
+  public synchronized File resolve(String token) {
+    evictExpired();
+    Entry entry = entries.get(token);
+    if (entry == null) {
+      return null;
+    }
+    entry.lastAccessMillis = System.currentTimeMillis();
+    return entry.file;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    tokensByPath.clear();
+  }
+
+  private void evictExpired() {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (now - entry.lastAccessMillis > TTL_MILLIS) {
+        log.debug("evicting expired stream of {}", entry.file.getPath());
+        tokensByPath.remove(entry.file.getPath());
+        iterator.remove();
+      }
+    }
+  }
+
+  private String newToken() {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    random.nextBytes(bytes);
+    StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+    for (byte b : bytes) {
+      token.append(String.format("%02x", b));
+    }
+    return token.toString();
+  }
+
+  private static class Entry {
+    private final File file;
+    private long lastAccessMillis;
+
+    private Entry(File file, long lastAccessMillis) {
+      this.file = file;
+      this.lastAccessMillis = lastAccessMillis;
+    }
+  }
+}
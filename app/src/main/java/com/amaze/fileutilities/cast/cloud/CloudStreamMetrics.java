@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.cast.cloud;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link CloudStreamServer}: connections currently open, bytes of response bodies
+ * sent and time to first byte of the last {@link #TIME_TO_FIRST_BYTE_SAMPLES} responses, measured
+ * from request arriving till response headers are flushed.
+ */
+public class CloudStreamMetrics {
+  private static final int TIME_TO_FIRST_BYTE_SAMPLES = 256;
+
+  private final AtomicInteger activeConnections = new AtomicInteger();
+  private final AtomicLong totalConnections = new AtomicLong();
+  private final AtomicLong bytesServed = new AtomicLong();
+  private final long[] timeToFirstByteNanos = new long[TIME_TO_FIRST_BYTE_SAMPLES];
+  private long responseCount = 0;
+
+  void onConnectionOpened() {
+    activeConnections.incrementAndGet();
+    totalConnections.incrementAndGet();
+  }
+
+  void onConnectionClosed() {
+    activeConnections.decrementAndGet();
+  }
+
+  void onBytesServed(long bytes) {
+    bytesServed.addAndGet(bytes);
+  }
+
+  synchronized void onFirstByte(long nanos) {
+    timeToFirstByteNanos[(int) (responseCount % TIME_TO_FIRST_BYTE_SAMPLES)] = nanos;
+    responseCount++;
+  }
+
+  public int getActiveConnections() {
+    return activeConnections.get();
+  }
+
+  public long getTotalConnections() {
+    return totalConnections.get();
+  }
+
+  public long getBytesServed() {
+    return bytesServed.get();
+  }
+
+  /**
+   * @param percentile between 0 and 100, eg. 50 for median
+   * @return time to first byte in millis at given percentile of recent responses, 0 if none yet
+   */
+  public synchronized long getTimeToFirstByteMillis(int percentile) {
+    int count = (int) Math.min(responseCount, TIME_TO_FIRST_BYTE_SAMPLES);
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(timeToFirstByteNanos, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+    return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, Math.min(index, count - 1))]);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ENGLISH,
+        "active connections %d, total connections %d, bytes served %d, "
+            + "time to first byte p50 %d ms, p99 %d ms",
+        getActiveConnections(),
+        getTotalConnections(),
+        getBytesServed(),
+        getTimeToFirstByteMillis(50),
+        getTimeToFirstByteMillis(99));
+  }
+}
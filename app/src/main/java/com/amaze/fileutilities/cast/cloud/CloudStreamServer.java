@@ -31,9 +31,14 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.BindException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Locale;
@@ -41,6 +46,9 @@ import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,7 +56,7 @@ import org.slf4j.LoggerFactory;
 import android.net.Uri;
 
 /**
- * A simple, tiny, nicely embeddable HTTP 1.0 (partially 1.1) server in Java
+ * A simple, tiny, nicely embeddable HTTP 1.1 server in Java, with persistent connections
  *
  * <p>NanoHTTPD version 1.24, Copyright &copy; 2001,2005-2011 Jarno Elonen (elonen@iki.fi,
  * http://iki.fi/elonen/) and Copyright &copy; 2010 Konstantinos Togias (info@ktogias.gr,
@@ -67,7 +75,8 @@ import android.net.Uri;
  *   <li>Supports partial content (streaming)
  *   <li>Supports ETags
  *   <li>Never caches anything
- *   <li>Doesn't limit bandwidth, request time or simultaneous connections
+ *   <li>Doesn't limit bandwidth or request time, limits simultaneous connections, see {@link
+ *       Config}
  *   <li>Default code serves files and shows all HTTP parameters and headers
  *   <li>File server supports directory listing, index.html and index.htm
  *   <li>File server supports partial content (streaming)
@@ -160,6 +169,31 @@ public abstract class CloudStreamServer {
       MIME_DEFAULT_BINARY = "application/octet-stream",
       MIME_XML = "text/xml";
 
+  /** Limits and buffer sizes of the server, {@link #DEFAULT} suits streaming to cast receivers. */
+  public static class Config {
+    public static final Config DEFAULT = new Config(16, 8192, 64 * 1024, 10_000);
+
+    /** Connections served at once, further connections wait in the socket backlog */
+    public final int maxConnections;
+
+    /** Max bytes of request line and headers */
+    public final int headerBufferSize;
+
+    /** Size of buffer response body is copied through, when it can't be sent to a channel */
+    public final int bodyBufferSize;
+
+    /** Time a persistent connection is kept open waiting for next request */
+    public final int idleTimeoutMillis;
+
+    public Config(
+        int maxConnections, int headerBufferSize, int bodyBufferSize, int idleTimeoutMillis) {
+      this.maxConnections = maxConnections;
+      this.headerBufferSize = headerBufferSize;
+      this.bodyBufferSize = bodyBufferSize;
+      this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+  }
+
   // ==================================================
   // Socket & server code
   // ==================================================
@@ -172,66 +206,68 @@ public abstract class CloudStreamServer {
 
   // private HTTPSession session;
   public CloudStreamServer(int port, File wwwroot) throws IOException {
+    this(port, wwwroot, Config.DEFAULT);
+  }
+
+  public CloudStreamServer(File wwwroot) throws IOException {
+    this(0, wwwroot);
+  }
+
+  /**
+   * Starts a HTTP server to given port, serving at most {@link Config#maxConnections} connections
+   * at once from a bounded pool of threads.
+   */
+  public CloudStreamServer(int port, File wwwroot, Config config) throws IOException {
     myTcpPort = port;
+    myConfig = config;
+    myConnectionPermits = new Semaphore(config.maxConnections);
+    myExecutor =
+        Executors.newFixedThreadPool(
+            config.maxConnections,
+            runnable -> {
+              Thread thread = new Thread(runnable);
+              thread.setDaemon(true);
+              return thread;
+            });
     myServerSocket = tryBind(myTcpPort);
     myThread =
         new Thread(
             () -> {
               try {
                 while (true) {
-                  /*
-                  if(session!=null){
-                      session.interrupt();
-                        try {
-                          session.join();
-                        } catch (InterruptedException e) {
-                              e.printStackTrace();
-                        }
-                    }
-                  */
-                  Socket accept = myServerSocket.accept();
-                  new HTTPSession(accept);
+                  // back-pressure, connections which can't be served yet wait in socket backlog
+                  myConnectionPermits.acquire();
+                  Socket accept;
+                  try {
+                    accept = myServerSocket.accept();
+                  } catch (IOException ioe) {
+                    myConnectionPermits.release();
+                    throw ioe;
+                  }
+                  myExecutor.execute(new HTTPSession(accept));
                 }
               } catch (IOException ioe) {
                 log.error("failed to start httpsession", ioe);
+              } catch (InterruptedException ie) {
+                // server stopped while waiting for a connection to finish
               }
             });
     myThread.setDaemon(true);
     myThread.start();
   }
 
-  public CloudStreamServer(File wwwroot) throws IOException {
-    myServerSocket = tryBind(myTcpPort);
-    myThread =
-        new Thread(
-            () -> {
-              try {
-                while (true) {
-                  /*
-                    if(session!=null){
-                            session.interrupt();
-                            try {
-                                    session.join();
-                            } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                            }
-                    }
-                  */
-                  Socket accept = myServerSocket.accept();
-                  new HTTPSession(accept);
-                }
-              } catch (IOException ioe) {
-              }
-            });
-    myThread.setDaemon(true);
-    myThread.start();
+  public CloudStreamMetrics getMetrics() {
+    return myMetrics;
   }
 
   /** Stops the server. */
   public void stop() {
     try {
       myServerSocket.close();
+      myThread.interrupt();
       myThread.join();
+      myExecutor.shutdownNow();
+      log.info("stopped server, {}", myMetrics);
     } catch (IOException | InterruptedException ioe) {
       log.warn("failed to stop server", ioe);
     }
@@ -244,12 +280,13 @@ public abstract class CloudStreamServer {
    * @return ServerSocket
    */
   private ServerSocket tryBind(int port) throws IOException {
-    ServerSocket socket;
+    // bound through a channel, so that accepted sockets have a channel to transfer files to
+    ServerSocket socket = ServerSocketChannel.open().socket();
     try {
-      socket = new ServerSocket(port);
+      socket.bind(new InetSocketAddress(port));
     } catch (BindException ifPortIsOccupiedByStreamer) {
       //      Streamer.getInstance().stop();
-      socket = new ServerSocket(port);
+      socket.bind(new InetSocketAddress(port));
     }
     return socket;
   }
@@ -306,24 +343,27 @@ public abstract class CloudStreamServer {
     public HTTPSession(Socket s) {
       socket = s;
       // mySocket = s;
-      Thread t = new Thread(this);
-      t.setDaemon(true);
-      t.start();
     }
 
     public void run() {
+      myMetrics.onConnectionOpened();
       try {
-        // openInputStream();
-        handleResponse(socket);
+        socket.setSoTimeout(myConfig.idleTimeoutMillis);
+        // serve requests of a persistent connection till client closes it or goes idle
+        while (handleResponse(socket)) {}
+      } catch (IOException e) {
+        log.warn("failed to set idle timeout", e);
       } finally {
-        if (is != null) {
-          try {
+        try {
+          if (is != null) {
             is.close();
-            socket.close();
-          } catch (IOException e) {
-            log.warn("failed to close socket", e);
           }
+          socket.close();
+        } catch (IOException e) {
+          log.warn("failed to close socket", e);
         }
+        myMetrics.onConnectionClosed();
+        myConnectionPermits.release();
       }
     }
 
@@ -331,18 +371,35 @@ public abstract class CloudStreamServer {
     //                      is = socket.getInputStream();
     //              }
 
-    private void handleResponse(Socket socket) {
+    /**
+     * Serves one request of the connection.
+     *
+     * @return whether connection should be kept open for next request
+     */
+    private boolean handleResponse(Socket socket) {
       try {
-        is = socket.getInputStream();
-        if (is == null) return;
+        if (is == null) is = socket.getInputStream();
+        if (is == null) return false;
 
-        // Read the first 8192 bytes.
+        // Read till the end of headers, or the first Config.headerBufferSize bytes.
         // The full header should fit in here.
         // Apache's default header limit is 8KB.
-        int bufsize = 8192;
+        int bufsize = myConfig.headerBufferSize;
         byte[] buf = new byte[bufsize];
-        int rlen = is.read(buf, 0, bufsize);
-        if (rlen <= 0) return;
+        int rlen;
+        try {
+          rlen = is.read(buf, 0, bufsize);
+        } catch (SocketTimeoutException timeout) {
+          // persistent connection idle for too long
+          return false;
+        }
+        if (rlen <= 0) return false;
+        long requestStartNanos = System.nanoTime();
+        while (rlen < bufsize && findHeaderEnd(buf, rlen) < 0) {
+          int read = is.read(buf, rlen, bufsize - rlen);
+          if (read <= 0) break;
+          rlen += read;
+        }
 
         // Create a BufferedReader for parsing the header.
         ByteArrayInputStream hbis = new ByteArrayInputStream(buf, 0, rlen);
@@ -359,6 +416,11 @@ public abstract class CloudStreamServer {
         log.debug(TAG, "Header: " + header.toString());
         String method = pre.getProperty("method");
         String uri = pre.getProperty("uri");
+        String connection = header.getProperty("connection", "");
+        boolean keepAlive =
+            "HTTP/1.1".equals(pre.getProperty("version"))
+                ? !connection.equalsIgnoreCase("close")
+                : connection.equalsIgnoreCase("keep-alive");
 
         long size = 0x7FFFFFFFFFFFFFFFL;
         String contentLength = header.getProperty("content-length");
@@ -395,13 +457,20 @@ public abstract class CloudStreamServer {
         // out whether we have already consumed part of body, if we
         // have reached the end of the data to be sent or we should
         // expect the first byte of the body at the next read.
-        if (splitbyte < rlen) size -= rlen - splitbyte + 1;
-        else if (!sbfound || size == 0x7FFFFFFFFFFFFFFFL) size = 0;
+        // A request without content length has no body.
+        if (!sbfound || size == 0x7FFFFFFFFFFFFFFFL) size = 0;
+        if (splitbyte < rlen) {
+          // Bytes read past the body are the start of a pipelined next request, which can't be
+          // handed back to the stream, so the connection is closed after this response and the
+          // client retries that request on a new one.
+          if (rlen - splitbyte > size) keepAlive = false;
+          size -= rlen - splitbyte;
+        }
 
-        // Now read all the body and write it to f
+        // Now read all the body and write it to f, without reading into a next request
         buf = new byte[512];
         while (rlen >= 0 && size > 0) {
-          rlen = is.read(buf, 0, 512);
+          rlen = is.read(buf, 0, (int) Math.min(512, size));
           size -= rlen;
           if (rlen > 0) f.write(buf, 0, rlen);
         }
@@ -465,9 +534,13 @@ public abstract class CloudStreamServer {
               socket,
               HTTP_INTERNALERROR,
               "SERVER INTERNAL ERROR: Serve() returned a null response.");
-        else sendResponse(socket, r.status, r.mimeType, r.header, r.data);
+        else
+          keepAlive =
+              sendResponse(
+                  socket, r.status, r.mimeType, r.header, r.data, keepAlive, requestStartNanos);
 
         in.close();
+        return keepAlive;
       } catch (IOException ioe) {
         try {
           sendError(
@@ -479,6 +552,17 @@ public abstract class CloudStreamServer {
       } catch (InterruptedException ie) {
         // Thrown by sendError, ignore and exit the thread.
       }
+      return false;
+    }
+
+    /** Returns the index after the empty line ending the headers, or -1 if not read yet. */
+    private int findHeaderEnd(byte[] buf, int rlen) {
+      for (int i = 0; i + 3 < rlen; i++) {
+        if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+          return i + 4;
+        }
+      }
+      return -1;
     }
 
     /** Decodes the sent headers and loads the data into java Properties' key - value pairs */
@@ -511,10 +595,11 @@ public abstract class CloudStreamServer {
         } else uri = Uri.decode(uri); // decodePercent(uri);
 
         // If there's another token, it's protocol version,
-        // followed by HTTP headers. Ignore version but parse headers.
+        // followed by HTTP headers.
         // NOTE: this now forces header names lowercase since they are
         // case insensitive and vary by client.
         if (st.hasMoreTokens()) {
+          pre.put("version", st.nextToken());
           String line = in.readLine();
           while (line != null && line.trim().length() > 0) {
             int p = line.indexOf(':');
@@ -714,19 +799,29 @@ public abstract class CloudStreamServer {
      * request processing.
      */
     private void sendError(Socket socket, String status, String msg) throws InterruptedException {
-      sendResponse(socket, status, MIME_PLAINTEXT, null, null);
+      sendResponse(socket, status, MIME_PLAINTEXT, null, null, false, System.nanoTime());
       throw new InterruptedException();
     }
 
-    /** Sends given response to the socket. */
-    private void sendResponse(
-        Socket socket, String status, String mime, Properties header, CloudStreamSource data) {
+    /**
+     * Sends given response to the socket.
+     *
+     * @return whether connection can be kept open for next request
+     */
+    private boolean sendResponse(
+        Socket socket,
+        String status,
+        String mime,
+        Properties header,
+        CloudStreamSource data,
+        boolean keepAlive,
+        long requestStartNanos) {
       try {
         if (status == null) throw new Error("sendResponse(): Status can't be null.");
 
         OutputStream out = socket.getOutputStream();
         PrintWriter pw = new PrintWriter(out);
-        pw.print("HTTP/1.0 " + status + " \r\n");
+        pw.print("HTTP/1.1 " + status + " \r\n");
 
         if (mime != null) pw.print("Content-Type: " + mime + "\r\n");
 
@@ -742,30 +837,47 @@ public abstract class CloudStreamServer {
           }
         }
 
+        // body length must be known for client to find next response on a persistent connection
+        if (data == null && (header == null || header.getProperty("Content-Length") == null))
+          pw.print("Content-Length: 0\r\n");
+        pw.print("Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n");
+
         pw.print("\r\n");
         pw.flush();
+        myMetrics.onFirstByte(System.nanoTime() - requestStartNanos);
 
+        long bytesShort = 0;
         if (data != null) {
-          // long pending = data.availableExact();      // This is to support partial sends, see
-          // serveFile()
-          data.open();
-          byte[] buff = new byte[8192];
-          int read = 0;
-          while ((read = data.read(buff)) > 0) {
-            // data.availableExact());
-            out.write(buff, 0, read);
+          long pending = data.remaining();
+          try {
+            data.open();
+            // socket accepted from a server socket channel, data can be sent directly to it
+            WritableByteChannel target =
+                socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(out);
+            data.writeTo(out, target, myConfig.bodyBufferSize);
+          } finally {
+            bytesShort = data.remaining();
+            myMetrics.onBytesServed(pending - data.remaining());
+            data.close();
           }
         }
         out.flush();
-        out.close();
-        if (data != null) data.close();
-
+        if (bytesShort > 0) {
+          // source ended before the advertised length, client would read whatever comes next
+          // on a persistent connection as rest of the body, so it's closed instead
+          log.warn("response body ended {} bytes short, closing connection", bytesShort);
+          socket.close();
+          return false;
+        }
+        if (!keepAlive) out.close();
+        return keepAlive;
       } catch (IOException ioe) {
         // Couldn't write? No can do.
         try {
           socket.close();
         } catch (Throwable t) {
         }
+        return false;
       }
     }
 
@@ -793,6 +905,10 @@ public abstract class CloudStreamServer {
   private int myTcpPort;
   private final ServerSocket myServerSocket;
   private Thread myThread;
+  private final Config myConfig;
+  private final ExecutorService myExecutor;
+  private final Semaphore myConnectionPermits;
+  private final CloudStreamMetrics myMetrics = new CloudStreamMetrics();
 
   // ==================================================
   // File server code
@@ -22,9 +22,13 @@ package com.amaze.fileutilities.cast.cloud;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 public class CloudStreamSource extends RandomAccessStream {
   protected long fp;
+  // exclusive end of the range to be sent
+  protected long end;
   protected String name;
   private InputStream inputStream;
 
@@ -32,6 +36,7 @@ public class CloudStreamSource extends RandomAccessStream {
     super(length);
 
     fp = 0;
+    end = length;
     this.name = fileName;
     this.inputStream = inputStream;
   }
@@ -59,6 +64,34 @@ public class CloudStreamSource extends RandomAccessStream {
     }
   }
 
+  /**
+   * Limits the data sent by {@link #writeTo} to bytes from start to endInclusive, both being
+   * positions in the file.
+   */
+  public void setRange(long start, long endInclusive) {
+    moveTo(start);
+    end = Math.min(endInclusive + 1, length());
+  }
+
+  /** Bytes left to send in current range */
+  public long remaining() {
+    return Math.max(end - fp, 0);
+  }
+
+  /**
+   * Writes current range to the response, call after {@link #open()}. Copies through a heap buffer
+   * into out, target is used by sources which can write to a channel directly.
+   */
+  public void writeTo(OutputStream out, WritableByteChannel target, int bufferSize)
+      throws IOException {
+    byte[] buff = new byte[bufferSize];
+    int read;
+    while (remaining() > 0
+        && (read = read(buff, 0, (int) Math.min(buff.length, remaining()))) > 0) {
+      out.write(buff, 0, read);
+    }
+  }
+
   @Override
   public int read() throws IOException {
     int read = inputStream.read();
@@ -69,7 +102,7 @@ public class CloudStreamSource extends RandomAccessStream {
   @Override
   public int read(byte[] bytes, int start, int offs) throws IOException {
     int read = inputStream.read(bytes, start, offs);
-    fp += read;
+    if (read > 0) fp += read;
     return read;
   }
 
@@ -22,13 +22,15 @@ package com.amaze.fileutilities.cast.cloud;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Properties;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import android.net.Uri;
+import android.os.Environment;
+
 public class CloudStreamer extends CloudStreamServer {
 
   private static final Logger log = LoggerFactory.getLogger(CloudStreamer.class);
@@ -37,9 +39,8 @@ public class CloudStreamer extends CloudStreamServer {
 
   public static final int PORT = 7871;
   public static final String URL = "http://127.0.0.1:" + PORT;
-  private InputStream inputStream;
-  private String fileName;
-  long length = 0;
+  private final CastStreamRegistry registry = new CastStreamRegistry();
+  private final ReadAheadCache readAheadCache = new ReadAheadCache();
   private static CloudStreamer instance;
   private static Pattern pattern =
       Pattern.compile(
@@ -66,15 +67,26 @@ public class CloudStreamer extends CloudStreamServer {
     return pattern.matcher(file.getName()).matches();
   }*/
 
-  public void setStreamSrc(InputStream inputStream, String fileName, long length) {
-    this.inputStream = inputStream;
-    this.fileName = fileName;
-    this.length = length;
+  /**
+   * Registers a local file to be served alongside any other registered files, every request reads
+   * it through it's own {@link FileStreamSource}.
+   *
+   * @return path of the file's URL on this server
+   */
+  public String registerStreamSrc(File file) {
+    return "/" + registry.register(file) + "/" + Uri.encode(file.getName());
+  }
+
+  /** Files outside primary storage, eg. on SD cards or USB OTG, are read ahead */
+  private boolean isOnSlowStorage(File file) {
+    return !file.getPath().startsWith(Environment.getExternalStorageDirectory().getPath());
   }
 
   @Override
   public void stop() {
     super.stop();
+    registry.clear();
+    readAheadCache.clear();
     instance = null;
   }
 
@@ -83,7 +95,13 @@ public class CloudStreamer extends CloudStreamServer {
       String uri, String method, Properties header, Properties parms, Properties files) {
     Response res = null;
 
-    if (inputStream == null) res = new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, null);
+    // registered files are requested as /token/name
+    File file = null;
+    String[] segments = uri.split("/");
+    if (segments.length > 1) {
+      file = registry.resolve(segments[1]);
+    }
+    if (file == null) res = new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, null);
     else {
 
       long startFrom = 0;
@@ -96,41 +114,45 @@ public class CloudStreamer extends CloudStreamServer {
           try {
             if (minus > 0) {
               startFrom = Long.parseLong(range.substring(0, minus));
-              endAt = Long.parseLong(range.substring(minus + 1));
+              if (minus < range.length() - 1) {
+                endAt = Long.parseLong(range.substring(minus + 1));
+              }
+            } else if (minus == 0) {
+              // suffix range, last n bytes of the file
+              startFrom = Math.max(file.length() - Long.parseLong(range.substring(1)), 0);
             }
           } catch (NumberFormatException nfe) {
           }
+        } else {
+          range = null;
         }
       }
       log.debug("Request: " + range + " from: " + startFrom + ", to: " + endAt);
 
       // Change return code and add Content-Range header when skipping
       // is requested
-      // source.open();
-      final CloudStreamSource source = new CloudStreamSource(fileName, length, inputStream);
+      final CloudStreamSource source =
+          new FileStreamSource(file, isOnSlowStorage(file) ? readAheadCache : null);
       long fileLen = source.length();
-      if (range != null && startFrom > 0) {
+      if (range != null) {
         if (startFrom >= fileLen) {
           res = new Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, null);
-          res.addHeader("Content-Range", "bytes 0-0/" + fileLen);
+          res.addHeader("Content-Range", "bytes */" + fileLen);
         } else {
-          if (endAt < 0) endAt = fileLen - 1;
-          long newLen = fileLen - startFrom;
-          if (newLen < 0) newLen = 0;
-          log.debug("start=" + startFrom + ", endAt=" + endAt + ", newLen=" + newLen);
-          final long dataLen = newLen;
-          source.moveTo(startFrom);
-          log.debug("Skipped " + startFrom + " bytes");
+          if (endAt < 0 || endAt >= fileLen) endAt = fileLen - 1;
+          if (endAt < startFrom) endAt = startFrom;
+          final long dataLen = endAt - startFrom + 1;
+          log.debug("start=" + startFrom + ", endAt=" + endAt + ", newLen=" + dataLen);
+          source.setRange(startFrom, endAt);
 
           res = new Response(HTTP_PARTIALCONTENT, null, source);
-          res.addHeader("Content-length", "" + dataLen);
+          res.addHeader("Content-Length", "" + dataLen);
+          res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
         }
       } else {
         source.reset();
         res = new Response(HTTP_OK, null, source);
         res.addHeader("Content-Length", "" + fileLen);
-        //        res.addHeader("Content-Range", 0 + "-" + fileLen + "/" + fileLen);
-        //        res.addHeader("Range", "bytes=0-" + fileLen);
       }
     }
 
@@ -36,7 +36,6 @@ import com.amaze.fileutilities.R
 import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
 import com.amaze.fileutilities.utilis.ObtainableServiceBinder
 import java.io.File
-import java.io.FileInputStream
 
 class CloudStreamerService : Service() {
 
@@ -87,12 +86,18 @@ class CloudStreamerService : Service() {
         return mBinder
     }
 
-    fun setStreamSrc(mediaFileInfo: MediaFileInfo) {
-        cloudStreamer?.setStreamSrc(
-            FileInputStream(mediaFileInfo.path),
-            mediaFileInfo.title,
-            File(mediaFileInfo.path).length()
-        )
+    /**
+     * Registers [mediaFileInfo] to be streamed, while previously registered files
+     * can still be streamed
+     *
+     * @return path of url to stream the file from, or null if streamer isn't running
+     */
+    fun registerStreamSrc(mediaFileInfo: MediaFileInfo): String? {
+        // service may be bound before it's start command is delivered
+        if (cloudStreamer == null) {
+            cloudStreamer = CloudStreamer.getInstance()
+        }
+        return cloudStreamer?.registerStreamSrc(File(mediaFileInfo.path))
     }
 
     private val stopReceiver: BroadcastReceiver = object : BroadcastReceiver() {
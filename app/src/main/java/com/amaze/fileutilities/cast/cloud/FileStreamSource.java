@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.cast.cloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link CloudStreamSource} for a local file, which opens it's own {@link FileChannel} for every
+ * request, so concurrent range requests don't share a stream position. Range is read by position
+ * and sent with {@link FileChannel#transferTo}, so seeking is constant time and data isn't copied
+ * through heap when target is a socket channel.
+ */
+public class FileStreamSource extends CloudStreamSource {
+  private final File file;
+  private final ReadAheadCache readAheadCache;
+  private FileChannel channel;
+
+  public FileStreamSource(File file) {
+    this(file, null);
+  }
+
+  /** @param readAheadCache if not null, ranges are sent through it instead of file directly */
+  public FileStreamSource(File file, ReadAheadCache readAheadCache) {
+    super(file.getName(), file.length(), null);
+    this.file = file;
+    this.readAheadCache = readAheadCache;
+  }
+
+  @Override
+  public void open() throws IOException {
+    channel = new RandomAccessFile(file, "r").getChannel();
+  }
+
+  @Override
+  public void writeTo(OutputStream out, WritableByteChannel target, int bufferSize)
+      throws IOException {
+    if (readAheadCache != null) {
+      fp =
+          readAheadCache.writeTo(
+              file.getPath() + "@" + file.lastModified(), file, channel, fp, end, target);
+      return;
+    }
+    while (remaining() > 0) {
+      long sent = channel.transferTo(fp, remaining(), target);
+      if (sent <= 0) {
+        break;
+      }
+      fp += sent;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1);
+    int read = channel.read(buffer, fp);
+    if (read <= 0) {
+      return -1;
+    }
+    fp++;
+    return buffer.get(0) & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int start, int offs) throws IOException {
+    int read = channel.read(ByteBuffer.wrap(bytes, start, offs), fp);
+    if (read > 0) fp += read;
+    return read;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+}
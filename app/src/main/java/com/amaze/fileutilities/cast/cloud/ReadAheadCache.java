@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.cast.cloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches chunks of files being streamed from slow storage (SD cards, USB OTG) in a bounded pool of
+ * direct {@link ByteBuffer}s. While a range is served, chunks ahead of the serving position are
+ * prefetched on a background thread, so the request thread rarely waits on disk. Chunks receivers
+ * seek to, and the head and tail of the file (eg. MP4 moov atom or MKV cues), are kept in a
+ * separate budget, so that sequential streaming can't evict them. Requests fall back to reading the
+ * file directly when all buffers are in use.
+ */
+public class ReadAheadCache {
+
+  private static final Logger log = LoggerFactory.getLogger(ReadAheadCache.class);
+
+  private static final int CHUNK_SIZE = 256 * 1024;
+  // 8 MB of direct memory at most, 2 MB of it for seeked, head and tail chunks
+  private static final int MAX_STREAMING_CHUNKS = 24;
+  private static final int MAX_PINNED_CHUNKS = 8;
+  private static final int READ_AHEAD_CHUNKS = 8;
+  private static final int TAIL_CHUNKS = 4;
+
+  private final ChunkPool streamingChunks = new ChunkPool(MAX_STREAMING_CHUNKS);
+  private final ChunkPool pinnedChunks = new ChunkPool(MAX_PINNED_CHUNKS);
+  // only latest prefetch requests are kept, older ones are stale once receiver seeks
+  private final ThreadPoolExecutor prefetchExecutor =
+      new ThreadPoolExecutor(
+          1,
+          1,
+          30,
+          TimeUnit.SECONDS,
+          new ArrayBlockingQueue<>(2),
+          runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+          },
+          new ThreadPoolExecutor.DiscardOldestPolicy());
+
+  public ReadAheadCache() {
+    prefetchExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Writes bytes from position till end (exclusive) of file to target through cached chunks,
+   * prefetching chunks ahead of the serving position as it goes.
+   *
+   * @param fileKey identifies current version of the file, eg. path with last modified time
+   * @return position after the last byte written
+   */
+  public long writeTo(
+      String fileKey,
+      File file,
+      FileChannel channel,
+      long position,
+      long end,
+      WritableByteChannel target)
+      throws IOException {
+    long fileSize = channel.size();
+    long firstIndex = position / CHUNK_SIZE;
+    long prefetchedUntil = firstIndex + 1;
+    while (position < end) {
+      long index = position / CHUNK_SIZE;
+      long chunkEnd = Math.min(end, (index + 1) * CHUNK_SIZE);
+      // keep prefetch at least half a window ahead, so it isn't rescheduled for every chunk
+      if (index + READ_AHEAD_CHUNKS / 2 >= prefetchedUntil) {
+        long prefetchFrom = Math.max(prefetchedUntil, index + 1);
+        prefetchedUntil = index + 1 + READ_AHEAD_CHUNKS;
+        prefetch(fileKey, file, prefetchFrom, prefetchedUntil);
+      }
+      Chunk chunk = acquire(fileKey, index, index == firstIndex || isHeadOrTail(index, fileSize));
+      if (chunk == null) {
+        long sent = channel.transferTo(position, chunkEnd - position, target);
+        if (sent <= 0) {
+          break;
+        }
+        position += sent;
+        continue;
+      }
+      try {
+        // waits for prefetch thread if it's already reading this chunk
+        ByteBuffer data = chunk.load(channel);
+        int offset = (int) (position - index * CHUNK_SIZE);
+        if (offset >= data.limit()) {
+          // end of file
+          break;
+        }
+        data.limit((int) Math.min(data.limit(), chunkEnd - index * CHUNK_SIZE));
+        data.position(offset);
+        while (data.hasRemaining()) {
+          position += target.write(data);
+        }
+      } finally {
+        release(chunk);
+      }
+    }
+    return position;
+  }
+
+  /** Stops prefetching and drops all cached chunks */
+  public void clear() {
+    prefetchExecutor.shutdownNow();
+    synchronized (this) {
+      streamingChunks.clear();
+      pinnedChunks.clear();
+    }
+  }
+
+  /** Loads chunks from firstIndex till lastIndex (exclusive) on prefetch thread */
+  private void prefetch(String fileKey, File file, long firstIndex, long lastIndex) {
+    if (prefetchExecutor.isShutdown()) {
+      return;
+    }
+    prefetchExecutor.execute(
+        () -> {
+          try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long fileSize = channel.size();
+            for (long index = firstIndex; index < lastIndex; index++) {
+              if (index * CHUNK_SIZE >= fileSize) {
+                break;
+              }
+              Chunk chunk = acquire(fileKey, index, isHeadOrTail(index, fileSize));
+              if (chunk == null) {
+                break;
+              }
+              try {
+                chunk.load(channel);
+              } finally {
+                release(chunk);
+              }
+            }
+          } catch (IOException e) {
+            log.debug("failed to prefetch {}", file.getPath(), e);
+          }
+        });
+  }
+
+  private static boolean isHeadOrTail(long index, long fileSize) {
+    return index == 0 || (index + TAIL_CHUNKS) * CHUNK_SIZE >= fileSize;
+  }
+
+  /**
+   * @param pinned whether chunk, if not cached yet, should be kept in the budget for seeked, head
+   *     and tail chunks
+   * @return chunk which can't be evicted till released, or null if all buffers are in use
+   */
+  private synchronized Chunk acquire(String fileKey, long index, boolean pinned) {
+    String key = fileKey + "#" + index;
+    Chunk chunk = pinnedChunks.get(key);
+    if (chunk == null) {
+      chunk = streamingChunks.get(key);
+    }
+    if (chunk == null) {
+      chunk = (pinned ? pinnedChunks : streamingChunks).create(key, index);
+      if (chunk == null) {
+        return null;
+      }
+    }
+    chunk.refCount++;
+    return chunk;
+  }
+
+  private synchronized void release(Chunk chunk) {
+    chunk.refCount--;
+  }
+
+  /** Chunks in LRU order backed by at most maxChunks buffers, guarded by the cache's lock */
+  private static class ChunkPool {
+    private final int maxChunks;
+    private int allocatedBuffers = 0;
+    // access ordered, eldest is least recently used
+    private final LinkedHashMap<String, Chunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+
+    private ChunkPool(int maxChunks) {
+      this.maxChunks = maxChunks;
+    }
+
+    private Chunk get(String key) {
+      return chunks.get(key);
+    }
+
+    /** @return new chunk, or null if all buffers are in use */
+    private Chunk create(String key, long index) {
+      ByteBuffer buffer = obtainBuffer();
+      if (buffer == null) {
+        return null;
+      }
+      Chunk chunk = new Chunk(index, buffer);
+      chunks.put(key, chunk);
+      return chunk;
+    }
+
+    private void clear() {
+      chunks.clear();
+      allocatedBuffers = 0;
+    }
+
+    private ByteBuffer obtainBuffer() {
+      if (allocatedBuffers < maxChunks) {
+        allocatedBuffers++;
+        return ByteBuffer.allocateDirect(CHUNK_SIZE);
+      }
+      Iterator<Map.Entry<String, Chunk>> iterator = chunks.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Chunk chunk = iterator.next().getValue();
+        if (chunk.refCount == 0) {
+          iterator.remove();
+          return chunk.buffer;
+        }
+      }
+      return null;
+    }
+  }
+  private static class Chunk {
+    private final long index;
+    private final ByteBuffer buffer;
+    private int refCount = 0;
+    private boolean loaded = false;
+
+    private Chunk(long index, ByteBuffer buffer) {
+      this.index = index;
+      this.buffer = buffer;
+    }
+
+    /** Reads chunk from file unless already read, returns a view of it's data */
+    private synchronized ByteBuffer load(FileChannel channel) throws IOException {
+      if (!loaded) {
+        buffer.clear();
+        long start = index * CHUNK_SIZE;
+        while (buffer.hasRemaining()) {
+          int read = channel.read(buffer, start + buffer.position());
+          if (read <= 0) {
+            break;
+          }
+        }
+        buffer.flip();
+        loaded = true;
+      }
+      return buffer.asReadOnlyBuffer();
+    }
+  }
+}
@@ -39,7 +39,7 @@ import androidx.navigation.fragment.NavHostFragment
 import androidx.navigation.ui.AppBarConfiguration
 import androidx.navigation.ui.setupWithNavController
 import androidx.work.ExistingPeriodicWorkPolicy
-import com.amaze.fileutilities.BuildConfig
+import androidx.work.ExistingWorkPolicy
 import com.amaze.fileutilities.R
 import com.amaze.fileutilities.WifiP2PActivity
 import com.amaze.fileutilities.databinding.ActivityMainActionbarBinding
@@ -173,41 +173,14 @@ class MainActivity :
             invalidateOptionsTabs()
         }
 
-        viewModel.initAndFetchPathPreferences().observe(this) { pathPreferences ->
-            viewModel.usedImagesSummaryTransformations().observe(
-                this
-            ) {
-                mediaInfoStorageSummaryPair ->
-                viewModel.initAnalysisMigrations.observe(this) {
-                    if (it) {
-                        mediaInfoStorageSummaryPair?.second.let { list ->
-                            list?.run {
-                                val mediaFileInfoList = ArrayList(this)
-                                if (!BuildConfig.IS_VERSION_FDROID) {
-                                    viewModel.analyseImageFeatures(
-                                        mediaFileInfoList,
-                                        pathPreferences
-                                    )
-                                    viewModel.analyseMemeImages(
-                                        mediaFileInfoList,
-                                        pathPreferences
-                                    )
-                                }
-                                viewModel.analyseBlurImages(
-                                    mediaFileInfoList,
-                                    pathPreferences
-                                )
-                                viewModel.analyseLowLightImages(
-                                    mediaFileInfoList,
-                                    pathPreferences
-                                )
-                                viewModel.analyseSimilarImages(
-                                    mediaFileInfoList,
-                                    pathPreferences
-                                )
-                            }
-                        }
-                    }
+        viewModel.imageAnalysisWorkInfo().observe(this) {
+            viewModel.updateImageAnalysisProgress(it)
+        }
+        viewModel.initAndFetchPathPreferences().observe(this) {
+            viewModel.initAnalysisMigrations.observe(this) {
+                if (it) {
+                    Utils.scheduleImageAnalysisWorker(this, ExistingWorkPolicy.KEEP)
+                    Utils.scheduleDocumentContentWorker(this, ExistingWorkPolicy.KEEP)
                 }
             }
 
@@ -20,7 +20,9 @@
 
 package com.amaze.fileutilities.home_page.database
 
+import android.content.ContentValues
 import android.content.Context
+import android.database.sqlite.SQLiteDatabase
 import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
@@ -34,10 +36,13 @@ import com.amaze.fileutilities.utilis.DbConverters
         ImageAnalysis::class, InternalStorageAnalysis::class, PathPreferences::class,
         BlurAnalysis::class, LowLightAnalysis::class, MemeAnalysis::class, VideoPlayerState::class,
         Trial::class, Lyrics::class, InstalledApps::class, SimilarImagesAnalysis::class,
-        SimilarImagesAnalysisMetadata::class, AppStorageStats::class
+        SimilarImagesAnalysisMetadata::class, AppStorageStats::class, FileChecksum::class,
+        InternalStorageAnalysisFile::class, SimilarImagesAnalysisFile::class,
+        MediaStoreIndexEntry::class, DocumentContent::class, DocumentContentState::class,
+        NetworkUsage::class
     ],
     exportSchema = true,
-    version = 5
+    version = 11
 )
 @TypeConverters(DbConverters::class)
 abstract class AppDatabase : RoomDatabase() {
@@ -54,8 +59,16 @@ abstract class AppDatabase : RoomDatabase() {
     abstract fun installedAppsDao(): InstalledAppsDao
     abstract fun lyricsDao(): LyricsDao
     abstract fun appStorageStatsDao(): AppStorageStatsDao
+    abstract fun fileChecksumDao(): FileChecksumDao
+    abstract fun mediaStoreIndexEntryDao(): MediaStoreIndexEntryDao
+    abstract fun documentContentDao(): DocumentContentDao
+    abstract fun networkUsageDao(): NetworkUsageDao
 
     companion object {
+        // keep below sqlite's limit of 999 host parameters, so that a batch of keys can be
+        // used for a single "IN(:list)" query
+        const val BATCH_SIZE = 500
+
         private var appDatabase: AppDatabase? = null
 
         fun getInstance(applicationContext: Context): AppDatabase {
@@ -64,7 +77,11 @@ abstract class AppDatabase : RoomDatabase() {
                     applicationContext,
                     AppDatabase::class.java, "amaze-utils"
                 ).allowMainThreadQueries()
-                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
+                    .addMigrations(
+                        MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                        MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                        MIGRATION_9_10, MIGRATION_10_11
+                    )
                     .build()
             }
             return appDatabase!!
@@ -142,5 +159,190 @@ abstract class AppDatabase : RoomDatabase() {
                 )
             }
         }
+
+        val MIGRATION_5_6 = object : Migration(5, 6) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `FileChecksum` " +
+                        "(`_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`file_path` TEXT NOT NULL, " +
+                        "`file_length` INTEGER NOT NULL, " +
+                        "`last_modified` INTEGER NOT NULL, " +
+                        "`sampled_checksum` TEXT, " +
+                        "`sha256_checksum` TEXT)"
+                )
+                database.execSQL(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS " +
+                        "`index_FileChecksum_file_path` " +
+                        "ON `FileChecksum` (`file_path`)"
+                )
+            }
+        }
+
+        /**
+         * Moves json encoded file paths of duplicate and similar images analysis into their own
+         * tables, one row per file
+         */
+        val MIGRATION_6_7 = object : Migration(6, 7) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `InternalStorageAnalysis_new` " +
+                        "(`_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`sha256_checksum` TEXT NOT NULL, " +
+                        "`is_empty` INTEGER NOT NULL, " +
+                        "`is_junk` INTEGER NOT NULL, " +
+                        "`is_directory` INTEGER NOT NULL, " +
+                        "`is_mediastore` INTEGER NOT NULL, " +
+                        "`depth` INTEGER NOT NULL)"
+                )
+                database.execSQL(
+                    "INSERT INTO `InternalStorageAnalysis_new` (`_id`, `sha256_checksum`, " +
+                        "`is_empty`, `is_junk`, `is_directory`, `is_mediastore`, `depth`) " +
+                        "SELECT `_id`, `sha256_checksum`, `is_empty`, `is_junk`, " +
+                        "`is_directory`, `is_mediastore`, `depth` FROM `InternalStorageAnalysis`"
+                )
+                migrateFilesPath(
+                    database, "InternalStorageAnalysis",
+                    "index_InternalStorageAnalysis_sha256_checksum", "sha256_checksum"
+                )
+
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `SimilarImagesAnalysis_new` " +
+                        "(`_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`histogram_checksum` TEXT NOT NULL)"
+                )
+                database.execSQL(
+                    "INSERT INTO `SimilarImagesAnalysis_new` (`_id`, `histogram_checksum`) " +
+                        "SELECT `_id`, `histogram_checksum` FROM `SimilarImagesAnalysis`"
+                )
+                migrateFilesPath(
+                    database, "SimilarImagesAnalysis",
+                    "index_SimilarImagesAnalysis_histogram_checksum", "histogram_checksum"
+                )
+            }
+
+            /**
+             * Swaps `table` with already populated `table_new`, then creates `tableFile` and
+             * fills it with paths from the dropped `files_path` column
+             */
+            private fun migrateFilesPath(
+                database: SupportSQLiteDatabase,
+                table: String,
+                checksumIndex: String,
+                checksumColumn: String
+            ) {
+                val fileTable = "${table}File"
+                database.execSQL("ALTER TABLE `$table` RENAME TO `${table}_old`")
+                database.execSQL("DROP INDEX IF EXISTS `$checksumIndex`")
+                database.execSQL("ALTER TABLE `${table}_new` RENAME TO `$table`")
+                database.execSQL(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS `$checksumIndex` " +
+                        "ON `$table` (`$checksumColumn`)"
+                )
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `$fileTable` " +
+                        "(`_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`checksum_id` INTEGER NOT NULL, " +
+                        "`file_path` TEXT NOT NULL, " +
+                        "FOREIGN KEY(`checksum_id`) REFERENCES `$table`(`_id`) " +
+                        "ON UPDATE NO ACTION ON DELETE CASCADE )"
+                )
+                database.execSQL(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS " +
+                        "`index_${fileTable}_checksum_id_file_path` " +
+                        "ON `$fileTable` (`checksum_id`, `file_path`)"
+                )
+                database.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_${fileTable}_file_path` " +
+                        "ON `$fileTable` (`file_path`)"
+                )
+                val converters = DbConverters()
+                database.query("SELECT `_id`, `files_path` FROM `${table}_old`").use {
+                    cursor ->
+                    while (cursor.moveToNext()) {
+                        val checksumId = cursor.getInt(0)
+                        converters.toList(cursor.getString(1)).forEach {
+                            filePath ->
+                            val values = ContentValues()
+                            values.put("checksum_id", checksumId)
+                            values.put("file_path", filePath)
+                            database.insert(
+                                fileTable, SQLiteDatabase.CONFLICT_IGNORE, values
+                            )
+                        }
+                    }
+                }
+                database.execSQL("DROP TABLE `${table}_old`")
+            }
+        }
+
+        val MIGRATION_7_8 = object : Migration(7, 8) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "ALTER TABLE `SimilarImagesAnalysisMetadata` " +
+                        "ADD COLUMN `perceptual_hash` INTEGER"
+                )
+                for (segment in 0 until 4) {
+                    database.execSQL(
+                        "ALTER TABLE `SimilarImagesAnalysisMetadata` " +
+                            "ADD COLUMN `hash_segment_$segment` INTEGER"
+                    )
+                    database.execSQL(
+                        "CREATE INDEX IF NOT EXISTS " +
+                            "`index_SimilarImagesAnalysisMetadata_hash_segment_$segment` " +
+                            "ON `SimilarImagesAnalysisMetadata` (`hash_segment_$segment`)"
+                    )
+                }
+            }
+        }
+
+        val MIGRATION_8_9 = object : Migration(8, 9) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `MediaStoreIndexEntry` (`_id` INTEGER " +
+                        "PRIMARY KEY AUTOINCREMENT NOT NULL, `collection` INTEGER NOT NULL, " +
+                        "`media_id` INTEGER NOT NULL, `media_type` INTEGER NOT NULL, " +
+                        "`title` TEXT NOT NULL, `file_path` TEXT NOT NULL, " +
+                        "`date_modified` INTEGER NOT NULL, `size` INTEGER NOT NULL, " +
+                        "`width` INTEGER, `height` INTEGER, `duration` INTEGER, " +
+                        "`album` TEXT, `artist` TEXT, `album_id` INTEGER)"
+                )
+                database.execSQL(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS " +
+                        "`index_MediaStoreIndexEntry_collection_media_id` " +
+                        "ON `MediaStoreIndexEntry` (`collection`, `media_id`)"
+                )
+            }
+        }
+
+        val MIGRATION_9_10 = object : Migration(9, 10) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS `DocumentContent` USING FTS4(" +
+                        "`file_path` TEXT NOT NULL, `last_modified` INTEGER NOT NULL, " +
+                        "`content` TEXT NOT NULL, notindexed=`file_path`, " +
+                        "notindexed=`last_modified`)"
+                )
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `DocumentContentState` (`file_path` TEXT " +
+                        "NOT NULL, `last_modified` INTEGER NOT NULL, `content_rowid` INTEGER " +
+                        "NOT NULL, PRIMARY KEY(`file_path`))"
+                )
+            }
+        }
+
+        val MIGRATION_10_11 = object : Migration(10, 11) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `NetworkUsage` (`_id` INTEGER " +
+                        "PRIMARY KEY AUTOINCREMENT NOT NULL, `app_uid` INTEGER NOT NULL, " +
+                        "`period_start` INTEGER NOT NULL, `network_bytes` INTEGER NOT NULL)"
+                )
+                database.execSQL(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS `index_NetworkUsage_app_uid_period_start`" +
+                        " ON `NetworkUsage` (`app_uid`, `period_start`)"
+                )
+            }
+        }
     }
 }
@@ -49,3 +49,14 @@ data class AppStorageStats(
         packageSize: Long
     ) : this(0, packageName, timestamp, packageSize)
 }
+
+/**
+ * Size of a package at start and end of a period.
+ * See [AppStorageStatsDao.findWindows]
+ */
+@Keep
+data class AppStorageStatsWindow(
+    @ColumnInfo(name = "package_name") val packageName: String,
+    @ColumnInfo(name = "first_size") val firstSize: Long,
+    @ColumnInfo(name = "last_size") val lastSize: Long
+)
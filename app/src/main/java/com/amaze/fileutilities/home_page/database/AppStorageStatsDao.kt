@@ -49,22 +49,69 @@ interface AppStorageStatsDao {
         insert(appStorageStats)
     }
 
-    @Query("DELETE FROM AppStorageStats WHERE timestamp < :date")
-    fun deleteOlderThan(date: Date)
+    /**
+     * Latest sample of each package
+     */
+    @Query(
+        "SELECT _id, package_name, MAX(timestamp) AS timestamp, package_size " +
+            "FROM AppStorageStats GROUP BY package_name"
+    )
+    fun findLatest(): List<AppStorageStats>
+
+    /**
+     * Inserts sizes sampled at [timestamp] in a single transaction, skipping packages whose size
+     * didn't change since their latest sample, so that a package's size at any time is the size
+     * of it's latest sample before that time.
+     */
+    @Transaction
+    fun insertChanged(sizes: Map<String, Long>, timestamp: Date) {
+        val latestSizes = findLatest().associate { it.packageName to it.packageSize }
+        insert(
+            sizes.filter { latestSizes[it.key] != it.value }.map {
+                AppStorageStats(it.key, timestamp, it.value)
+            }
+        )
+    }
+
+    /**
+     * Deletes samples older than [date], except latest one of each package before that date
+     * as it's still the package's size at [date] if it didn't change since
+     */
+    @Query(
+        "DELETE FROM AppStorageStats WHERE timestamp < :date AND EXISTS (" +
+            "SELECT 1 FROM AppStorageStats newer " +
+            "WHERE newer.package_name = AppStorageStats.package_name " +
+            "AND newer.timestamp > AppStorageStats.timestamp AND newer.timestamp <= :date)"
+    )
+    fun deleteOlderThanKeepingLatest(date: Date)
+
+    @Query("SELECT DISTINCT package_name FROM AppStorageStats")
+    fun findPackageNames(): List<String>
+
+    @Query("DELETE FROM AppStorageStats WHERE package_name IN(:packageNames)")
+    fun deleteByPackageNames(packageNames: List<String>)
 
     @Query("SELECT * FROM AppStorageStats WHERE package_name=:packageName")
     fun findByPackageName(packageName: String): List<AppStorageStats>
 
+    /**
+     * Size of every package at [periodStart] and at [periodEnd], ie. it's latest sample at or
+     * before each time. Packages first sampled within the period start at their first sample.
+     */
     @Query(
-        "SELECT * FROM AppStorageStats " +
-            "WHERE package_name = :packageName " +
-            "AND timestamp >= :periodStart " + // Ensure that timestamp is after `periodStart`
-            "AND timestamp < :periodEnd " + // Ensure that timestamp is before `periodEnd`
-            "ORDER BY timestamp ASC LIMIT 1" // Get the oldest entry based on timestamp
+        "SELECT sample_window.package_name AS package_name, " +
+            "first_sample.package_size AS first_size, " +
+            "last_sample.package_size AS last_size FROM (" +
+            "SELECT package_name, COALESCE(MAX(CASE WHEN timestamp <= :periodStart " +
+            "THEN timestamp END), MIN(timestamp)) AS first_timestamp, " +
+            "MAX(timestamp) AS last_timestamp FROM AppStorageStats " +
+            "WHERE timestamp < :periodEnd GROUP BY package_name) sample_window " +
+            "JOIN AppStorageStats first_sample " +
+            "ON first_sample.package_name = sample_window.package_name " +
+            "AND first_sample.timestamp = sample_window.first_timestamp " +
+            "JOIN AppStorageStats last_sample " +
+            "ON last_sample.package_name = sample_window.package_name " +
+            "AND last_sample.timestamp = sample_window.last_timestamp"
     )
-    fun findOldestWithinPeriod(
-        packageName: String,
-        periodStart: Date,
-        periodEnd: Date
-    ): AppStorageStats?
+    fun findWindows(periodStart: Date, periodEnd: Date): List<AppStorageStatsWindow>
 }
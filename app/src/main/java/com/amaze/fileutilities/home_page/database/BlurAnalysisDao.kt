@@ -38,6 +38,15 @@ interface BlurAnalysisDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insert(analysis: BlurAnalysis)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(analysis: List<BlurAnalysis>)
+
+    /**
+     * Returns paths from [pathList] which are already analysed
+     */
+    @Query("SELECT file_path FROM bluranalysis WHERE file_path IN(:pathList)")
+    fun findAnalysedPaths(pathList: List<String>): List<String>
+
     @Delete
     fun delete(user: BlurAnalysis)
 
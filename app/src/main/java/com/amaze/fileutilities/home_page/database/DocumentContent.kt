@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.Ignore
+import androidx.room.PrimaryKey
+
+/**
+ * Text extracted from a document for full text search, valid as long as file's last modified
+ * time is same as [lastModified]. Documents whose text can't be extracted are stored with empty
+ * [content], so that they aren't extracted again until modified. Looked up through
+ * [DocumentContentState], as file_path isn't indexed.
+ * See [com.amaze.fileutilities.utilis.DocumentContentWorker]
+ */
+@Entity
+@Fts4(notIndexed = ["file_path", "last_modified"])
+@Keep
+data class DocumentContent(
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "rowid")
+    val rowId: Int,
+    @ColumnInfo(name = "file_path") val filePath: String,
+    @ColumnInfo(name = "last_modified") val lastModified: Long,
+    @ColumnInfo(name = "content") val content: String
+) {
+    @Ignore
+    constructor(filePath: String, lastModified: Long, content: String) :
+        this(0, filePath, lastModified, content)
+}
+
+/**
+ * Last modified time of a file whose text is in [DocumentContent] row [contentRowId], so that
+ * extracted files can be looked up without scanning full text table.
+ */
+@Entity
+@Keep
+data class DocumentContentState(
+    @PrimaryKey
+    @ColumnInfo(name = "file_path")
+    val filePath: String,
+    @ColumnInfo(name = "last_modified") val lastModified: Long,
+    @ColumnInfo(name = "content_rowid") val contentRowId: Long
+)
+
+/**
+ * A document matching a full text query, [matchInfo] is sqlite's matchinfo(DocumentContent, 'pcx')
+ * used for ranking, see [com.amaze.fileutilities.utilis.DocumentContentSearch]
+ */
+@Keep
+class DocumentContentMatch(
+    @ColumnInfo(name = "file_path") val filePath: String,
+    @ColumnInfo(name = "snippet") val snippet: String,
+    @ColumnInfo(name = "match_info") val matchInfo: ByteArray
+)
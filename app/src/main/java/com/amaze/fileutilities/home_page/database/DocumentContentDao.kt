@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+
+@Dao
+interface DocumentContentDao {
+
+    @Query("SELECT * FROM documentcontentstate")
+    fun findAllStates(): List<DocumentContentState>
+
+    @Query("SELECT * FROM documentcontentstate WHERE file_path=:filePath")
+    fun findStateByPath(filePath: String): DocumentContentState?
+
+    @Query(
+        "SELECT file_path, snippet(documentcontent, :snippetStart, :snippetEnd, '…', -1, " +
+            ":snippetTokens) AS snippet, matchinfo(documentcontent, 'pcx') AS match_info " +
+            "FROM documentcontent WHERE content MATCH :query"
+    )
+    fun search(
+        query: String,
+        snippetStart: String,
+        snippetEnd: String,
+        snippetTokens: Int
+    ): List<DocumentContentMatch>
+
+    @Insert
+    fun insert(documentContent: DocumentContent): Long
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertState(documentContentState: DocumentContentState)
+
+    @Query("DELETE FROM documentcontent WHERE rowid IN(:rowIds)")
+    fun deleteContentByRowIds(rowIds: List<Long>)
+
+    @Query("DELETE FROM documentcontentstate WHERE file_path IN(:filePaths)")
+    fun deleteStatesByPaths(filePaths: List<String>)
+
+    @Query("DELETE FROM documentcontent")
+    fun deleteAllContent()
+
+    @Query("DELETE FROM documentcontentstate")
+    fun deleteAllStates()
+
+    /**
+     * Deletes content of given files, at most [AppDatabase.BATCH_SIZE] at a time
+     */
+    @Transaction
+    fun delete(documentContentStates: List<DocumentContentState>) {
+        deleteContentByRowIds(documentContentStates.map { it.contentRowId })
+        deleteStatesByPaths(documentContentStates.map { it.filePath })
+    }
+
+    @Transaction
+    fun deleteAll() {
+        deleteAllContent()
+        deleteAllStates()
+    }
+
+    /**
+     * Replaces content previously extracted from same file, if any
+     */
+    @Transaction
+    fun replace(documentContent: DocumentContent) {
+        findStateByPath(documentContent.filePath)?.let {
+            deleteContentByRowIds(listOf(it.contentRowId))
+        }
+        val rowId = insert(documentContent)
+        insertState(
+            DocumentContentState(documentContent.filePath, documentContent.lastModified, rowId)
+        )
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Ignore
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Checksums computed for a file, valid as long as file's length and last modified time
+ * are same as [fileLength] and [lastModified]
+ */
+@Entity(indices = [Index(value = ["file_path"], unique = true)])
+@Keep
+data class FileChecksum(
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "_id")
+    val uid: Int,
+    @ColumnInfo(name = "file_path") val filePath: String,
+    @ColumnInfo(name = "file_length") val fileLength: Long,
+    @ColumnInfo(name = "last_modified") val lastModified: Long,
+    @ColumnInfo(name = "sampled_checksum") val sampledChecksum: String?,
+    @ColumnInfo(name = "sha256_checksum") val sha256Checksum: String?
+) {
+    @Ignore
+    constructor(
+        filePath: String,
+        fileLength: Long,
+        lastModified: Long,
+        sampledChecksum: String?,
+        sha256Checksum: String?
+    ) :
+        this(0, filePath, fileLength, lastModified, sampledChecksum, sha256Checksum)
+}
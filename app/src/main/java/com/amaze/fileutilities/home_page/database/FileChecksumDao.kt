@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+
+@Dao
+interface FileChecksumDao {
+
+    /**
+     * Finds checksums for [path] only if file hasn't changed since they were computed
+     */
+    @Query(
+        "SELECT * FROM filechecksum WHERE file_path=:path " +
+            "AND file_length=:fileLength AND last_modified=:lastModified"
+    )
+    fun findByPathAndFingerprint(
+        path: String,
+        fileLength: Long,
+        lastModified: Long
+    ): FileChecksum?
+
+    @Query("SELECT * FROM filechecksum WHERE _id>:afterUid ORDER BY _id LIMIT :limit")
+    fun findAfter(afterUid: Int, limit: Int): List<FileChecksum>
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insert(fileChecksum: FileChecksum)
+
+    @Query("DELETE FROM filechecksum WHERE file_path=:path")
+    fun deleteByPath(path: String)
+
+    @Query("DELETE FROM filechecksum WHERE _id IN(:uids)")
+    fun deleteByUids(uids: List<Int>)
+}
@@ -68,6 +68,15 @@ interface ImageAnalysisDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insert(analysis: ImageAnalysis)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(analysis: List<ImageAnalysis>)
+
+    /**
+     * Returns paths from [pathList] which are already analysed
+     */
+    @Query("SELECT file_path FROM imageanalysis WHERE file_path IN(:pathList)")
+    fun findAnalysedPaths(pathList: List<String>): List<String>
+
     @Delete
     fun deleteAll(vararg analysis: ImageAnalysis)
 
@@ -28,6 +28,7 @@ import androidx.room.PrimaryKey
 
 /**
  * While fetching and processing, be sure to validate that file exists
+ * Files having this checksum are saved in [InternalStorageAnalysisFile]
  */
 @Keep
 @Entity(indices = [Index(value = ["sha256_checksum"], unique = true)])
@@ -36,7 +37,6 @@ data class InternalStorageAnalysis(
     @ColumnInfo(name = "_id")
     val uid: Int,
     @ColumnInfo(name = "sha256_checksum") val checksum: String,
-    @ColumnInfo(name = "files_path") var files: List<String>,
     @ColumnInfo(name = "is_empty") val isEmpty: Boolean,
     @ColumnInfo(name = "is_junk") val isJunk: Boolean,
     @ColumnInfo(name = "is_directory") val isDirectory: Boolean,
@@ -45,12 +45,11 @@ data class InternalStorageAnalysis(
 ) {
     constructor(
         checksum: String,
-        filesPath: List<String>,
         isEmpty: Boolean,
         isJunk: Boolean,
         isDirectory: Boolean,
         isMediaStore: Boolean,
         depth: Int
     ) :
-        this(0, checksum, filesPath, isEmpty, isJunk, isDirectory, isMediaStore, depth)
+        this(0, checksum, isEmpty, isJunk, isDirectory, isMediaStore, depth)
 }
@@ -25,34 +25,121 @@ import androidx.room.Delete
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
+import androidx.room.Update
 
 @Dao
 interface InternalStorageAnalysisDao {
 
-    @Query("SELECT * FROM internalstorageanalysis where is_mediastore=0")
-    fun getAll(): List<InternalStorageAnalysis>
+    companion object {
+        private const val DUPLICATE_CHECKSUM_IDS = "SELECT checksum_id " +
+            "FROM internalstorageanalysisfile GROUP BY checksum_id HAVING count(*) > 1"
+    }
 
-    @Query("SELECT * FROM internalstorageanalysis where depth<=:depth and is_mediastore=0")
-    fun getAllShallow(depth: Int): List<InternalStorageAnalysis>
+    /**
+     * Returns checksums shared by more than one file
+     */
+    @Transaction
+    @Query(
+        "SELECT * FROM internalstorageanalysis " +
+            "where is_mediastore=0 and _id IN($DUPLICATE_CHECKSUM_IDS)"
+    )
+    fun getAllDuplicates(): List<InternalStorageAnalysisWithFiles>
+
+    /**
+     * Returns checksums shared by more than one file, up to [depth]
+     */
+    @Transaction
+    @Query(
+        "SELECT * FROM internalstorageanalysis " +
+            "where depth<=:depth and is_mediastore=0 and _id IN($DUPLICATE_CHECKSUM_IDS)"
+    )
+    fun getAllShallowDuplicates(depth: Int): List<InternalStorageAnalysisWithFiles>
 
-    @Query("SELECT * FROM internalstorageanalysis where is_mediastore=1")
-    fun getAllMediaFiles(): List<InternalStorageAnalysis>
+    /**
+     * Returns checksums shared by more than one media store file
+     */
+    @Transaction
+    @Query(
+        "SELECT * FROM internalstorageanalysis " +
+            "where is_mediastore=1 and _id IN($DUPLICATE_CHECKSUM_IDS)"
+    )
+    fun getAllMediaFileDuplicates(): List<InternalStorageAnalysisWithFiles>
 
+    @Transaction
     @Query("SELECT * FROM internalstorageanalysis where is_empty=1")
-    fun getAllEmptyFiles(): List<InternalStorageAnalysis>
+    fun getAllEmptyFiles(): List<InternalStorageAnalysisWithFiles>
 
     @Query("SELECT * FROM internalstorageanalysis WHERE sha256_checksum=:sha256Checksum")
     fun findBySha256Checksum(sha256Checksum: String): InternalStorageAnalysis?
 
     @Query(
-        "SELECT * FROM internalstorageanalysis " +
-            "WHERE is_mediastore = 1 and sha256_checksum=:sha256Checksum"
+        "SELECT internalstorageanalysis.* FROM internalstorageanalysis " +
+            "INNER JOIN internalstorageanalysisfile " +
+            "ON internalstorageanalysis._id = internalstorageanalysisfile.checksum_id " +
+            "WHERE internalstorageanalysisfile.file_path=:path"
     )
-    fun findMediaFileBySha256Checksum(sha256Checksum: String): InternalStorageAnalysis?
+    fun findByPath(path: String): List<InternalStorageAnalysis>
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    fun insertChecksum(analysis: InternalStorageAnalysis): Long
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    fun insert(analysis: InternalStorageAnalysis)
+    @Update
+    fun updateChecksum(analysis: InternalStorageAnalysis)
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    fun insertFiles(files: List<InternalStorageAnalysisFile>)
+
+    /**
+     * Adds [filesPath] to [analysis] checksum, creating the checksum if it doesn't exist yet or
+     * updating it's flags otherwise. Existing files of the checksum are kept.
+     */
+    @Transaction
+    fun insert(analysis: InternalStorageAnalysis, filesPath: List<String>) {
+        val existingChecksum = findBySha256Checksum(analysis.checksum)
+        val checksumId = if (existingChecksum == null) {
+            insertChecksum(analysis).toInt()
+        } else {
+            updateChecksum(analysis.copy(uid = existingChecksum.uid))
+            existingChecksum.uid
+        }
+        insertFiles(filesPath.map { InternalStorageAnalysisFile(checksumId, it) })
+    }
+
+    @Transaction
+    fun insertAll(analysis: List<InternalStorageAnalysisWithFiles>) {
+        analysis.forEach {
+            insert(it.analysis, it.files)
+        }
+    }
+
+    @Query(
+        "DELETE FROM internalstorageanalysisfile " +
+            "WHERE checksum_id=:checksumId and file_path IN(:pathList)"
+    )
+    fun deleteFiles(checksumId: Int, pathList: List<String>)
+
+    /**
+     * Deletes [path] from all checksums, along with checksums left without any file
+     */
+    @Transaction
+    fun deleteByPath(path: String) {
+        deleteFilesByPath(path)
+        deleteChecksumsWithoutFiles()
+    }
+
+    @Query("DELETE FROM internalstorageanalysisfile WHERE file_path=:path")
+    fun deleteFilesByPath(path: String)
+
+    @Query(
+        "DELETE FROM internalstorageanalysis " +
+            "WHERE _id NOT IN(SELECT checksum_id FROM internalstorageanalysisfile)"
+    )
+    fun deleteChecksumsWithoutFiles()
 
+    /**
+     * Deletes checksum along with all it's files
+     */
     @Delete
-    fun delete(user: InternalStorageAnalysis)
+    fun delete(analysis: InternalStorageAnalysis)
 }
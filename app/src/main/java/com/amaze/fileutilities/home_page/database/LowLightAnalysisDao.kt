@@ -38,6 +38,15 @@ interface LowLightAnalysisDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insert(analysis: LowLightAnalysis)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(analysis: List<LowLightAnalysis>)
+
+    /**
+     * Returns paths from [pathList] which are already analysed
+     */
+    @Query("SELECT file_path FROM lowlightanalysis WHERE file_path IN(:pathList)")
+    fun findAnalysedPaths(pathList: List<String>): List<String>
+
     @Delete
     fun delete(user: LowLightAnalysis)
 
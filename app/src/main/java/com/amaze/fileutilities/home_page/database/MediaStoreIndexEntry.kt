@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import android.content.Context
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Ignore
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
+
+/**
+ * A row of media store as last seen by a query on [collection], which is one of
+ * [MediaFileInfo] media types, or [MediaFileInfo.MEDIA_TYPE_UNKNOWN] for all files.
+ * See [com.amaze.fileutilities.utilis.MediaStoreIndex]
+ */
+@Entity(indices = [Index(value = ["collection", "media_id"], unique = true)])
+@Keep
+data class MediaStoreIndexEntry(
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "_id")
+    val uid: Int,
+    @ColumnInfo(name = "collection") val collection: Int,
+    @ColumnInfo(name = "media_id") val mediaId: Long,
+    @ColumnInfo(name = "media_type") val mediaType: Int,
+    @ColumnInfo(name = "title") val title: String,
+    @ColumnInfo(name = "file_path") val filePath: String,
+    @ColumnInfo(name = "date_modified") val dateModified: Long,
+    @ColumnInfo(name = "size") val size: Long,
+    @ColumnInfo(name = "width") val width: Int?,
+    @ColumnInfo(name = "height") val height: Int?,
+    @ColumnInfo(name = "duration") val duration: Long?,
+    @ColumnInfo(name = "album") val album: String?,
+    @ColumnInfo(name = "artist") val artist: String?,
+    @ColumnInfo(name = "album_id") val albumId: Long?
+) {
+    @Ignore
+    constructor(collection: Int, mediaFileInfo: MediaFileInfo) : this(
+        0, collection, mediaFileInfo.id,
+        mediaFileInfo.extraInfo?.mediaType ?: collection,
+        mediaFileInfo.title, mediaFileInfo.path, mediaFileInfo.date, mediaFileInfo.longSize,
+        mediaFileInfo.extraInfo?.imageMetaData?.width
+            ?: mediaFileInfo.extraInfo?.videoMetaData?.width,
+        mediaFileInfo.extraInfo?.imageMetaData?.height
+            ?: mediaFileInfo.extraInfo?.videoMetaData?.height,
+        mediaFileInfo.extraInfo?.audioMetaData?.duration
+            ?: mediaFileInfo.extraInfo?.videoMetaData?.duration,
+        mediaFileInfo.extraInfo?.audioMetaData?.albumName,
+        mediaFileInfo.extraInfo?.audioMetaData?.artistName,
+        mediaFileInfo.extraInfo?.audioMetaData?.albumId
+    )
+
+    fun toMediaFileInfo(context: Context): MediaFileInfo {
+        return MediaFileInfo.fromFile(
+            mediaType, mediaId, title, filePath, dateModified, size, context,
+            MediaFileInfo.ExtraInfo(
+                mediaType,
+                if (mediaType == MediaFileInfo.MEDIA_TYPE_AUDIO) {
+                    MediaFileInfo.AudioMetaData(
+                        album, artist, duration, albumId,
+                        null, null
+                    )
+                } else {
+                    null
+                },
+                if (mediaType == MediaFileInfo.MEDIA_TYPE_VIDEO) {
+                    MediaFileInfo.VideoMetaData(duration, width, height)
+                } else {
+                    null
+                },
+                if (mediaType == MediaFileInfo.MEDIA_TYPE_IMAGE) {
+                    MediaFileInfo.ImageMetaData(width, height)
+                } else {
+                    null
+                }
+            )
+        )
+    }
+}
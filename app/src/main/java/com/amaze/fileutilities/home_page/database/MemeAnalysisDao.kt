@@ -38,6 +38,15 @@ interface MemeAnalysisDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insert(analysis: MemeAnalysis)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(analysis: List<MemeAnalysis>)
+
+    /**
+     * Returns paths from [pathList] which are already analysed
+     */
+    @Query("SELECT file_path FROM memeanalysis WHERE file_path IN(:pathList)")
+    fun findAnalysedPaths(pathList: List<String>): List<String>
+
     @Delete
     fun delete(user: MemeAnalysis)
 
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Ignore
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Bytes sent and received by [appUid] over mobile and wifi in period starting at [periodStart].
+ * See [com.amaze.fileutilities.utilis.NetworkUsageAggregator]
+ */
+@Entity(indices = [Index(value = ["app_uid", "period_start"], unique = true)])
+@Keep
+data class NetworkUsage(
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "_id")
+    val uid: Int,
+    @ColumnInfo(name = "app_uid") val appUid: Int,
+    @ColumnInfo(name = "period_start") val periodStart: Long,
+    @ColumnInfo(name = "network_bytes") val networkBytes: Long
+) {
+    @Ignore
+    constructor(appUid: Int, periodStart: Long, networkBytes: Long) :
+        this(0, appUid, periodStart, networkBytes)
+}
+
+/**
+ * Bytes sent and received by [appUid] summed over periods.
+ * See [NetworkUsageDao.findTotalsSince]
+ */
+@Keep
+data class NetworkUsageTotal(
+    @ColumnInfo(name = "app_uid") val appUid: Int,
+    @ColumnInfo(name = "network_bytes") val networkBytes: Long
+)
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.home_page.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+
+@Dao
+interface NetworkUsageDao {
+
+    @Query(
+        "SELECT app_uid, SUM(network_bytes) AS network_bytes FROM networkusage " +
+            "WHERE period_start>=:periodStart GROUP BY app_uid"
+    )
+    fun findTotalsSince(periodStart: Long): List<NetworkUsageTotal>
+
+    /**
+     * Start of last period usage was saved for, null if usage was never saved
+     */
+    @Query("SELECT MAX(period_start) FROM networkusage")
+    fun findLastPeriodStart(): Long?
+
+    @Query("SELECT DISTINCT app_uid FROM networkusage")
+    fun findAppUids(): List<Int>
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(networkUsages: List<NetworkUsage>)
+
+    @Query("DELETE FROM networkusage WHERE period_start<:periodStart")
+    fun deleteOlderThan(periodStart: Long)
+
+    @Query("DELETE FROM networkusage WHERE app_uid IN(:appUids)")
+    fun deleteByAppUids(appUids: List<Int>)
+}
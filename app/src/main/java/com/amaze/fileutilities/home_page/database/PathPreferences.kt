@@ -28,7 +28,10 @@ import androidx.room.Entity
 import androidx.room.Ignore
 import androidx.room.Index
 import androidx.room.PrimaryKey
+import androidx.work.ExistingWorkPolicy
+import com.amaze.fileutilities.utilis.DocumentContentWorker
 import com.amaze.fileutilities.utilis.PreferencesConstants
+import com.amaze.fileutilities.utilis.Utils
 import java.lang.ref.WeakReference
 
 /**
@@ -61,6 +64,10 @@ data class PathPreferences(
         const val FEATURE_ANALYSIS_WHATSAPP = 9
         const val FEATURE_ANALYSIS_LARGE_FILES = 10
         const val FEATURE_ANALYSIS_SIMILAR_IMAGES = 11
+        const val FEATURE_DOCUMENT_CONTENT = 12
+
+        // features where paths are excluded instead of included
+        val EXCLUDE_FEATURES_LIST = arrayListOf(FEATURE_AUDIO_PLAYER, FEATURE_DOCUMENT_CONTENT)
 
         val ANALYSE_FEATURES_LIST = arrayListOf(
             FEATURE_ANALYSIS_MEME, FEATURE_ANALYSIS_BLUR,
@@ -100,6 +107,16 @@ data class PathPreferences(
             )
         }
 
+        /**
+         * Paths of [FEATURE_DOCUMENT_CONTENT] are exclusions, so there's no extracted text under
+         * them to delete. Clears text of all documents instead, to be extracted again by
+         * [DocumentContentWorker]
+         */
+        fun resetDocumentContent(context: Context) {
+            AppDatabase.getInstance(context).documentContentDao().deleteAll()
+            Utils.scheduleDocumentContentWorker(context, ExistingWorkPolicy.REPLACE)
+        }
+
         fun deleteAnalysisData(
             pathPreferences: List<PathPreferences>,
             contextRef: WeakReference<Context>
@@ -132,6 +149,9 @@ data class PathPreferences(
                             similarImagesAnalysisMetadataDao.deleteByPathContains(it.path)
                             similarImagesAnalysisDao.deleteAll()
                         }
+                        FEATURE_DOCUMENT_CONTENT -> {
+                            resetDocumentContent(context)
+                        }
                     }
                 }
             }
@@ -28,7 +28,8 @@ import androidx.room.Index
 import androidx.room.PrimaryKey
 
 /**
- * Metadata used to process similar images
+ * Metadata used to process similar images,
+ * images having this histogram checksum are saved in [SimilarImagesAnalysisFile]
  */
 @Keep
 @Entity(indices = [Index(value = ["histogram_checksum"], unique = true)])
@@ -36,13 +37,11 @@ data class SimilarImagesAnalysis(
     @PrimaryKey(autoGenerate = true)
     @ColumnInfo(name = "_id")
     val uid: Int,
-    @ColumnInfo(name = "histogram_checksum") val histogram_checksum: String,
-    @ColumnInfo(name = "files_path") var files: Set<String>
+    @ColumnInfo(name = "histogram_checksum") val histogram_checksum: String
 ) {
     @Ignore
     constructor(
-        histogramChecksum: String,
-        filesPath: Set<String>
+        histogramChecksum: String
     ) :
-        this(0, histogramChecksum, filesPath)
+        this(0, histogramChecksum)
 }
@@ -25,19 +25,59 @@ import androidx.room.Delete
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 
 @Dao
 interface SimilarImagesAnalysisDao {
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    fun insert(imagesAnalysis: SimilarImagesAnalysis)
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    fun insertChecksum(imagesAnalysis: SimilarImagesAnalysis): Long
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    fun insertFiles(files: List<SimilarImagesAnalysisFile>)
+
+    /**
+     * Adds [filesPath] to [imagesAnalysis] histogram checksum, creating the checksum if it
+     * doesn't exist yet. Existing files of the checksum are kept.
+     */
+    @Transaction
+    fun insert(imagesAnalysis: SimilarImagesAnalysis, filesPath: Collection<String>) {
+        val checksumId = findByHistogramChecksum(imagesAnalysis.histogram_checksum)?.uid
+            ?: insertChecksum(imagesAnalysis).toInt()
+        insertFiles(filesPath.map { SimilarImagesAnalysisFile(checksumId, it) })
+    }
 
     @Query("SELECT * FROM similarimagesanalysis WHERE histogram_checksum=:histogramChecksum")
     fun findByHistogramChecksum(histogramChecksum: String): SimilarImagesAnalysis?
 
-    @Query("SELECT * FROM similarimagesanalysis")
-    fun getAll(): List<SimilarImagesAnalysis>
+    /**
+     * Returns histogram checksums shared by more than one image
+     */
+    @Transaction
+    @Query(
+        "SELECT * FROM similarimagesanalysis WHERE _id IN(SELECT checksum_id " +
+            "FROM similarimagesanalysisfile GROUP BY checksum_id HAVING count(*) > 1)"
+    )
+    fun getAllSimilar(): List<SimilarImagesAnalysisWithFiles>
+
+    @Query(
+        "DELETE FROM similarimagesanalysisfile " +
+            "WHERE checksum_id=:checksumId and file_path IN(:pathList)"
+    )
+    fun deleteFiles(checksumId: Int, pathList: List<String>)
+
+    /**
+     * Removes image at [path] from [histogramChecksum], eg. when marked as false positive
+     */
+    @Query(
+        "DELETE FROM similarimagesanalysisfile WHERE file_path=:path and checksum_id IN(" +
+            "SELECT _id FROM similarimagesanalysis WHERE histogram_checksum=:histogramChecksum)"
+    )
+    fun deleteFileByHistogramChecksum(histogramChecksum: String, path: String)
 
+    /**
+     * Deletes histogram checksum along with all it's files
+     */
     @Delete
     fun delete(imagesAnalysis: SimilarImagesAnalysis)
 
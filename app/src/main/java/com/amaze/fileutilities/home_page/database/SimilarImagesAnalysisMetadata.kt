@@ -26,12 +26,24 @@ import androidx.room.Entity
 import androidx.room.Ignore
 import androidx.room.Index
 import androidx.room.PrimaryKey
+import com.amaze.fileutilities.utilis.ImgUtils
 
 /**
  * While processing similar images
+ * [perceptualHash] is also split in [ImgUtils.PERCEPTUAL_HASH_SEGMENTS] indexed segments, so that
+ * images within [ImgUtils.PERCEPTUAL_HASH_MAX_DISTANCE] can be looked up by segment
+ * (multi index hashing) instead of comparing every pair of images
  */
 @Keep
-@Entity(indices = [Index(value = ["file_path", "parent_path"], unique = true)])
+@Entity(
+    indices = [
+        Index(value = ["file_path", "parent_path"], unique = true),
+        Index(value = ["hash_segment_0"]),
+        Index(value = ["hash_segment_1"]),
+        Index(value = ["hash_segment_2"]),
+        Index(value = ["hash_segment_3"])
+    ]
+)
 data class SimilarImagesAnalysisMetadata(
     @PrimaryKey(autoGenerate = true)
     @ColumnInfo(name = "_id")
@@ -43,7 +55,12 @@ data class SimilarImagesAnalysisMetadata(
     @ColumnInfo(name = "red_channel") val redChannel: List<Pair<Int, Int>>,
     @ColumnInfo(name = "datapoints") val datapoints: Int,
     @ColumnInfo(name = "threshold") val threshold: Int,
-    @ColumnInfo(name = "is_analysed") var isAnalysed: Boolean
+    @ColumnInfo(name = "is_analysed") var isAnalysed: Boolean,
+    @ColumnInfo(name = "perceptual_hash") val perceptualHash: Long?,
+    @ColumnInfo(name = "hash_segment_0") val hashSegment0: Int?,
+    @ColumnInfo(name = "hash_segment_1") val hashSegment1: Int?,
+    @ColumnInfo(name = "hash_segment_2") val hashSegment2: Int?,
+    @ColumnInfo(name = "hash_segment_3") val hashSegment3: Int?
 ) {
     @Ignore
     constructor(
@@ -53,10 +70,15 @@ data class SimilarImagesAnalysisMetadata(
         greenChannel: List<Pair<Int, Int>>,
         redChannel: List<Pair<Int, Int>>,
         datapoints: Int,
-        threshold: Int
+        threshold: Int,
+        perceptualHash: Long
     ) :
         this(
             0, parentPath, filePath, blueChannel, greenChannel, redChannel, datapoints,
-            threshold, false
+            threshold, false, perceptualHash,
+            ImgUtils.getPerceptualHashSegment(perceptualHash, 0),
+            ImgUtils.getPerceptualHashSegment(perceptualHash, 1),
+            ImgUtils.getPerceptualHashSegment(perceptualHash, 2),
+            ImgUtils.getPerceptualHashSegment(perceptualHash, 3)
         )
 }
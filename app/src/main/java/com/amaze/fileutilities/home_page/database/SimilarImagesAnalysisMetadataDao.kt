@@ -44,9 +44,44 @@ interface SimilarImagesAnalysisMetadataDao {
     @Query("SELECT * FROM similarimagesanalysismetadata")
     fun getAll(): List<SimilarImagesAnalysisMetadata>
 
+    @Query(
+        "SELECT * FROM similarimagesanalysismetadata " +
+            "WHERE file_path IN(:pathList) and is_analysed=0"
+    )
+    fun findAllNotAnalysedByPaths(pathList: List<String>): List<SimilarImagesAnalysisMetadata>
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     fun insert(imagesAnalysis: SimilarImagesAnalysisMetadata)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(imagesAnalysis: List<SimilarImagesAnalysisMetadata>)
+
+    /**
+     * Returns images sharing any of the hash segment values, see
+     * [com.amaze.fileutilities.utilis.ImgUtils.getPerceptualHashSegmentProbes]
+     */
+    @Query(
+        "SELECT * FROM similarimagesanalysismetadata " +
+            "WHERE hash_segment_0 IN(:segment0) OR hash_segment_1 IN(:segment1) " +
+            "OR hash_segment_2 IN(:segment2) OR hash_segment_3 IN(:segment3)"
+    )
+    fun findAllByHashSegments(
+        segment0: List<Int>,
+        segment1: List<Int>,
+        segment2: List<Int>,
+        segment3: List<Int>
+    ): List<SimilarImagesAnalysisMetadata>
+
+    /**
+     * Returns paths from [pathList] which are already analysed, images analysed before
+     * perceptual hash was introduced are analysed again
+     */
+    @Query(
+        "SELECT file_path FROM similarimagesanalysismetadata " +
+            "WHERE file_path IN(:pathList) and perceptual_hash IS NOT NULL"
+    )
+    fun findAnalysedPaths(pathList: List<String>): List<String>
+
     @Delete
     fun delete(imagesAnalysis: SimilarImagesAnalysisMetadata)
 
@@ -55,4 +90,10 @@ interface SimilarImagesAnalysisMetadataDao {
 
     @Query("SELECT count(*) from similarimagesanalysismetadata")
     fun getAllCount(): Int
+
+    @Query(
+        "SELECT count(*) from similarimagesanalysismetadata " +
+            "WHERE perceptual_hash IS NOT NULL"
+    )
+    fun getAllHashedCount(): Int
 }
@@ -30,139 +30,57 @@ interface AggregatedMediaFileInfoObserver {
 
     fun lifeCycleOwner(): LifecycleOwner
 
+    /**
+     * Observes images, videos, audios and docs lists together, so that all four are loaded
+     * concurrently. [callback] is invoked with isLoading true and lists loaded so far until
+     * every list is available, then with isLoading false and all four lists.
+     */
     fun observeMediaInfoLists(
         callback: (
             isLoading: Boolean,
             aggregatedFiles: AggregatedMediaFiles?
         ) -> Unit
     ) {
+        val aggregatedFiles = AggregatedMediaFiles()
         getFilesModel().usedImagesSummaryTransformations()
             .observe(
                 lifeCycleOwner()
             ) { imagesPair ->
-                imagesPairObserver(callback, imagesPair)
+                aggregatedFiles.imagesMediaFilesList = imagesPair?.second
+                publishMediaInfoLists(callback, aggregatedFiles)
+            }
+        getFilesModel().usedVideosSummaryTransformations()
+            .observe(
+                lifeCycleOwner()
+            ) { videosPair ->
+                aggregatedFiles.videosMediaFilesList = videosPair?.second
+                publishMediaInfoLists(callback, aggregatedFiles)
+            }
+        getFilesModel().usedAudiosSummaryTransformations()
+            .observe(
+                lifeCycleOwner()
+            ) { audiosPair ->
+                aggregatedFiles.audiosMediaFilesList = audiosPair?.second
+                publishMediaInfoLists(callback, aggregatedFiles)
+            }
+        getFilesModel().usedDocsSummaryTransformations()
+            .observe(
+                lifeCycleOwner()
+            ) { docsPair ->
+                aggregatedFiles.docsMediaFilesList = docsPair?.second
+                publishMediaInfoLists(callback, aggregatedFiles)
             }
     }
 
-    private fun imagesPairObserver(
-        callback: (
-            isLoading: Boolean,
-            aggregatedFiles: AggregatedMediaFiles?
-        ) -> Unit,
-        imagesPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>?
-    ) {
-        if (imagesPair?.second != null) {
-//            showLoadingViews(false)
-            getFilesModel().usedVideosSummaryTransformations()
-                .observe(
-                    lifeCycleOwner()
-                ) { videosPair ->
-                    videosPairObserver(callback, videosPair, imagesPair)
-                }
-        } else {
-            callback.invoke(true, null)
-        }
-    }
-
-    private fun videosPairObserver(
-        callback: (
-            isLoading: Boolean,
-            aggregatedFiles: AggregatedMediaFiles?
-        ) -> Unit,
-        videosPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>?,
-        imagesPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>
-    ) {
-        if (videosPair?.second != null) {
-//            showLoadingViews(false)
-            getFilesModel().usedAudiosSummaryTransformations()
-                .observe(
-                    lifeCycleOwner()
-                ) { audiosPair ->
-                    audiosPairObserver(
-                        callback,
-                        audiosPair, videosPair, imagesPair
-                    )
-                }
-        } else {
-            callback.invoke(true, null)
-        }
-    }
-
-    private fun audiosPairObserver(
-        callback: (
-            isLoading: Boolean,
-            aggregatedFiles: AggregatedMediaFiles?
-        ) -> Unit,
-        audiosPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>?,
-        videosPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>,
-        imagesPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>
-    ) {
-        if (audiosPair?.second != null) {
-//            showLoadingViews(false)
-            getFilesModel().usedDocsSummaryTransformations()
-                .observe(
-                    lifeCycleOwner()
-                ) { docsPair ->
-                    docsPairObserver(
-                        callback,
-                        docsPair, audiosPair, videosPair, imagesPair
-                    )
-                }
-        } else {
-            callback.invoke(true, null)
-        }
-    }
-
-    private fun docsPairObserver(
+    private fun publishMediaInfoLists(
         callback: (
             isLoading: Boolean,
             aggregatedFiles: AggregatedMediaFiles?
         ) -> Unit,
-        docsPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>?,
-        audiosPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>,
-        videosPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>,
-        imagesPair:
-            Pair<FilesViewModel.StorageSummary,
-                List<MediaFileInfo>>
+        aggregatedFiles: AggregatedMediaFiles
     ) {
-        if (docsPair?.second != null) {
-            /*showLoadingViews(false)
-            showEmptyViews()
-            searchQueryInput.run {
-                imagesMediaFilesList = imagesPair.second
-                videosMediaFilesList = videosPair.second
-                audiosMediaFilesList = audiosPair.second
-                docsMediaFilesList = docsPair.second
-            }*/
-            callback.invoke(
-                false,
-                AggregatedMediaFiles(
-                    imagesPair.second,
-                    videosPair.second, audiosPair.second, docsPair.second
-                )
-            )
-        } else {
-            callback.invoke(true, null)
-//            showLoadingViews(true)
-        }
+        // pass a copy, as lists keep getting replaced in aggregatedFiles on later emissions
+        callback.invoke(!aggregatedFiles.mediaListsLoaded(), aggregatedFiles.copy())
     }
 
     data class AggregatedMediaFiles(
@@ -46,6 +46,8 @@ import com.amaze.fileutilities.home_page.database.PathPreferences
 import com.amaze.fileutilities.home_page.ui.files.FilesViewModel
 import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
 import com.amaze.fileutilities.utilis.AbstractMediaFileInfoOperationsFragment
+import com.amaze.fileutilities.utilis.FileUtils
+import com.amaze.fileutilities.utilis.ImageAnalysisPipeline
 import com.amaze.fileutilities.utilis.PreferencesConstants
 import com.amaze.fileutilities.utilis.Utils
 import com.amaze.fileutilities.utilis.getAppCommonSharedPreferences
@@ -85,13 +87,13 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
         val prefs = requireContext().getAppCommonSharedPreferences()
         binding.run {
             blurredPicsPreview.invalidateProgress(filesViewModel.isImageBlurAnalysing) {
-                filesViewModel.isImageBlurAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.BLUR)
             }
             lowLightPreview.invalidateProgress(filesViewModel.isImageLowLightAnalysing) {
-                filesViewModel.isImageLowLightAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.LOW_LIGHT)
             }
             memesPreview.invalidateProgress(filesViewModel.isImageMemesAnalysing) {
-                filesViewModel.isImageMemesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.MEME)
             }
             setVisibility(prefs)
             setClickListeners()
@@ -146,7 +148,7 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                 }
             }
             sadPreview.invalidateProgress(filesViewModel.isImageFeaturesAnalysing) {
-                filesViewModel.isImageFeaturesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.FEATURES)
             }
 
             analyseViewModel.getDistractedImages(dao).observe(viewLifecycleOwner) {
@@ -159,7 +161,7 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                 }
             }
             distractedPreview.invalidateProgress(filesViewModel.isImageFeaturesAnalysing) {
-                filesViewModel.isImageFeaturesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.FEATURES)
             }*/
 
             analyseViewModel.getSleepingImages(dao).observe(viewLifecycleOwner) {
@@ -172,7 +174,7 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                 }
             }
             sleepingPreview.invalidateProgress(filesViewModel.isImageFeaturesAnalysing) {
-                filesViewModel.isImageFeaturesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.FEATURES)
             }
 
             analyseViewModel.getSelfieImages(dao).observe(viewLifecycleOwner) {
@@ -185,7 +187,7 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                 }
             }
             selfiePreview.invalidateProgress(filesViewModel.isImageFeaturesAnalysing) {
-                filesViewModel.isImageFeaturesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.FEATURES)
             }
 
             analyseViewModel.getGroupPicImages(dao).observe(viewLifecycleOwner) {
@@ -198,7 +200,7 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                 }
             }
             groupPicPreview.invalidateProgress(filesViewModel.isImageFeaturesAnalysing) {
-                filesViewModel.isImageFeaturesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.FEATURES)
             }
 
             analyseViewModel.getSimilarImages(similarImagesAnalysisDao)
@@ -226,7 +228,7 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                     }
                 }
             similarImagesPreview.invalidateProgress(filesViewModel.isSimilarImagesAnalysing) {
-                filesViewModel.isSimilarImagesAnalysing = false
+                filesViewModel.stopImageAnalysis(ImageAnalysisPipeline.Analysis.HISTOGRAM)
             }
 
             val duplicatePref = prefs.getInt(
@@ -269,6 +271,23 @@ class AnalyseFragment : AbstractMediaFileInfoOperationsFragment() {
                     filesViewModel.isInternalStorageAnalysing = false
                 }
             }
+            if (!searchMediaFiles) {
+                filesViewModel.internalStorageAnalysisProgressLiveData
+                    .observe(viewLifecycleOwner) {
+                        progress ->
+                        duplicateFilesPreview.setProgressText(
+                            progress?.let {
+                                getString(
+                                    R.string.files_analysis_progress, it.filesListed,
+                                    FileUtils.formatStorageLength(requireContext(), it.bytesHashed),
+                                    FileUtils.formatStorageLength(
+                                        requireContext(), it.bytesPerSecond
+                                    )
+                                )
+                            }
+                        )
+                    }
+            }
 
             filesViewModel.getLargeFilesLiveData().observe(viewLifecycleOwner) {
                 largeFiles ->
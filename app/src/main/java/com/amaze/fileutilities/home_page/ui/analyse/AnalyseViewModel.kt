@@ -29,14 +29,14 @@ import com.amaze.fileutilities.home_page.database.BlurAnalysis
 import com.amaze.fileutilities.home_page.database.BlurAnalysisDao
 import com.amaze.fileutilities.home_page.database.ImageAnalysis
 import com.amaze.fileutilities.home_page.database.ImageAnalysisDao
-import com.amaze.fileutilities.home_page.database.InternalStorageAnalysis
 import com.amaze.fileutilities.home_page.database.InternalStorageAnalysisDao
+import com.amaze.fileutilities.home_page.database.InternalStorageAnalysisWithFiles
 import com.amaze.fileutilities.home_page.database.LowLightAnalysis
 import com.amaze.fileutilities.home_page.database.LowLightAnalysisDao
 import com.amaze.fileutilities.home_page.database.MemeAnalysis
 import com.amaze.fileutilities.home_page.database.MemeAnalysisDao
-import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysis
 import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisDao
+import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisWithFiles
 import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
 import com.amaze.fileutilities.utilis.AbstractMediaFilesAdapter
 import com.amaze.fileutilities.utilis.FixedSizePriorityQueue
@@ -397,16 +397,10 @@ class AnalyseViewModel : ViewModel() {
                         mediaItem.extraInfo?.extraMetaData != null &&
                         mediaItem.extraInfo?.extraMetaData?.checksum != null
                     ) {
-                        val existingEntry =
-                            dao.findByHistogramChecksum(
-                                mediaItem.extraInfo?.extraMetaData?.checksum!!
-                            )
-                        val newFiles =
-                            existingEntry?.files?.filter { mediaItem.path != it }?.toSet()
-                        newFiles?.let {
-                            existingEntry.files = newFiles
-                            dao.insert(existingEntry)
-                        }
+                        dao.deleteFileByHistogramChecksum(
+                            mediaItem.extraInfo?.extraMetaData?.checksum!!,
+                            mediaItem.path
+                        )
                     }
                 }
             }
@@ -495,14 +489,17 @@ class AnalyseViewModel : ViewModel() {
 
     private fun transformSimilarImagesAnalysisToMediaFile(dao: SimilarImagesAnalysisDao):
         ArrayList<MediaFileInfo> {
-        val analysis = dao.getAll()
+        val analysis = dao.getAllSimilar()
         val response = analysis.filter {
             it.invalidate(dao)
-        }.filter {
-            it.files.size > 1
-        }.toSortedSet(object : Comparator<SimilarImagesAnalysis> {
-            override fun compare(o1: SimilarImagesAnalysis?, o2: SimilarImagesAnalysis?): Int {
-                if (o1 == null || o2 == null || o1.histogram_checksum == o2.histogram_checksum) {
+        }.toSortedSet(object : Comparator<SimilarImagesAnalysisWithFiles> {
+            override fun compare(
+                o1: SimilarImagesAnalysisWithFiles?,
+                o2: SimilarImagesAnalysisWithFiles?
+            ): Int {
+                if (o1 == null || o2 == null ||
+                    o1.analysis.histogram_checksum == o2.analysis.histogram_checksum
+                ) {
                     return 0
                 }
                 return 1
@@ -510,7 +507,7 @@ class AnalyseViewModel : ViewModel() {
         }).map {
             it.files.map {
                 filePath ->
-                val extraMetaData = MediaFileInfo.ExtraMetaData(it.histogram_checksum)
+                val extraMetaData = MediaFileInfo.ExtraMetaData(it.analysis.histogram_checksum)
                 MediaFileInfo.fromFile(
                     File(filePath),
                     MediaFileInfo.ExtraInfo(
@@ -548,25 +545,25 @@ class AnalyseViewModel : ViewModel() {
         deepSearch: Boolean
     ):
         ArrayList<MediaFileInfo> {
-        val analysis: List<InternalStorageAnalysis> = when {
+        val analysis: List<InternalStorageAnalysisWithFiles> = when {
             searchMediaFiles -> {
-                dao.getAllMediaFiles()
+                dao.getAllMediaFileDuplicates()
             }
             deepSearch -> {
-                dao.getAll()
+                dao.getAllDuplicates()
             }
             else -> {
-                dao.getAllShallow(PreferencesConstants.DEFAULT_DUPLICATE_SEARCH_DEPTH_INCL)
+                dao.getAllShallowDuplicates(
+                    PreferencesConstants.DEFAULT_DUPLICATE_SEARCH_DEPTH_INCL
+                )
             }
         }
         val response = analysis.filter {
             it.invalidate(dao)
-        }.filter {
-            it.files.size > 1
         }.map {
             it.files.map {
                 filePath ->
-                val extraMetaData = MediaFileInfo.ExtraMetaData(it.checksum)
+                val extraMetaData = MediaFileInfo.ExtraMetaData(it.analysis.checksum)
                 MediaFileInfo.fromFile(
                     File(filePath),
                     MediaFileInfo.ExtraInfo(
@@ -54,6 +54,7 @@ class AnalysisTypeView(context: Context, attrs: AttributeSet?) : LinearLayout(co
     private val cleanButton: Button
     private val loadingProgressParent: RelativeLayout
     private val loadingProgress: ProgressBar
+    private val loadingProgressText: TextView
     private val loadingHorizontalScroll: ProgressBar
     private val cancelLoadingView: ImageView
     private val requirePermissionsParent: LinearLayout
@@ -84,6 +85,7 @@ class AnalysisTypeView(context: Context, attrs: AttributeSet?) : LinearLayout(co
         cleanButton = cleanButtonParent.findViewById(R.id.clean_button)
         loadingProgressParent = cleanButtonParent.findViewById(R.id.loading_progress_parent)
         loadingProgress = loadingProgressParent.findViewById(R.id.loading_progress)
+        loadingProgressText = cleanButtonParent.findViewById(R.id.loading_progress_text)
         cancelLoadingView = loadingProgressParent.findViewById(R.id.cancel_loading_button)
         loadingHorizontalScroll = imagesListScroll.findViewById(R.id.scroll_progress)
         requirePermissionsParent = imagesListParent.findViewById(R.id.require_permission_parent)
@@ -152,6 +154,14 @@ class AnalysisTypeView(context: Context, attrs: AttributeSet?) : LinearLayout(co
         }
     }
 
+    /**
+     * Shows progress details of the ongoing task besides progress bar, hidden if text is null
+     */
+    fun setProgressText(text: String?) {
+        loadingProgressText.text = text
+        loadingProgressText.visibility = if (text != null) View.VISIBLE else View.GONE
+    }
+
     fun loadPreviews(mediaFileInfoList: List<MediaFileInfo>, cleanButtonClick: () -> Unit) {
         if (mediaFileInfoList.isEmpty()) {
             hideFade(300)
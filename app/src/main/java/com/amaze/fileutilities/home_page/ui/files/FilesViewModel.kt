@@ -42,6 +42,8 @@ import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.liveData
 import androidx.lifecycle.switchMap
 import androidx.lifecycle.viewModelScope
+import androidx.work.WorkInfo
+import androidx.work.WorkManager
 import com.abedelazizshe.lightcompressorlibrary.CompressionListener
 import com.abedelazizshe.lightcompressorlibrary.VideoCompressor
 import com.abedelazizshe.lightcompressorlibrary.VideoQuality
@@ -50,31 +52,32 @@ import com.abedelazizshe.lightcompressorlibrary.config.SaveLocation
 import com.abedelazizshe.lightcompressorlibrary.config.SharedStorageConfiguration
 import com.amaze.fileutilities.BuildConfig
 import com.amaze.fileutilities.R
-import com.amaze.fileutilities.audio_player.AudioUtils
-import com.amaze.fileutilities.audio_player.playlist.PlaylistLoader
+import com.amaze.fileutilities.audio_player.playlist.PlaylistRepository
 import com.amaze.fileutilities.home_page.database.AppDatabase
-import com.amaze.fileutilities.home_page.database.BlurAnalysis
-import com.amaze.fileutilities.home_page.database.ImageAnalysis
+import com.amaze.fileutilities.home_page.database.FileChecksumDao
 import com.amaze.fileutilities.home_page.database.InstalledApps
 import com.amaze.fileutilities.home_page.database.InternalStorageAnalysis
 import com.amaze.fileutilities.home_page.database.InternalStorageAnalysisDao
-import com.amaze.fileutilities.home_page.database.LowLightAnalysis
-import com.amaze.fileutilities.home_page.database.MemeAnalysis
+import com.amaze.fileutilities.home_page.database.InternalStorageAnalysisWithFiles
 import com.amaze.fileutilities.home_page.database.PathPreferences
 import com.amaze.fileutilities.home_page.database.PathPreferencesDao
-import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysis
-import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisDao
-import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisMetadata
-import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisMetadataDao
 import com.amaze.fileutilities.home_page.database.Trial
 import com.amaze.fileutilities.home_page.database.TrialValidatorDao
 import com.amaze.fileutilities.home_page.ui.AggregatedMediaFileInfoObserver
 import com.amaze.fileutilities.home_page.ui.options.Billing
+import com.amaze.fileutilities.utilis.AppMetricsRepository
+import com.amaze.fileutilities.utilis.BufferedAnalysisWriter
 import com.amaze.fileutilities.utilis.CursorUtils
+import com.amaze.fileutilities.utilis.DocumentContentSearch
+import com.amaze.fileutilities.utilis.DocumentContentWorker
 import com.amaze.fileutilities.utilis.FileUtils
 import com.amaze.fileutilities.utilis.FixedSizePriorityQueue
-import com.amaze.fileutilities.utilis.ImgUtils
-import com.amaze.fileutilities.utilis.MLUtils
+import com.amaze.fileutilities.utilis.ImageAnalysisPipeline
+import com.amaze.fileutilities.utilis.ImageAnalysisWorker
+import com.amaze.fileutilities.utilis.InstalledAppsRepository
+import com.amaze.fileutilities.utilis.MediaCatalogLoader
+import com.amaze.fileutilities.utilis.MediaSearchIndex
+import com.amaze.fileutilities.utilis.ParallelFileWalker
 import com.amaze.fileutilities.utilis.PreferencesConstants
 import com.amaze.fileutilities.utilis.Utils
 import com.amaze.fileutilities.utilis.getAppCommonSharedPreferences
@@ -92,6 +95,10 @@ import id.zelory.compressor.constraint.destination
 import id.zelory.compressor.constraint.format
 import id.zelory.compressor.constraint.quality
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.SendChannel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
 import retrofit2.Retrofit
@@ -121,12 +128,21 @@ import kotlin.streams.toList
 class FilesViewModel(val applicationContext: Application) :
     AndroidViewModel(applicationContext) {
 
+    companion object {
+        // max apps listed by app analyses
+        private const val APPS_ANALYSIS_LIMIT = 50
+    }
+
     var isImageFeaturesAnalysing = true
     var isSimilarImagesAnalysing = true
     var isImageBlurAnalysing = true
     var isImageLowLightAnalysing = true
     var isImageMemesAnalysing = true
     var isInternalStorageAnalysing = true
+
+    // latest progress of internal storage analysis, null when it isn't running
+    val internalStorageAnalysisProgressLiveData:
+        MutableLiveData<ParallelFileWalker.Progress.Snapshot?> = MutableLiveData()
     var isMediaStoreAnalysing = true
     var isCasting = false
     var castSetupSuccess = true
@@ -158,6 +174,9 @@ class FilesViewModel(val applicationContext: Application) :
     var allMediaFilesPair: ArrayList<MediaFileInfo>? = null
 
     private var trashBinConfig: TrashBinConfig? = null
+    private val mediaSearchIndex = MediaSearchIndex()
+    private var searchQueryJob: Job? = null
+    private var searchHintJob: Job? = null
     private val TRASH_BIN_BASE_PATH = Environment.getExternalStorageDirectory()
         .path + File.separator + ".AmazeData"
     var usedVideosSummaryTransformations: LiveData<Pair<StorageSummary,
@@ -360,124 +379,87 @@ class FilesViewModel(val applicationContext: Application) :
         return usedDocsSummaryTransformations!!
     }
 
+    /**
+     * Indexes aggregated media files for search in background, only changes since last call
+     * are indexed.
+     */
+    fun updateSearchIndex(
+        aggregatedMediaFiles: AggregatedMediaFileInfoObserver.AggregatedMediaFiles
+    ) {
+        viewModelScope.launch(Dispatchers.Default) {
+            mediaSearchIndex.update(aggregatedMediaFiles)
+        }
+    }
+
+    /**
+     * Cancels previous search query, if it's still running
+     */
     fun queryOnAggregatedMediaFiles(
         query: String,
         searchFilter: SearchListFragment.SearchQueryInput
     ):
         LiveData<MutableList<MediaFileInfo>?> {
-        return liveData(context = viewModelScope.coroutineContext + Dispatchers.Default) {
+        searchQueryJob?.cancel()
+        val job = Job(viewModelScope.coroutineContext[Job])
+        searchQueryJob = job
+        return liveData(context = viewModelScope.coroutineContext + Dispatchers.Default + job) {
             emit(null)
-            val mediaFileResults = mutableListOf<MediaFileInfo>()
-            val textResults = mutableListOf<String>()
-            if (searchFilter.searchFilter.searchFilterImages) {
-                searchFilter.aggregatedMediaFiles.imagesMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach {
-                        if (it.title.contains(query, true)) {
-                            mediaFileResults.add(it)
-                            textResults.add(it.title)
-                        }
-                    }
-                }
-            }
-            if (searchFilter.searchFilter.searchFilterVideos) {
-                searchFilter.aggregatedMediaFiles.videosMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach {
-                        if (it.title.contains(query, true)) {
-                            mediaFileResults.add(it)
-                            textResults.add(it.title)
-                        }
-                    }
-                }
-            }
-            if (searchFilter.searchFilter.searchFilterAudios) {
-                searchFilter.aggregatedMediaFiles.audiosMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach {
-                        if (it.title.contains(query, true)) {
-                            mediaFileResults.add(it)
-                            textResults.add(it.title)
-                        }
-                    }
-                }
-            }
-            if (searchFilter.searchFilter.searchFilterDocuments) {
-                searchFilter.aggregatedMediaFiles.docsMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach {
-                        if (it.title.contains(query, true)) {
-                            mediaFileResults.add(it)
-                            textResults.add(it.title)
-                        }
-                    }
-                }
-            }
-            emit(mediaFileResults)
+            mediaSearchIndex.update(searchFilter.aggregatedMediaFiles)
+            val mediaFileResults = mediaSearchIndex.search(
+                query,
+                searchFilter.searchFilter::acceptsSearchIndexType
+            )
+            emit(mediaFileResults.toMutableList())
         }
     }
 
+    /**
+     * Cancels previous hint query, if it's still running
+     */
     fun queryHintOnAggregatedMediaFiles(
         query: String,
         resultsThreshold: Int,
         searchFilter: SearchListFragment.SearchQueryInput
     ):
         LiveData<MutableList<String>?> {
-        return liveData(context = viewModelScope.coroutineContext + Dispatchers.Default) {
+        searchHintJob?.cancel()
+        val job = Job(viewModelScope.coroutineContext[Job])
+        searchHintJob = job
+        return liveData(context = viewModelScope.coroutineContext + Dispatchers.Default + job) {
             emit(null)
-            val textResults = mutableListOf<String>()
-            var currentResultsCount = 0
-
-            if (searchFilter.searchFilter.searchFilterImages) {
-                searchFilter.aggregatedMediaFiles.imagesMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach il@{
-                        if (currentResultsCount> resultsThreshold) {
-                            return@il
-                        }
-                        if (it.title.contains(query, true)) {
-                            textResults.add(it.title)
-                            currentResultsCount++
-                        }
-                    }
-                }
-            }
-            if (searchFilter.searchFilter.searchFilterVideos) {
-                searchFilter.aggregatedMediaFiles.videosMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach vl@{
-                        if (currentResultsCount> resultsThreshold) {
-                            return@vl
-                        }
-                        if (it.title.contains(query, true)) {
-                            textResults.add(it.title)
-                            currentResultsCount++
-                        }
-                    }
-                }
-            }
-            if (searchFilter.searchFilter.searchFilterAudios) {
-                searchFilter.aggregatedMediaFiles.audiosMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach al@{
-                        if (currentResultsCount> resultsThreshold) {
-                            return@al
-                        }
-                        if (it.title.contains(query, true)) {
-                            textResults.add(it.title)
-                            currentResultsCount++
-                        }
-                    }
-                }
-            }
+            mediaSearchIndex.update(searchFilter.aggregatedMediaFiles)
+            val textResults = mediaSearchIndex.hints(
+                query,
+                searchFilter.searchFilter::acceptsSearchIndexType,
+                resultsThreshold
+            )
+            emit(textResults.toMutableList())
+        }
+    }
 
-            if (searchFilter.searchFilter.searchFilterDocuments) {
-                searchFilter.aggregatedMediaFiles.docsMediaFilesList?.let { mediaInfoList ->
-                    mediaInfoList.forEach dl@{
-                        if (currentResultsCount> resultsThreshold) {
-                            return@dl
-                        }
-                        if (it.title.contains(query, true)) {
-                            textResults.add(it.title)
-                            currentResultsCount++
-                        }
-                    }
-                }
+    /**
+     * Searches text of documents indexed by [DocumentContentWorker], best matches first,
+     * cancels previous search query, if it's still running
+     */
+    fun queryDocumentContent(query: String): LiveData<MutableList<MediaFileInfo>?> {
+        searchQueryJob?.cancel()
+        val job = Job(viewModelScope.coroutineContext[Job])
+        searchQueryJob = job
+        return liveData(context = viewModelScope.coroutineContext + Dispatchers.IO + job) {
+            emit(null)
+            val dao = AppDatabase.getInstance(applicationContext).documentContentDao()
+            val mediaFileResults = DocumentContentSearch.search(dao, query).map {
+                MediaFileInfo.fromFile(
+                    File(it.filePath),
+                    MediaFileInfo.ExtraInfo(
+                        MediaFileInfo.MEDIA_TYPE_DOCUMENT,
+                        null, null, null,
+                        documentContentMetaData = MediaFileInfo
+                            .DocumentContentMetaData(it.snippet)
+                    )
+                )
             }
-            emit(textResults)
+            emit(mediaFileResults.toMutableList())
         }
     }
 
@@ -493,416 +475,67 @@ class FilesViewModel(val applicationContext: Application) :
         }
     }*/
 
-    fun analyseImageFeatures(
-        mediaFileInfoList: List<MediaFileInfo>,
-        pathPreferencesList: List<PathPreferences>
-    ) {
-        if (!PathPreferences.isEnabled(
-                applicationContext.getAppCommonSharedPreferences(),
-                PathPreferences.FEATURE_ANALYSIS_IMAGE_FEATURES
-            )
-        ) {
-            log.info("analyse facial features for images not enabled")
-            return
-        }
-        viewModelScope.launch(Dispatchers.Default) {
-            val dao = AppDatabase.getInstance(applicationContext).analysisDao()
-            isImageFeaturesAnalysing = true
-            var featuresProcessed = 0
-            mediaFileInfoList.filter {
-                val pathPrefsList = pathPreferencesList.filter { pref ->
-                    pref.feature == PathPreferences
-                        .FEATURE_ANALYSIS_IMAGE_FEATURES
-                }
-                Utils.containsInPreferences(it.path, pathPrefsList, true)
-            }.forEach {
-                if (isImageFeaturesAnalysing && dao.findByPath(it.path) == null) {
-                    if (featuresProcessed++ > 10000) {
-                        // hard limit in a single run
-                        return@forEach
-                    }
-                    MLUtils.processImageFeatures(it.path) {
-                        features ->
-                        dao.insert(
-                            ImageAnalysis(
-                                it.path,
-                                features.isSad,
-                                features.isDistracted,
-                                features.isSleeping,
-                                features.facesCount
-                            )
-                        )
-                    }
-                }
-            }
-            isImageFeaturesAnalysing = false
-        }
-    }
-
-    fun analyseBlurImages(
-        mediaFileInfoList: List<MediaFileInfo>,
-        pathPreferencesList: List<PathPreferences>
-    ) {
-        if (!PathPreferences.isEnabled(
-                applicationContext.getAppCommonSharedPreferences(),
-                PathPreferences.FEATURE_ANALYSIS_BLUR
-            )
-        ) {
-            log.info("analyse blur not enabled")
-            return
-        }
-        viewModelScope.launch(Dispatchers.Default) {
-            val dao = AppDatabase.getInstance(applicationContext).blurAnalysisDao()
-            isImageBlurAnalysing = true
-            mediaFileInfoList.filter {
-                val pathPrefsList = pathPreferencesList.filter { pref ->
-                    pref.feature == PathPreferences
-                        .FEATURE_ANALYSIS_BLUR
-                }
-                Utils.containsInPreferences(it.path, pathPrefsList, true)
-            }.forEach {
-                if (isImageBlurAnalysing && dao.findByPath(it.path) == null) {
-                    val isBlur = ImgUtils.isImageBlur(it.path)
-                    isBlur?.let {
-                        isBlur ->
-                        dao.insert(
-                            BlurAnalysis(
-                                it.path, isBlur
-                            )
-                        )
-                    }
-                }
-            }
-            isImageBlurAnalysing = false
-        }
-    }
-
-    fun analyseMemeImages(
-        mediaFileInfoList: List<MediaFileInfo>,
-        pathPreferencesList: List<PathPreferences>
-    ) {
-        if (!PathPreferences.isEnabled(
-                applicationContext.getAppCommonSharedPreferences(),
-                PathPreferences.FEATURE_ANALYSIS_MEME
-            )
-        ) {
-            log.info("analyse memes not enabled")
-            return
-        }
-        viewModelScope.launch(Dispatchers.Default) {
-            val dao = AppDatabase.getInstance(applicationContext).memesAnalysisDao()
-            isImageMemesAnalysing = true
-            var memesProcessed = 0
-            mediaFileInfoList.filter {
-                val pathPrefsList = pathPreferencesList.filter { pref ->
-                    pref.feature == PathPreferences.FEATURE_ANALYSIS_MEME
-                }
-                Utils.containsInPreferences(it.path, pathPrefsList, true)
-            }.forEach {
-                if (isImageMemesAnalysing && dao.findByPath(it.path) == null) {
-                    if (memesProcessed++ > 10000) {
-                        // hard limit in a single run
-                        return@forEach
-                    }
-                    MLUtils.isImageMeme(
-                        it.path,
-                    ) { isMeme ->
-                        dao.insert(
-                            MemeAnalysis(
-                                it.path, isMeme
-                            )
-                        )
-                    }
-                }
-            }
-            isImageMemesAnalysing = false
-        }
+    /**
+     * Image analysis runs in [ImageAnalysisWorker], see [Utils.scheduleImageAnalysisWorker]
+     */
+    fun imageAnalysisWorkInfo(): LiveData<List<WorkInfo>> {
+        return WorkManager.getInstance(applicationContext)
+            .getWorkInfosForUniqueWorkLiveData(ImageAnalysisWorker.NAME)
     }
 
-    fun analyseLowLightImages(
-        mediaFileInfoList: List<MediaFileInfo>,
-        pathPreferencesList: List<PathPreferences>
-    ) {
-        if (!PathPreferences.isEnabled(
-                applicationContext.getAppCommonSharedPreferences(),
-                PathPreferences.FEATURE_ANALYSIS_LOW_LIGHT
-            )
-        ) {
-            log.info("analyse low light not enabled")
-            return
-        }
-        viewModelScope.launch(Dispatchers.Default) {
-            val dao = AppDatabase.getInstance(applicationContext).lowLightAnalysisDao()
-            isImageLowLightAnalysing = true
-            mediaFileInfoList.filter {
-                val pathPrefsList = pathPreferencesList.filter { pref ->
-                    pref.feature == PathPreferences
-                        .FEATURE_ANALYSIS_LOW_LIGHT
-                }
-                Utils.containsInPreferences(it.path, pathPrefsList, true)
-            }.forEach {
-                if (isImageLowLightAnalysing && dao.findByPath(it.path) == null) {
-                    val isLowLight = ImgUtils.isImageLowLight(
-                        it.path
-                    )
-                    isLowLight?.let {
-                        isLowLight ->
-                        dao.insert(
-                            LowLightAnalysis(
-                                it.path, isLowLight
-                            )
-                        )
-                    }
-                }
-            }
-            isImageLowLightAnalysing = false
-        }
+    /**
+     * Updates image analysing flags from progress of [ImageAnalysisWorker]
+     */
+    fun updateImageAnalysisProgress(workInfoList: List<WorkInfo>) {
+        val runningAnalysis = workInfoList.find {
+            it.state == WorkInfo.State.RUNNING
+        }?.progress?.getStringArray(ImageAnalysisWorker.KEY_PROGRESS_ANALYSIS)?.toSet()
+            ?: setOf()
+        isImageFeaturesAnalysing =
+            runningAnalysis.contains(ImageAnalysisPipeline.Analysis.FEATURES.name)
+        isImageMemesAnalysing = runningAnalysis.contains(ImageAnalysisPipeline.Analysis.MEME.name)
+        isImageBlurAnalysing = runningAnalysis.contains(ImageAnalysisPipeline.Analysis.BLUR.name)
+        isImageLowLightAnalysing =
+            runningAnalysis.contains(ImageAnalysisPipeline.Analysis.LOW_LIGHT.name)
+        isSimilarImagesAnalysing =
+            runningAnalysis.contains(ImageAnalysisPipeline.Analysis.HISTOGRAM.name)
     }
 
     /**
-     * We find histogram for a given image, divide it in 256/8 windows.
-     * For each window of this histogram, we find the red, green and blue channel peaks individually, along with it's position for a given window.
-     * All these data points are then saved in database table for all images.
-     * This process starts as soon as app starts and keeps running in background (ofcourse there are multiple optimisations done so as to not fill up RAM, for all the background running analysis in the app).
-     * Then once we have all the histograms data (all analysis resumes from last point in case user closes the app, or users take new images till the time we have processed all the images), so however multiple runs the app takes, once we have all the histogram data, it's time to figure out the similar images.
-     * To figure out the similar images, we compare the peaks of the rgb channel of each window, once we have x number of windows that matches, say 6 out of 8 windows, we can say that image may be similar (the number was decided based on multiple tests in real life).
-     * In order to make results more realistic, we also compare the position of peak along with the peak rgb channel for a given window. Ofcourse, you can't have the exact same pixel position for a peak, so a normalization was also done.
-     * Finally, when we have a matching image that satisfies above criteria, we take a checksum of all the rgb channel windows along with it's parent path (this is done so that we only match similar images in the same directory, as chances are, similar images will be in the same directory and helps to minimize false positives), and then save checksum value of all the images in the table.
-     * This second part of the analysis is also done in the background.
-     * So till here we have figured out the similar images and can uniquely identify them from their checksum, so that we don't have to repeat the second step at the runtime.
-     * Finally when a user opens the analysis section of the app, all we have to do is to group images by same checksum and list them to the user.
-     * Ofcourse there may be some false positives in this (or any other) analysis algorithm in the app, so we already have a feature where all user have to do is select the analysis result, and press the thumbs down button at top of the screen, and then that analysis will be marked false positive in the database and will not be shown to user again.
-     * Phew, this was something, I had to write this down so that I don't forget in future again instead of going through the code.
-     * I know there are multiple algorithms online, too complicated for me to understand and write from scratch in java (they're native functions in python). So I had to resort to write on my own.
+     * Stops given image analysis till next app start, other analysis keep running and stopped
+     * one resumes from last checkpoint then
      */
-    fun analyseSimilarImages(
-        mediaFileInfoList: List<MediaFileInfo>,
-        pathPreferencesList: List<PathPreferences>
-    ) {
-        if (!PathPreferences.isEnabled(
-                applicationContext.getAppCommonSharedPreferences(),
-                PathPreferences.FEATURE_ANALYSIS_SIMILAR_IMAGES
-            )
-        ) {
-            log.info("analyse similar images not enabled")
-            return
-        }
-        viewModelScope.launch(Dispatchers.Default) {
-            val dao = AppDatabase.getInstance(applicationContext)
-                .similarImagesAnalysisMetadataDao()
-            val similarImagesAnalysisDao =
-                AppDatabase.getInstance(applicationContext).similarImagesAnalysisDao()
-            isSimilarImagesAnalysing = true
-            val filterList = mediaFileInfoList.filter {
-                val pathPrefsList = pathPreferencesList.filter { pref ->
-                    pref.feature == PathPreferences
-                        .FEATURE_ANALYSIS_SIMILAR_IMAGES
-                }
-                Utils.containsInPreferences(it.path, pathPrefsList, true)
-            }
-            if (isSimilarImagesAnalysing) {
-                val metadataCount = dao.getAllCount()
-                if (filterList.size != metadataCount) {
-                    var imagesProcessed = 0
-                    filterList.forEach {
-                        mediaFileInfo ->
-                        if (isSimilarImagesAnalysing &&
-                            dao.findByPath(mediaFileInfo.path) == null
-                        ) {
-                            if (imagesProcessed++ > 5000) {
-                                // hard limit in a single run
-                                return@forEach
-                            }
-                            val histogramPeaks = ImgUtils
-                                .getHistogramChannelsWithPeaks(mediaFileInfo.path)
-                            histogramPeaks?.let {
-                                dao.insert(
-                                    SimilarImagesAnalysisMetadata(
-                                        mediaFileInfo.getParentPath(),
-                                        mediaFileInfo.path,
-                                        it[0], it[1], it[2], ImgUtils.DATAPOINTS,
-                                        ImgUtils.THRESHOLD
-                                    )
-                                )
-                            }
-                        }
-                    }
-                } else {
-                    filterList.forEach {
-                        if (isSimilarImagesAnalysing) {
-                            val savedInfo = dao.findByPath(it.path)
-                            if (savedInfo != null && !savedInfo.isAnalysed) {
-                                analyseHistogramForMatch(similarImagesAnalysisDao, dao, savedInfo)
-                            }
-                        }
-                    }
-                }
-            }
-            isSimilarImagesAnalysing = false
+    fun stopImageAnalysis(analysis: ImageAnalysisPipeline.Analysis) {
+        ImageAnalysisWorker.stopAnalysis(analysis)
+        when (analysis) {
+            ImageAnalysisPipeline.Analysis.FEATURES -> isImageFeaturesAnalysing = false
+            ImageAnalysisPipeline.Analysis.MEME -> isImageMemesAnalysing = false
+            ImageAnalysisPipeline.Analysis.BLUR -> isImageBlurAnalysing = false
+            ImageAnalysisPipeline.Analysis.LOW_LIGHT -> isImageLowLightAnalysing = false
+            ImageAnalysisPipeline.Analysis.HISTOGRAM -> isSimilarImagesAnalysing = false
         }
     }
 
-    private fun analyseHistogramForMatch(
-        similarImagesAnalysisDao: SimilarImagesAnalysisDao,
-        similarAnalysisMetadataDao:
-            SimilarImagesAnalysisMetadataDao,
-        analysisMetadata: SimilarImagesAnalysisMetadata
+    fun analyseInternalStorage(
+        deepSearch: Boolean,
+        walkerParallelism: Int = ParallelFileWalker.DEFAULT_WALKER_PARALLELISM,
+        hashingParallelism: Int = ParallelFileWalker.DEFAULT_HASHING_PARALLELISM
     ) {
-        val parentFiles = similarAnalysisMetadataDao
-            .findAllByParentPath(analysisMetadata.parentPath)
-        if (parentFiles.size > 1) {
-            log.info(
-                "analysing image with parent files {} path at {}", parentFiles.size,
-                analysisMetadata.filePath
-            )
-            // normalize channels
-            val normalizedBlueMap = mutableMapOf<Int, Int>()
-            val normalizedGreenMap = mutableMapOf<Int, Int>()
-            val normalizedRedMap = mutableMapOf<Int, Int>()
-            analysisMetadata.blueChannel.forEach {
-                normalizedBlueMap[
-                    it.first /
-                        ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
-                ] =
-                    it.second / ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
-            }
-            analysisMetadata.greenChannel.forEach {
-                normalizedGreenMap[
-                    it.first /
-                        ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
-                ] =
-                    it.second / ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
-            }
-            analysisMetadata.redChannel.forEach {
-                normalizedRedMap[
-                    it.first /
-                        ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
-                ] =
-                    it.second / ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
-            }
-            val histChecksum = ImgUtils.getHistogramChecksum(
-                normalizedBlueMap, normalizedGreenMap,
-                normalizedRedMap, analysisMetadata.parentPath
-            )
-            var matchedDatapointsBlue = 0
-            var matchedDatapointsGreen = 0
-            var matchedDatapointsRed = 0
-
-            val similarFilePaths = mutableSetOf<String>()
-            val similarFilesMetadata = mutableSetOf<SimilarImagesAnalysisMetadata>()
-            val existingAnalysedData =
-                similarImagesAnalysisDao.findByHistogramChecksum(histChecksum)
-            if (existingAnalysedData != null) {
-                similarFilePaths.addAll(existingAnalysedData.files)
-            }
-
-            for (currentFile in parentFiles) {
-                if (currentFile.filePath != analysisMetadata.filePath && !currentFile.isAnalysed) {
-                    currentFile.blueChannel.forEach {
-                        if (normalizedBlueMap[
-                            it.first /
-                                ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
-                        ]
-                            == it.second /
-                            ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
-                        ) {
-                            matchedDatapointsBlue++
-                        }
-                        if (matchedDatapointsBlue
-                            >= ImgUtils.ASSERT_DATAPOINTS
-                        ) {
-                            log.info(
-                                "matched datapoints for blue channel for path {} and {}",
-                                analysisMetadata.filePath, currentFile.filePath
-                            )
-                            return@forEach
-                        }
-                    }
-                    currentFile.greenChannel.forEach {
-                        if (normalizedGreenMap[
-                            it.first /
-                                ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
-                        ]
-                            == it.second /
-                            ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
-                        ) {
-                            matchedDatapointsGreen++
-                        }
-                        if (matchedDatapointsGreen
-                            >= ImgUtils.ASSERT_DATAPOINTS
-                        ) {
-                            log.info(
-                                "matched datapoints for green channel for path {} and {}",
-                                analysisMetadata.filePath, currentFile.filePath
-                            )
-                            return@forEach
-                        }
-                    }
-                    currentFile.redChannel.forEach {
-                        if (normalizedRedMap[
-                            it.first /
-                                ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
-                        ]
-                            == it.second /
-                            ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
-                        ) {
-                            matchedDatapointsRed++
-                        }
-                        if (matchedDatapointsRed
-                            >= ImgUtils.ASSERT_DATAPOINTS
-                        ) {
-                            log.info(
-                                "matched datapoints for red channel for path {} and {}",
-                                analysisMetadata.filePath, currentFile.filePath
-                            )
-                            return@forEach
-                        }
-                    }
-                    if (matchedDatapointsBlue >= ImgUtils.ASSERT_DATAPOINTS &&
-                        matchedDatapointsGreen
-                        >= ImgUtils.ASSERT_DATAPOINTS &&
-                        matchedDatapointsRed
-                        >= ImgUtils.ASSERT_DATAPOINTS
-                    ) {
-                        log.info(
-                            "matched datapoints for all channels for path {} and {}",
-                            analysisMetadata.filePath, currentFile.filePath
-                        )
-                        similarFilePaths.add(currentFile.filePath)
-                        similarFilesMetadata.add(currentFile)
-                    }
-                    matchedDatapointsBlue = 0
-                    matchedDatapointsGreen = 0
-                    matchedDatapointsRed = 0
-                }
-            }
-            if (similarFilePaths.size >= 1) {
-                similarFilesMetadata.add(analysisMetadata)
-                similarFilePaths.add(analysisMetadata.filePath)
-                similarImagesAnalysisDao.insert(
-                    SimilarImagesAnalysis(
-                        histChecksum,
-                        similarFilePaths
-                    )
-                )
-            }
-            similarFilesMetadata.forEach {
-                it.isAnalysed = true
-                similarAnalysisMetadataDao.insert(it)
-            }
-        }
-    }
-
-    fun analyseInternalStorage(deepSearch: Boolean) {
         viewModelScope.launch(Dispatchers.IO) {
-            val dao = AppDatabase.getInstance(applicationContext).internalStorageAnalysisDao()
+            val appDatabase = AppDatabase.getInstance(applicationContext)
+            val dao = appDatabase.internalStorageAnalysisDao()
+            val checksumDao = appDatabase.fileChecksumDao()
             isInternalStorageAnalysing = true
             val storageData = applicationContext.applicationContext.getExternalStorageDirectory()
             storageData?.run {
                 val file = File(this.path)
-                processInternalStorageAnalysis(dao, file, deepSearch, 0)
+                processInternalStorageAnalysis(
+                    dao, checksumDao, file, deepSearch,
+                    walkerParallelism, hashingParallelism
+                )
             }
             isInternalStorageAnalysing = false
+            internalStorageAnalysisProgressLiveData.postValue(null)
         }
     }
 
@@ -911,14 +544,19 @@ class FilesViewModel(val applicationContext: Application) :
             AggregatedMediaFileInfoObserver.AggregatedMediaFiles
     ) {
         viewModelScope.launch(Dispatchers.IO) {
-            val dao = AppDatabase.getInstance(applicationContext).internalStorageAnalysisDao()
+            val appDatabase = AppDatabase.getInstance(applicationContext)
+            val dao = appDatabase.internalStorageAnalysisDao()
+            val checksumDao = appDatabase.fileChecksumDao()
             isMediaStoreAnalysing = true
             aggregatedMediaFiles.imagesMediaFilesList?.let {
                 val imagesList = ArrayList(it)
                 imagesList.forEach {
                     image ->
                     if (isMediaStoreAnalysing) {
-                        getMediaFileChecksumAndWriteToDatabase(dao, File(image.path + ""))
+                        getMediaFileChecksumAndWriteToDatabase(
+                            dao, checksumDao,
+                            File(image.path + "")
+                        )
                     }
                 }
             }
@@ -927,7 +565,10 @@ class FilesViewModel(val applicationContext: Application) :
                 audiosList.forEach {
                     audio ->
                     if (isMediaStoreAnalysing) {
-                        getMediaFileChecksumAndWriteToDatabase(dao, File(audio.path + ""))
+                        getMediaFileChecksumAndWriteToDatabase(
+                            dao, checksumDao,
+                            File(audio.path + "")
+                        )
                     }
                 }
             }
@@ -936,7 +577,10 @@ class FilesViewModel(val applicationContext: Application) :
                 videosList.forEach {
                     video ->
                     if (isMediaStoreAnalysing) {
-                        getMediaFileChecksumAndWriteToDatabase(dao, File(video.path + ""))
+                        getMediaFileChecksumAndWriteToDatabase(
+                            dao, checksumDao,
+                            File(video.path + "")
+                        )
                     }
                 }
             }
@@ -945,7 +589,10 @@ class FilesViewModel(val applicationContext: Application) :
                 docsList.forEach {
                     docs ->
                     if (isMediaStoreAnalysing) {
-                        getMediaFileChecksumAndWriteToDatabase(dao, File(docs.path + ""))
+                        getMediaFileChecksumAndWriteToDatabase(
+                            dao, checksumDao,
+                            File(docs.path + "")
+                        )
                     }
                 }
             }
@@ -1648,25 +1295,19 @@ class FilesViewModel(val applicationContext: Application) :
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP_MR1)
     private fun processUnusedApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
             val sharedPrefs = applicationContext.getAppCommonSharedPreferences()
             val days = sharedPrefs.getInt(
                 PreferencesConstants.KEY_UNUSED_APPS_DAYS,
                 PreferencesConstants.DEFAULT_UNUSED_APPS_DAYS
             )
-            val usageStats = Utils.getAppsUsageStats(applicationContext, days)
-            val usageStatsPackages = usageStats.filter {
-                it.lastTimeUsed != 0L || it.packageName == applicationContext.packageName
+            val usage = snapshot.getUsage(days)
+            val unusedAppsList = snapshot.apps.filter {
+                !usage.containsKey(it.packageName)
             }.map {
-                it.packageName
-            }.toSet()
-            val unusedAppsList =
-                allApps.get()?.filter {
-                    !usageStatsPackages.contains(it.first.packageName)
-                }?.mapNotNull {
-                    MediaFileInfo.fromApplicationInfo(applicationContext, it.first, it.second)
-                }?.sortedByDescending { it.longSize }
-            unusedAppsLiveData?.postValue(unusedAppsList?.let { ArrayList(it) })
+                MediaFileInfo.fromAppMetrics(it)
+            }.sortedByDescending { it.longSize }
+            unusedAppsLiveData?.postValue(ArrayList(unusedAppsList))
         }
     }
 
@@ -1687,34 +1328,10 @@ class FilesViewModel(val applicationContext: Application) :
 
     private fun processNetworkIntensiveApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
-
-            val priorityQueue = FixedSizePriorityQueue<MediaFileInfo>(
-                50
-            ) { o1, o2 ->
-                o2.extraInfo?.apkMetaData?.networkBytes?.let {
-                    o1.extraInfo?.apkMetaData?.networkBytes?.compareTo(
-                        it
-                    )
-                } ?: 0
-            }
-
-            allApps.get()?.forEach { applicationInfo ->
-                MediaFileInfo.fromApplicationInfo(
-                    applicationContext, applicationInfo.first,
-                    applicationInfo.second
-                )?.let {
-                    priorityQueue.add(it)
-                }
-            }
-
-            val result = ArrayList<MediaFileInfo>()
-            while (!priorityQueue.isEmpty()) {
-                priorityQueue.remove()?.let {
-                    result.add(it)
-                }
-            }
-            networkIntensiveAppsLiveData?.postValue(ArrayList(result.reversed()))
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
+            val result = snapshot.apps.sortedByDescending { it.networkBytes }
+                .take(APPS_ANALYSIS_LIMIT).map { MediaFileInfo.fromAppMetrics(it) }
+            networkIntensiveAppsLiveData?.postValue(ArrayList(result))
         }
     }
 
@@ -1731,47 +1348,21 @@ class FilesViewModel(val applicationContext: Application) :
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP_MR1)
     private fun processMostUsedApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
             val sharedPrefs = applicationContext.getAppCommonSharedPreferences()
             val days = sharedPrefs.getInt(
                 PreferencesConstants.KEY_MOST_USED_APPS_DAYS,
                 PreferencesConstants.DEFAULT_MOST_USED_APPS_DAYS
             )
-            val usageStats = Utils.getAppsUsageStats(applicationContext, days)
-            val freqMap = linkedMapOf<String, Long>()
-            usageStats.filter {
-                it.lastTimeUsed != 0L
-            }.forEach {
-                var timeForeground = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
-                    it.totalTimeVisible else it.totalTimeInForeground
-                if (freqMap[it.packageName] != null) {
-                    timeForeground += freqMap[it.packageName]!!
-                }
-                freqMap[it.packageName] = timeForeground
-            }
-            val mostUsedAppsListRaw = arrayListOf<String>()
-            freqMap.entries.stream()
-                .sorted { o1, o2 -> -1 * o1.value.compareTo(o2.value) }
-                .forEach {
-                    mostUsedAppsListRaw.add(it.key)
-                }
-            val mostUsedApps = arrayListOf<MediaFileInfo>()
-            mostUsedAppsListRaw.forEach {
-                appName ->
-                allApps.get()?.find {
-                    it.first.packageName.equals(appName, true)
-                }?.let {
-                    MediaFileInfo.fromApplicationInfo(
-                        applicationContext,
-                        it.first, it.second,
-                        timeForeground = freqMap[appName] ?: 0L,
-                    )?.let {
-                        mediaFileInfo ->
-                        mostUsedApps.add(mediaFileInfo)
-                    }
+            val mostUsedApps = snapshot.getUsage(days).entries.sortedByDescending {
+                it.value
+            }.mapNotNull {
+                (packageName, timeForeground) ->
+                snapshot.find(packageName)?.let {
+                    MediaFileInfo.fromAppMetrics(it, timeForeground = timeForeground)
                 }
             }
-            mostUsedAppsLiveData?.postValue(mostUsedApps)
+            mostUsedAppsLiveData?.postValue(ArrayList(mostUsedApps))
         }
     }
 
@@ -1788,48 +1379,23 @@ class FilesViewModel(val applicationContext: Application) :
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP_MR1)
     private fun processLeastUsedApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
             val sharedPrefs = applicationContext.getAppCommonSharedPreferences()
             val days = sharedPrefs.getInt(
                 PreferencesConstants.KEY_LEAST_USED_APPS_DAYS,
                 PreferencesConstants.DEFAULT_LEAST_USED_APPS_DAYS
             )
-            val usageStats = Utils.getAppsUsageStats(applicationContext, days)
-            val freqMap = linkedMapOf<String, Long>()
-            usageStats.filter {
-                it.lastTimeUsed != 0L && it.packageName != applicationContext.packageName
-            }.forEach {
-                if (!freqMap.contains(it.packageName)) {
-                    freqMap[it.packageName] = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
-                        it.totalTimeVisible else it.totalTimeInForeground
-                } else {
-                    freqMap[it.packageName] = freqMap[it.packageName]!! +
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
-                            it.totalTimeVisible else it.totalTimeInForeground
-                }
-            }
-            val leastUsedAppsListRaw = arrayListOf<String>()
-            freqMap.entries.stream()
-                .sorted { o1, o2 -> o1.value.compareTo(o2.value) }
-                .forEach {
-                    leastUsedAppsListRaw.add(it.key)
-                }
-            val leastUsedApps = arrayListOf<MediaFileInfo>()
-            leastUsedAppsListRaw.forEach {
-                appName ->
-                allApps.get()?.find {
-                    it.first.packageName.equals(appName, true)
-                }?.let {
-                    MediaFileInfo.fromApplicationInfo(
-                        applicationContext, it.first,
-                        it.second
-                    )?.let {
-                        mediaFileInfo ->
-                        leastUsedApps.add(mediaFileInfo)
-                    }
+            val leastUsedApps = snapshot.getUsage(days).entries.filter {
+                it.key != applicationContext.packageName
+            }.sortedBy {
+                it.value
+            }.mapNotNull {
+                snapshot.find(it.key)?.let {
+                    appMetrics ->
+                    MediaFileInfo.fromAppMetrics(appMetrics)
                 }
             }
-            leastUsedAppsLiveData?.postValue(leastUsedApps)
+            leastUsedAppsLiveData?.postValue(ArrayList(leastUsedApps))
         }
     }
 
@@ -1844,28 +1410,10 @@ class FilesViewModel(val applicationContext: Application) :
 
     private fun processLargeApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
-
-            val priorityQueue = FixedSizePriorityQueue<MediaFileInfo>(
-                50
-            ) { o1, o2 -> o1.longSize.compareTo(o2.longSize) }
-
-            allApps.get()?.forEach { applicationInfo ->
-                MediaFileInfo.fromApplicationInfo(
-                    applicationContext, applicationInfo.first,
-                    applicationInfo.second
-                )?.let {
-                    priorityQueue.add(it)
-                }
-            }
-
-            val result = ArrayList<MediaFileInfo>()
-            while (!priorityQueue.isEmpty()) {
-                priorityQueue.remove()?.let {
-                    result.add(it)
-                }
-            }
-            largeAppsLiveData?.postValue(ArrayList(result.reversed()))
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
+            val result = snapshot.apps.sortedByDescending { it.size }
+                .take(APPS_ANALYSIS_LIMIT).map { MediaFileInfo.fromAppMetrics(it) }
+            largeAppsLiveData?.postValue(ArrayList(result))
         }
     }
 
@@ -1880,38 +1428,21 @@ class FilesViewModel(val applicationContext: Application) :
 
     private fun processNewlyInstalledApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
             val sharedPrefs = applicationContext.getAppCommonSharedPreferences()
             val days = sharedPrefs.getInt(
                 PreferencesConstants.KEY_NEWLY_INSTALLED_APPS_DAYS,
                 PreferencesConstants.DEFAULT_NEWLY_INSTALLED_APPS_DAYS
             )
             val pastDate = LocalDateTime.now().minusDays(days.toLong())
-            val priorityQueue = FixedSizePriorityQueue<MediaFileInfo>(
-                50
-            ) { o1, o2 -> o1.longSize.compareTo(o2.longSize) }
-
-            allApps.get()?.filter {
-                if (it.second == null) return@filter false
-                val installDateTime = Instant.ofEpochMilli(it.second?.firstInstallTime!!)
+            val result = snapshot.apps.filter {
+                val firstInstallTime = it.packageInfo?.firstInstallTime ?: return@filter false
+                val installDateTime = Instant.ofEpochMilli(firstInstallTime)
                     .atZone(ZoneId.systemDefault()).toLocalDate()
                 installDateTime.isAfter(pastDate.toLocalDate())
-            }?.forEach { applicationInfo ->
-                MediaFileInfo.fromApplicationInfo(
-                    applicationContext, applicationInfo.first,
-                    applicationInfo.second
-                )?.let {
-                    priorityQueue.add(it)
-                }
-            }
-
-            val result = ArrayList<MediaFileInfo>()
-            while (!priorityQueue.isEmpty()) {
-                priorityQueue.remove()?.let {
-                    result.add(it)
-                }
-            }
-            newlyInstalledAppsLiveData?.postValue(ArrayList(result.reversed()))
+            }.sortedByDescending { it.size }
+                .take(APPS_ANALYSIS_LIMIT).map { MediaFileInfo.fromAppMetrics(it) }
+            newlyInstalledAppsLiveData?.postValue(ArrayList(result))
         }
     }
 
@@ -1926,38 +1457,21 @@ class FilesViewModel(val applicationContext: Application) :
 
     private fun processRecentlyUpdatedApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
             val sharedPrefs = applicationContext.getAppCommonSharedPreferences()
             val days = sharedPrefs.getInt(
                 PreferencesConstants.KEY_RECENTLY_UPDATED_APPS_DAYS,
                 PreferencesConstants.DEFAULT_RECENTLY_UPDATED_APPS_DAYS
             )
             val pastDate = LocalDateTime.now().minusDays(days.toLong())
-            val priorityQueue = FixedSizePriorityQueue<MediaFileInfo>(
-                50
-            ) { o1, o2 -> o1.longSize.compareTo(o2.longSize) }
-
-            allApps.get()?.filter {
-                if (it.second == null) return@filter false
-                val updateDateTime = Instant.ofEpochMilli(it.second?.lastUpdateTime!!)
+            val result = snapshot.apps.filter {
+                val lastUpdateTime = it.packageInfo?.lastUpdateTime ?: return@filter false
+                val updateDateTime = Instant.ofEpochMilli(lastUpdateTime)
                     .atZone(ZoneId.systemDefault()).toLocalDate()
                 updateDateTime.isAfter(pastDate.toLocalDate())
-            }?.forEach { applicationInfo ->
-                MediaFileInfo.fromApplicationInfo(
-                    applicationContext, applicationInfo.first,
-                    applicationInfo.second
-                )?.let {
-                    priorityQueue.add(it)
-                }
-            }
-
-            val result = ArrayList<MediaFileInfo>()
-            while (!priorityQueue.isEmpty()) {
-                priorityQueue.remove()?.let {
-                    result.add(it)
-                }
-            }
-            recentlyUpdatedAppsLiveData?.postValue(ArrayList(result.reversed()))
+            }.sortedByDescending { it.size }
+                .take(APPS_ANALYSIS_LIMIT).map { MediaFileInfo.fromAppMetrics(it) }
+            recentlyUpdatedAppsLiveData?.postValue(ArrayList(result))
         }
     }
 
@@ -1972,7 +1486,7 @@ class FilesViewModel(val applicationContext: Application) :
 
     private fun processLargeSizeDiffApps(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
             val sharedPrefs = applicationContext.getAppCommonSharedPreferences()
             // Get the number of days which the analysis should consider
             val days = sharedPrefs.getInt(
@@ -1988,34 +1502,22 @@ class FilesViewModel(val applicationContext: Application) :
 
             val dao = AppDatabase.getInstance(applicationContext).appStorageStatsDao()
 
-            val priorityQueue = FixedSizePriorityQueue<MediaFileInfo>(50) { o1, o2 ->
+            val priorityQueue = FixedSizePriorityQueue<MediaFileInfo>(
+                APPS_ANALYSIS_LIMIT
+            ) { o1, o2 ->
                 val diff1 = o1.extraInfo?.apkMetaData?.sizeDiff ?: 0
                 val diff2 = o2.extraInfo?.apkMetaData?.sizeDiff ?: 0
                 diff1.compareTo(diff2)
             }
 
-            allApps.get()?.forEach { (applicationInfo, packageInfo) ->
-                // Find the oldest entry for the app within the last number of days
-                val storageStatToAppName = dao.findOldestWithinPeriod(
-                    applicationInfo.packageName,
-                    periodStart,
-                    periodEnd
-                )
-                if (storageStatToAppName != null) {
+            // Size of every app at start of the period, in a single query
+            dao.findWindows(periodStart, periodEnd).forEach { window ->
+                snapshot.find(window.packageName)?.let { appMetrics ->
                     // Calculate the size difference compared to the app size now
-                    val currentPackageSize =
-                        Utils.findApplicationInfoSize(applicationContext, applicationInfo)
-                    val sizeDiff = currentPackageSize - storageStatToAppName.packageSize
+                    val sizeDiff = appMetrics.size - window.firstSize
                     if (sizeDiff > 0) {
                         // If the app size grew, add it to the priority queue
-                        MediaFileInfo
-                            .fromApplicationInfo(
-                                applicationContext,
-                                applicationInfo,
-                                packageInfo,
-                                sizeDiff
-                            )
-                            ?.let { priorityQueue.add(it) }
+                        priorityQueue.add(MediaFileInfo.fromAppMetrics(appMetrics, sizeDiff))
                     }
                 }
             }
@@ -2046,7 +1548,7 @@ class FilesViewModel(val applicationContext: Application) :
 
     private fun processJunkFiles(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            loadAllInstalledApps()
             val dao = AppDatabase.getInstance(applicationContext).installedAppsDao()
             val savedInstalledApps = dao.findAll()
             allApps.get()?.map { it.first.packageName }?.toSet()?.let {
@@ -2090,7 +1592,7 @@ class FilesViewModel(val applicationContext: Application) :
             apksLiveData?.value = null
             viewModelScope.launch(Dispatchers.IO) {
                 if (allMediaFilesPair == null) {
-                    allMediaFilesPair = CursorUtils.listAll(applicationContext)
+                    allMediaFilesPair = MediaCatalogLoader.listAll(applicationContext)
                 }
                 allMediaFilesPair?.filter {
                     it.path.endsWith(".apk")
@@ -2111,7 +1613,7 @@ class FilesViewModel(val applicationContext: Application) :
             hiddenFilesLiveData?.value = null
             viewModelScope.launch(Dispatchers.IO) {
                 if (allMediaFilesPair == null) {
-                    allMediaFilesPair = CursorUtils.listAll(applicationContext)
+                    allMediaFilesPair = MediaCatalogLoader.listAll(applicationContext)
                 }
                 allMediaFilesPair?.filter {
                     it.title.startsWith(".")
@@ -2244,14 +1746,14 @@ class FilesViewModel(val applicationContext: Application) :
         return oldRecordingsLiveData!!
     }
 
-    private fun getMediaFilesWithFilter(
+    private suspend fun getMediaFilesWithFilter(
         sortBy: Comparator<MediaFileInfo>,
         paths: List<String>,
         limit: Int
     ): ArrayList<MediaFileInfo> {
         val priorityQueue = FixedSizePriorityQueue(limit, sortBy)
         if (allMediaFilesPair == null) {
-            allMediaFilesPair = CursorUtils.listAll(applicationContext)
+            allMediaFilesPair = MediaCatalogLoader.listAll(applicationContext)
         }
         allMediaFilesPair?.filter {
             paths.isEmpty() || paths.stream().anyMatch {
@@ -2358,15 +1860,11 @@ class FilesViewModel(val applicationContext: Application) :
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
     private fun processGamesInstalled(packageManager: PackageManager) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
-
-            allApps.get()?.filter {
-                Utils.applicationIsGame(it.first)
-            }?.mapNotNull {
-                MediaFileInfo.fromApplicationInfo(applicationContext, it.first, it.second)
-            }?.sortedByDescending { it.longSize }?.let {
-                gamesInstalledLiveData?.postValue(ArrayList(it))
-            }
+            val snapshot = loadAppMetricsSnapshot() ?: return@launch
+            val result = snapshot.apps.filter {
+                Utils.applicationIsGame(it.applicationInfo)
+            }.sortedByDescending { it.size }.map { MediaFileInfo.fromAppMetrics(it) }
+            gamesInstalledLiveData?.postValue(ArrayList(result))
         }
     }
 
@@ -2400,7 +1898,7 @@ class FilesViewModel(val applicationContext: Application) :
 
     fun killBackgroundProcesses(packageManager: PackageManager, callback: () -> Unit) {
         viewModelScope.launch(Dispatchers.IO) {
-            loadAllInstalledApps(packageManager)
+            loadAllInstalledApps()
             allApps.get()?.filter {
                 it.first.packageName != applicationContext.packageName
             }?.forEach {
@@ -2412,61 +1910,21 @@ class FilesViewModel(val applicationContext: Application) :
         }
     }
 
-    private fun loadAllInstalledApps(packageManager: PackageManager) {
-        if (allApps.get() == null) {
-            try {
-                packageManager.getInstalledApplications(PackageManager.GET_META_DATA)
-            } catch (e: Exception) {
-                log.warn("failed to load all installed applications", e)
-                null
-            }?.let {
-                apps ->
-                allApps.set(
-                    apps.map {
-                        val info: PackageInfo? = try {
-                            packageManager.getPackageInfo(
-                                it.packageName,
-                                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P)
-                                    PackageManager.GET_SIGNATURES
-                                else PackageManager.GET_SIGNING_CERTIFICATES
-                            )
-                        } catch (e: PackageManager.NameNotFoundException) {
-                            log.warn(
-                                "failed to find package name {} while loading apps list",
-                                it.packageName,
-                                e
-                            )
-                            null
-                        }
-                        Pair(it, info)
-                    }.filter {
-                        val androidInfo: PackageInfo?
-                        try {
-                            androidInfo =
-                                packageManager.getPackageInfo(
-                                    "android",
-                                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P)
-                                        PackageManager.GET_SIGNATURES
-                                    else PackageManager.GET_SIGNING_CERTIFICATES
-                                )
-                            !Utils.isAppInSystemPartition(it.first) && (
-                                it.second == null ||
-                                    (
-                                        !Utils.isSignedBySystem(it.second, androidInfo) &&
-                                            !it.second!!.packageName
-                                                .equals(applicationContext.packageName)
-                                        )
-                                )
-                        } catch (e: PackageManager.NameNotFoundException) {
-                            log.warn(
-                                "failed to find package name {} while loading apps list",
-                                it.first.packageName,
-                                e
-                            )
-                            true
-                        }
-                    }
-                )
+    /**
+     * Metrics of installed apps shared by all app analyses, see [AppMetricsRepository]
+     */
+    private suspend fun loadAppMetricsSnapshot(): AppMetricsRepository.Snapshot? {
+        loadAllInstalledApps()
+        return allApps.get()?.let {
+            AppMetricsRepository.getSnapshot(applicationContext, it)
+        }
+    }
+
+    private fun loadAllInstalledApps() {
+        InstalledAppsRepository.getUserApps(applicationContext)?.let {
+            apps ->
+            // repository returns same list until a package changes
+            if (allApps.getAndSet(apps) !== apps) {
                 insertInstalledApps()
             }
         }
@@ -2636,79 +2094,195 @@ class FilesViewModel(val applicationContext: Application) :
         super.onCleared()
     }
 
-    private fun processInternalStorageAnalysis(
+    /**
+     * Duplicates are found in stages so that we read as little from disk as possible.
+     * While directories are being walked, files are bucketed by their length, files with a unique
+     * length can't have a duplicate. As soon as a length collides, files are handed over to
+     * hashing workers which compare them by a sampled checksum (see [FileUtils.getSampledChecksum]).
+     * Once walk is complete, only files whose sampled checksum collides as well get their full
+     * SHA-256 checksum computed, and the group is saved in database.
+     * Both checksums are cached in [checksumDao], so unchanged files aren't read again on re-scan.
+     * Cached checksums of files deleted or changed since are pruned once a scan completes.
+     * At most [walkerParallelism] directories are listed and [hashingParallelism] files are hashed
+     * at a time.
+     */
+    private suspend fun processInternalStorageAnalysis(
         dao: InternalStorageAnalysisDao,
+        checksumDao: FileChecksumDao,
         file: File,
         deepSearch: Boolean,
-        currentDepth: Int
+        walkerParallelism: Int,
+        hashingParallelism: Int
     ) {
-        if (!isInternalStorageAnalysing || (
-            !deepSearch && currentDepth
-            > PreferencesConstants.DEFAULT_DUPLICATE_SEARCH_DEPTH_INCL
-            )
+        val progress = ParallelFileWalker.Progress {
+            internalStorageAnalysisProgressLiveData.postValue(it)
+        }
+        val walker = ParallelFileWalker(
+            walkerParallelism,
+            maxDepth = if (deepSearch) Int.MAX_VALUE
+            else PreferencesConstants.DEFAULT_DUPLICATE_SEARCH_DEPTH_INCL
         ) {
-            return
+            !isInternalStorageAnalysing
         }
-        if (file.isDirectory) {
-            val filesInDir = file.listFiles()
-            if (filesInDir == null) {
-                dao.insert(
-                    InternalStorageAnalysis(
-                        file.path, listOf(file.path),
-                        true, false, true, false,
-                        currentDepth
-                    )
-                )
-            } else {
-                if (filesInDir.isNotEmpty()) {
-                    for (currFile in filesInDir) {
-                        processInternalStorageAnalysis(
-                            dao, currFile, deepSearch,
-                            currentDepth + 1
-                        )
+        val writer = BufferedAnalysisWriter<InternalStorageAnalysisWithFiles> {
+            dao.insertAll(it)
+        }
+        try {
+            // first file found for each length, null once the length has collided
+            val firstFileByLength = HashMap<Long, Pair<File, Int>?>()
+            val filesBySampledChecksum = groupByChecksumInParallel(
+                progress, hashingParallelism,
+                { candidates ->
+                    walker.walk(
+                        file,
+                        {
+                            directory, depth ->
+                            writer.write(
+                                InternalStorageAnalysisWithFiles(
+                                    InternalStorageAnalysis(
+                                        directory.path,
+                                        true, false, true, false,
+                                        depth
+                                    ),
+                                    listOf(directory.path)
+                                )
+                            )
+                        }
+                    ) {
+                        currFile, depth ->
+                        progress.onFileListed()
+                        val fileLength = currFile.length()
+                        if (fileLength == 0L) {
+                            writer.write(
+                                InternalStorageAnalysisWithFiles(
+                                    InternalStorageAnalysis(
+                                        currFile.path,
+                                        true, false, false, false,
+                                        depth
+                                    ),
+                                    listOf(currFile.path)
+                                )
+                            )
+                        } else {
+                            val sameLengthFiles = synchronized(firstFileByLength) {
+                                if (!firstFileByLength.containsKey(fileLength)) {
+                                    firstFileByLength[fileLength] = Pair(currFile, depth)
+                                    listOf()
+                                } else {
+                                    listOfNotNull(
+                                        firstFileByLength.put(fileLength, null),
+                                        Pair(currFile, depth)
+                                    )
+                                }
+                            }
+                            sameLengthFiles.forEach {
+                                candidates.send(it)
+                            }
+                        }
                     }
                 }
+            ) {
+                FileUtils.getSampledChecksum(checksumDao, it)
             }
-        } else {
-            if (!file.exists()) {
-                return
-            }
-            if (file.length() == 0L) {
-                dao.insert(
-                    InternalStorageAnalysis(
-                        file.path, listOf(file.path),
-                        true, false, false, false,
-                        currentDepth
-                    )
-                )
-            } else {
-                val checksum = FileUtils.getSHA256Checksum(file.inputStream())
-                val existingChecksum = dao.findBySha256Checksum(checksum)
-                if (existingChecksum != null && !existingChecksum.files.contains(file.path)) {
-                    dao.insert(
-                        InternalStorageAnalysis(
-                            existingChecksum.checksum,
-                            existingChecksum.files + file.path,
-                            false, false, false, false,
-                            currentDepth
-                        )
-                    )
+            val filesToHashFully = ArrayList<Pair<File, Int>>()
+            for ((sampledChecksum, sameSampleFiles) in filesBySampledChecksum) {
+                if (sameSampleFiles[0].first.length()
+                    <= FileUtils.SAMPLED_CHECKSUM_FULL_READ_THRESHOLD
+                ) {
+                    // sampled checksum already covers the whole file
+                    insertDuplicateFiles(dao, sampledChecksum, sameSampleFiles)
                 } else {
-                    dao.insert(
-                        InternalStorageAnalysis(
-                            checksum,
-                            listOf(file.path), false, false, false,
-                            false,
-                            currentDepth
-                        )
-                    )
+                    filesToHashFully.addAll(sameSampleFiles)
+                }
+            }
+            groupByChecksumInParallel(
+                progress, hashingParallelism,
+                { candidates ->
+                    filesToHashFully.forEach {
+                        candidates.send(it)
+                    }
+                }
+            ) {
+                FileUtils.getSHA256Checksum(checksumDao, it)
+            }.forEach { (checksum, duplicateFiles) ->
+                insertDuplicateFiles(dao, checksum, duplicateFiles)
+            }
+        } finally {
+            // not suspending, so leftover results are written even if scan is cancelled
+            writer.flush()
+        }
+        if (isInternalStorageAnalysing) {
+            FileUtils.pruneFileChecksums(checksumDao)
+        }
+        progress.finish()
+    }
+
+    /**
+     * Hashing stage of duplicate files pipeline. Files sent by [producer] are queued in a bounded
+     * channel, so that [producer] suspends when hashing can't keep up, and are hashed by
+     * [parallelism] workers.
+     * Returns files grouped by checksum, dropping groups with a single file as those can't be
+     * duplicates. Files we fail to read are skipped.
+     */
+    private suspend fun groupByChecksumInParallel(
+        progress: ParallelFileWalker.Progress,
+        parallelism: Int,
+        producer: suspend (SendChannel<Pair<File, Int>>) -> Unit,
+        checksum: (File) -> String
+    ): Map<String, List<Pair<File, Int>>> {
+        val filesByChecksum = HashMap<String, MutableList<Pair<File, Int>>>()
+        val candidates = Channel<Pair<File, Int>>(
+            ParallelFileWalker.DEFAULT_HASHING_QUEUE_CAPACITY
+        )
+        coroutineScope {
+            repeat(parallelism) {
+                launch(Dispatchers.IO) {
+                    for (fileAndDepth in candidates) {
+                        if (!isInternalStorageAnalysing) {
+                            // keep draining so that producer doesn't block
+                            continue
+                        }
+                        try {
+                            val fileChecksum = checksum.invoke(fileAndDepth.first)
+                            synchronized(filesByChecksum) {
+                                filesByChecksum.getOrPut(fileChecksum) {
+                                    mutableListOf()
+                                }.add(fileAndDepth)
+                            }
+                            progress.onFileHashed(fileAndDepth.first.length())
+                        } catch (e: Exception) {
+                            log.warn("failed to get checksum for {}", fileAndDepth.first.path, e)
+                        }
+                    }
                 }
             }
+            try {
+                producer.invoke(candidates)
+            } finally {
+                candidates.close()
+            }
         }
+        return filesByChecksum.filterValues { it.size > 1 }
+    }
+
+    private fun insertDuplicateFiles(
+        dao: InternalStorageAnalysisDao,
+        checksum: String,
+        duplicateFiles: List<Pair<File, Int>>
+    ) {
+        dao.insert(
+            InternalStorageAnalysis(
+                checksum,
+                false, false, false, false,
+                duplicateFiles.minOf { it.second }
+            ),
+            duplicateFiles.map { it.first.path }
+        )
     }
 
     private fun getMediaFileChecksumAndWriteToDatabase(
         dao: InternalStorageAnalysisDao,
+        checksumDao: FileChecksumDao,
         file: File
     ) {
         if (!file.exists()) {
@@ -2716,26 +2290,16 @@ class FilesViewModel(val applicationContext: Application) :
             return
         }
         try {
-            val checksum = FileUtils.getSHA256Checksum(file.inputStream())
-            val existingChecksum = dao.findMediaFileBySha256Checksum(checksum)
-            if (existingChecksum != null && !existingChecksum.files.contains(file.path)) {
-                dao.insert(
-                    InternalStorageAnalysis(
-                        existingChecksum.checksum,
-                        existingChecksum.files + file.path,
-                        false, false, false, true, 0
-                    )
-                )
-            } else {
-                dao.insert(
-                    InternalStorageAnalysis(
-                        checksum,
-                        listOf(file.path), false, false, false,
-                        true,
-                        0
-                    )
-                )
-            }
+            val checksum = FileUtils.getSHA256Checksum(checksumDao, file)
+            dao.insert(
+                InternalStorageAnalysis(
+                    checksum,
+                    false, false, false,
+                    true,
+                    0
+                ),
+                listOf(file.path)
+            )
         } catch (e: Exception) {
             log.warn("failed to get checksum and write to database", e)
         }
@@ -2769,8 +2333,7 @@ class FilesViewModel(val applicationContext: Application) :
             if (storageSummary == null) {
                 return@liveData
             }
-            val metaInfoAndSummaryPair = CursorUtils
-                .listImages(applicationContext.applicationContext)
+            val metaInfoAndSummaryPair = MediaCatalogLoader.listImages(applicationContext)
             val sortingPref = MediaFileListSorter.SortingPreference.newInstance(
                 applicationContext
                     .getAppCommonSharedPreferences(),
@@ -2812,9 +2375,9 @@ class FilesViewModel(val applicationContext: Application) :
             }
             val dao = AppDatabase.getInstance(applicationContext).pathPreferencesDao()
             val pathPreferences = dao.findByFeature(PathPreferences.FEATURE_AUDIO_PLAYER)
-            val metaInfoAndSummaryPair = CursorUtils
+            val metaInfoAndSummaryPair = MediaCatalogLoader
                 .listAudio(
-                    applicationContext.applicationContext,
+                    applicationContext,
                     pathPreferences.map {
                         it.path
                     }
@@ -2830,17 +2393,6 @@ class FilesViewModel(val applicationContext: Application) :
             )
             setMediaInfoSummary(metaInfoAndSummaryPair.first, storageSummary)
             emit(metaInfoAndSummaryPair)
-            metaInfoAndSummaryPair.second.forEach {
-                mediaFileInfo ->
-                // load album arts lazily
-                mediaFileInfo.extraInfo?.audioMetaData?.albumId?.let {
-                    albumId ->
-                    val albumUri = AudioUtils.getMediaStoreAlbumCoverUri(albumId)
-                    val albumBitmap = AudioUtils
-                        .getAlbumBitmap(applicationContext.applicationContext, albumUri)
-                    mediaFileInfo.extraInfo?.audioMetaData?.albumArt = albumBitmap
-                }
-            }
         }
     }
 
@@ -2853,30 +2405,39 @@ class FilesViewModel(val applicationContext: Application) :
             }
             val dao = AppDatabase.getInstance(applicationContext).pathPreferencesDao()
             val pathPreferences = dao.findByFeature(PathPreferences.FEATURE_AUDIO_PLAYER)
-            val playlists = PlaylistLoader.getAllPlaylists(applicationContext)
+            val audioFiles = MediaCatalogLoader.listAudio(
+                applicationContext,
+                pathPreferences.map {
+                    pathPrefs ->
+                    pathPrefs.path
+                }
+            ).second.associateBy { it.id }
+            // members of all playlists are cached as audio ids, join them with audio list
+            // in memory instead of querying full metadata for every playlist
+            val memberships = PlaylistRepository.getInstance(applicationContext).memberships
             val playlistFiles = arrayListOf<MediaFileInfo>()
-            var mediaStorageSummary: StorageSummary? = null
-            playlists.forEach {
-                if (it.id != -1L) {
-                    val metaInfoAndSummaryPair = CursorUtils
-                        .listPlaylists(
-                            applicationContext.applicationContext,
-                            it.id,
-                            pathPreferences.map {
-                                pathPrefs ->
-                                pathPrefs.path
-                            }
-                        )
-                    metaInfoAndSummaryPair.second.forEach {
+            memberships.forEach {
+                (playlist, audioIds) ->
+                audioIds.forEach {
+                    audioId ->
+                    audioFiles[audioId]?.let {
                         mediaFileInfo ->
-                        mediaFileInfo.extraInfo?.audioMetaData?.playlist = it
+                        playlistFiles.add(
+                            mediaFileInfo.copy(
+                                extraInfo = mediaFileInfo.extraInfo?.copy(
+                                    audioMetaData = mediaFileInfo.extraInfo?.audioMetaData
+                                        ?.copy(playlist = playlist)
+                                )
+                            )
+                        )
                     }
-                    playlistFiles.addAll(metaInfoAndSummaryPair.second)
-                    mediaStorageSummary = metaInfoAndSummaryPair.first
-                } else {
-                    log.warn("invalid playlist {}", it)
                 }
             }
+            val mediaStorageSummary = if (memberships.isNotEmpty()) {
+                StorageSummary(playlistFiles.size, 0, playlistFiles.sumOf { it.longSize })
+            } else {
+                null
+            }
             mediaStorageSummary?.let {
                 setMediaInfoSummary(it, storageSummary)
                 val sortingPref = MediaFileListSorter.SortingPreference.newInstance(
@@ -2889,17 +2450,6 @@ class FilesViewModel(val applicationContext: Application) :
                     playlistFiles, sortingPref
                 )
                 emit(Pair(it, playlistFiles))
-                playlistFiles.forEach {
-                    mediaFileInfo ->
-                    // load album arts lazily
-                    mediaFileInfo.extraInfo?.audioMetaData?.albumId?.let {
-                        albumId ->
-                        val albumUri = AudioUtils.getMediaStoreAlbumCoverUri(albumId)
-                        val albumBitmap = AudioUtils
-                            .getAlbumBitmap(applicationContext.applicationContext, albumUri)
-                        mediaFileInfo.extraInfo?.audioMetaData?.albumArt = albumBitmap
-                    }
-                }
             }
         }
     }
@@ -2911,8 +2461,7 @@ class FilesViewModel(val applicationContext: Application) :
             if (storageSummary == null) {
                 return@liveData
             }
-            val metaInfoAndSummaryPair = CursorUtils
-                .listVideos(applicationContext.applicationContext)
+            val metaInfoAndSummaryPair = MediaCatalogLoader.listVideos(applicationContext)
             val sortingPref = MediaFileListSorter.SortingPreference.newInstance(
                 applicationContext
                     .getAppCommonSharedPreferences(),
@@ -2937,7 +2486,7 @@ class FilesViewModel(val applicationContext: Application) :
             /*val metaInfoAndSummaryPair = CursorUtils
                 .listDocs(applicationContext.applicationContext)*/
             if (allMediaFilesPair == null) {
-                allMediaFilesPair = CursorUtils.listAll(applicationContext)
+                allMediaFilesPair = MediaCatalogLoader.listAll(applicationContext)
             }
             allMediaFilesPair?.let {
                 pair ->
@@ -21,10 +21,10 @@
 package com.amaze.fileutilities.home_page.ui.files
 
 import android.content.Context
-import android.graphics.Bitmap
 import android.graphics.drawable.Drawable
 import android.widget.ImageView
 import com.amaze.fileutilities.R
+import com.amaze.fileutilities.audio_player.AlbumArtCache
 import com.amaze.fileutilities.utilis.px
 import com.bumptech.glide.Glide
 import com.bumptech.glide.ListPreloader.PreloadModelProvider
@@ -115,8 +115,8 @@ class MediaAdapterPreloader<T : MediaFileInfo>(
 
     private fun getReadyRequestBuilder(item: MediaFileInfo): RequestBuilder<Drawable> {
         var transformedRequest = request.load(getLoadingModel(item))
-        if (item.extraInfo?.audioMetaData?.albumArt == null) {
-            // apply size constraint when we don't have bitmap, as bitmap already is resized see CursorUtils
+        if (item.extraInfo?.apkMetaData?.drawable == null) {
+            // apply size constraint when we don't have drawable, as drawable is already in memory
             transformedRequest = transformedRequest
                 .apply(
                     RequestOptions().override(
@@ -130,9 +130,11 @@ class MediaAdapterPreloader<T : MediaFileInfo>(
 
     private fun getLoadingModel(mediaFileInfo: MediaFileInfo): Any {
         val toLoadPath: String = mediaFileInfo.path
-        val toLoadBitmap: Bitmap? = mediaFileInfo.extraInfo?.audioMetaData?.albumArt
+        val toLoadAlbumArt = mediaFileInfo.extraInfo?.audioMetaData?.albumId?.let {
+            AlbumArtCache.AlbumArt(it)
+        }
         val toLoadDrawable = mediaFileInfo.extraInfo?.apkMetaData?.drawable
-        return toLoadDrawable ?: toLoadBitmap ?: toLoadPath
+        return toLoadDrawable ?: toLoadAlbumArt ?: toLoadPath
     }
 
     fun loadImage(item: MediaFileInfo, view: ImageView) {
@@ -23,17 +23,16 @@ package com.amaze.fileutilities.home_page.ui.files
 import android.content.ActivityNotFoundException
 import android.content.Context
 import android.content.Intent
-import android.content.pm.ApplicationInfo
-import android.content.pm.PackageInfo
-import android.graphics.Bitmap
 import android.graphics.drawable.Drawable
 import android.net.Uri
 import android.text.format.DateUtils
 import androidx.core.content.FileProvider
 import com.amaze.fileutilities.R
+import com.amaze.fileutilities.audio_player.AlbumArtCache
 import com.amaze.fileutilities.audio_player.AudioPlayerDialogActivity
 import com.amaze.fileutilities.home_page.ui.options.CastActivity
 import com.amaze.fileutilities.image_viewer.ImageViewerDialogActivity
+import com.amaze.fileutilities.utilis.AppMetricsRepository
 import com.amaze.fileutilities.utilis.FileUtils
 import com.amaze.fileutilities.utilis.Utils
 import com.amaze.fileutilities.utilis.showToastOnBottom
@@ -45,7 +44,6 @@ import com.bumptech.glide.RequestBuilder
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.io.File
-import java.lang.Exception
 import java.lang.ref.WeakReference
 
 data class MediaFileInfo(
@@ -146,43 +144,29 @@ data class MediaFileInfo(
             )
         }
 
-        fun fromApplicationInfo(
-            context: Context,
-            applicationInfo: ApplicationInfo,
-            packageInfo: PackageInfo?,
+        fun fromAppMetrics(
+            appMetrics: AppMetricsRepository.AppMetrics,
             sizeDiff: Long = -1,
             timeForeground: Long = 0L
-        ): MediaFileInfo? {
-            if (applicationInfo.sourceDir == null) {
-                return null
-            }
-            try {
-                val apkFile = File(applicationInfo.sourceDir)
-                val packageManager = context.packageManager
-
-                val mediaFileInfo = MediaFileInfo(
-                    applicationInfo.loadLabel(packageManager) as String,
-                    applicationInfo.sourceDir,
-                    apkFile.lastModified(),
-                    Utils.findApplicationInfoSize(context, applicationInfo),
-                    false
-                )
-                val extraInfo = ExtraInfo(
-                    MEDIA_TYPE_APK,
-                    null, null, null,
-                    ApkMetaData(
-                        applicationInfo.packageName,
-                        packageManager.getApplicationIcon(applicationInfo.packageName),
-                        Utils.getApplicationNetworkBytes(context, applicationInfo),
-                        sizeDiff, timeForeground
-                    )
+        ): MediaFileInfo {
+            val mediaFileInfo = MediaFileInfo(
+                appMetrics.label,
+                appMetrics.applicationInfo.sourceDir,
+                appMetrics.lastModified,
+                appMetrics.size,
+                false
+            )
+            mediaFileInfo.extraInfo = ExtraInfo(
+                MEDIA_TYPE_APK,
+                null, null, null,
+                ApkMetaData(
+                    appMetrics.packageName,
+                    appMetrics.icon,
+                    appMetrics.networkBytes,
+                    sizeDiff, timeForeground
                 )
-                mediaFileInfo.extraInfo = extraInfo
-                return mediaFileInfo
-            } catch (e: Exception) {
-                log.warn("failed to form mediafileinfo from application info", e)
-                return null
-            }
+            )
+            return mediaFileInfo
         }
     }
 
@@ -192,8 +176,10 @@ data class MediaFileInfo(
         } else {
             return when (this.extraInfo!!.mediaType) {
                 MEDIA_TYPE_AUDIO -> {
-                    val toLoadBitmap: Bitmap? = this.extraInfo?.audioMetaData?.albumArt
-                    Glide.with(context).load(toLoadBitmap)
+                    val albumArt = this.extraInfo?.audioMetaData?.albumId?.let {
+                        AlbumArtCache.AlbumArt(it)
+                    }
+                    Glide.with(context).load(albumArt)
                 }
                 MEDIA_TYPE_APK -> {
                     val drawable = this.extraInfo?.apkMetaData?.drawable
@@ -392,7 +378,8 @@ data class MediaFileInfo(
         val imageMetaData: ImageMetaData?,
         val apkMetaData: ApkMetaData? = null,
         val trashBinData: TrashBinData? = null,
-        val extraMetaData: ExtraMetaData? = null
+        val extraMetaData: ExtraMetaData? = null,
+        val documentContentMetaData: DocumentContentMetaData? = null
     )
 
     data class AudioMetaData(
@@ -400,7 +387,6 @@ data class MediaFileInfo(
         val artistName: String?,
         val duration: Long?,
         val albumId: Long?,
-        var albumArt: Bitmap?,
         var idInPlaylist: Long?,
         var playlist: Playlist?,
     )
@@ -414,6 +400,7 @@ data class MediaFileInfo(
         val timeForeground: Long = 0
     )
     data class ExtraMetaData(val checksum: String)
+    data class DocumentContentMetaData(val snippet: CharSequence)
     data class Playlist(var id: Long, var name: String)
     data class TrashBinData(var originalFilePath: String)
 }
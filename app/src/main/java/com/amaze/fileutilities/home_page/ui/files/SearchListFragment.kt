@@ -33,6 +33,7 @@ import android.widget.AutoCompleteTextView
 import android.widget.TextView
 import androidx.fragment.app.activityViewModels
 import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.LiveData
 import androidx.recyclerview.widget.LinearLayoutManager
 import com.amaze.fileutilities.R
 import com.amaze.fileutilities.databinding.FragmentSearchListBinding
@@ -40,6 +41,7 @@ import com.amaze.fileutilities.home_page.MainActivity
 import com.amaze.fileutilities.home_page.ui.AggregatedMediaFileInfoObserver
 import com.amaze.fileutilities.utilis.AbstractMediaFilesAdapter
 import com.amaze.fileutilities.utilis.ItemsActionBarFragment
+import com.amaze.fileutilities.utilis.MediaSearchIndex
 import com.bumptech.glide.Glide
 import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader
 import com.bumptech.glide.util.ViewPreloadSizeProvider
@@ -61,6 +63,10 @@ class SearchListFragment :
     private val searchQueryInput: SearchQueryInput =
         SearchQueryInput(AggregatedMediaFileInfoObserver.AggregatedMediaFiles(), SearchFilter())
 
+    // results of superseded queries are cancelled, so stop observing them
+    private var searchResultsLiveData: LiveData<MutableList<MediaFileInfo>?>? = null
+    private var searchHintsLiveData: LiveData<MutableList<String>?>? = null
+
     companion object {
         const val MAX_PRELOAD = 100
         const val SEARCH_THRESHOLD = 2
@@ -92,11 +98,16 @@ class SearchListFragment :
         observeMediaInfoLists { isLoading, aggregatedFiles ->
             if (isLoading) {
                 showLoadingViews(true)
+                // index lists loaded so far, so that little is left to index once all are loaded
+                aggregatedFiles?.let {
+                    filesViewModel.updateSearchIndex(it)
+                }
             } else {
                 aggregatedFiles?.run {
                     showLoadingViews(false)
                     showEmptyViews()
                     searchQueryInput.aggregatedMediaFiles = this
+                    filesViewModel.updateSearchIndex(this)
                 }
             }
         }
@@ -166,6 +177,10 @@ class SearchListFragment :
                     searchFilter.toggleFilterAudios()
                     invalidateFilterButtons()
                 }
+                filterContentButton.setOnClickListener {
+                    searchFilter.toggleSearchContent()
+                    invalidateFilterButtons()
+                }
             }
             searchListView.addOnScrollListener(recyclerViewPreloader!!)
             searchListView.layoutManager = linearLayoutManager
@@ -194,12 +209,20 @@ class SearchListFragment :
                 if (it.text != null &&
                     it.text.length > SEARCH_THRESHOLD
                 ) {
-                    if (searchQueryInput.aggregatedMediaFiles.mediaListsLoaded()) {
+                    if (searchQueryInput.searchFilter.searchContent ||
+                        searchQueryInput.aggregatedMediaFiles.mediaListsLoaded()
+                    ) {
                         showLoadingViews(false)
-                        filesViewModel.queryOnAggregatedMediaFiles(
-                            it.text.toString(),
-                            searchQueryInput
-                        ).observe(
+                        searchResultsLiveData?.removeObservers(viewLifecycleOwner)
+                        searchResultsLiveData = if (searchQueryInput.searchFilter.searchContent) {
+                            filesViewModel.queryDocumentContent(it.text.toString())
+                        } else {
+                            filesViewModel.queryOnAggregatedMediaFiles(
+                                it.text.toString(),
+                                searchQueryInput
+                            )
+                        }
+                        searchResultsLiveData?.observe(
                             viewLifecycleOwner
                         ) { mediaFileInfoList ->
                             if (mediaFileInfoList != null) {
@@ -236,11 +259,13 @@ class SearchListFragment :
             if (query.toString().length > SEARCH_HINT_THRESHOLD) {
                 if (searchQueryInput.aggregatedMediaFiles.mediaListsLoaded()) {
                     showLoadingViews(false)
-                    filesViewModel.queryHintOnAggregatedMediaFiles(
+                    searchHintsLiveData?.removeObservers(viewLifecycleOwner)
+                    searchHintsLiveData = filesViewModel.queryHintOnAggregatedMediaFiles(
                         query.toString(),
                         SEARCH_HINT_RESULTS_THRESHOLD,
                         searchQueryInput
-                    ).observe(
+                    )
+                    searchHintsLiveData?.observe(
                         viewLifecycleOwner
                     ) {
                         if (it != null) {
@@ -371,6 +396,16 @@ class SearchListFragment :
                 )
                 filterDocumentsButton.setTextColor(resources.getColor(R.color.white))
             }
+            if (searchQueryInput.searchFilter.searchContent) {
+                filterContentButton.setBackgroundColor(resources.getColor(R.color.white))
+                filterContentButton.setTextColor(resources.getColor(R.color.navy_blue))
+            } else {
+                filterContentButton.setBackgroundColor(
+                    resources
+                        .getColor(R.color.white_translucent_2)
+                )
+                filterContentButton.setTextColor(resources.getColor(R.color.white))
+            }
         }
     }
 
@@ -383,7 +418,8 @@ class SearchListFragment :
         var searchFilterImages: Boolean = true,
         var searchFilterVideos: Boolean = true,
         var searchFilterAudios: Boolean = true,
-        var searchFilterDocuments: Boolean = true
+        var searchFilterDocuments: Boolean = true,
+        var searchContent: Boolean = false
     ) {
         fun toggleFilterImages() {
             searchFilterImages = !searchFilterImages
@@ -400,5 +436,22 @@ class SearchListFragment :
         fun toggleFilterDocs() {
             searchFilterDocuments = !searchFilterDocuments
         }
+
+        /**
+         * Searches text inside documents instead of titles, see [FilesViewModel.queryDocumentContent]
+         */
+        fun toggleSearchContent() {
+            searchContent = !searchContent
+        }
+
+        fun acceptsSearchIndexType(type: Int): Boolean {
+            return when (type) {
+                MediaSearchIndex.TYPE_IMAGES -> searchFilterImages
+                MediaSearchIndex.TYPE_VIDEOS -> searchFilterVideos
+                MediaSearchIndex.TYPE_AUDIOS -> searchFilterAudios
+                MediaSearchIndex.TYPE_DOCS -> searchFilterDocuments
+                else -> false
+            }
+        }
     }
 }
@@ -53,12 +53,13 @@ class AnalysisPrefFragment : PreferenceFragmentCompat(), Preference.OnPreference
         private const val KEY_RECENTLY_UPDATED_APPS = "recently_updated_apps"
         private const val KEY_LARGE_SIZE_DIFF_APPS = "large_size_diff_apps"
         private const val KEY_WHATSAPP_MEDIA = "whatsapp_media"
+        private const val KEY_DOCUMENT_CONTENT = "document_content_paths"
         private val KEYS = listOf(
             KEY_DUPLICATES, KEY_MEMES, KEY_BLUR, KEY_LOW_LIGHT, KEY_FEATURES,
             KEY_SIMILAR_IMAGES, KEY_DOWNLOAD,
             KEY_RECORDING, KEY_SCREENSHOT, KEY_UNUSED_APPS, KEY_MOST_USED_APPS, KEY_LEAST_USED_APPS,
             KEY_NEWLY_INSTALLED_APPS, KEY_RECENTLY_UPDATED_APPS, KEY_WHATSAPP_MEDIA, KEY_TELEGRAM,
-            KEY_LARGE_SIZE_DIFF_APPS
+            KEY_LARGE_SIZE_DIFF_APPS, KEY_DOCUMENT_CONTENT
         )
     }
 
@@ -172,6 +173,13 @@ class AnalysisPrefFragment : PreferenceFragmentCompat(), Preference.OnPreference
                     R.string.whatsapp_media
                 )
             }
+            KEY_DOCUMENT_CONTENT -> {
+                (activity as PreferenceActivity).inflatePreferenceFragment(
+                    PathPreferencesFragment
+                        .newInstance(PathPreferences.FEATURE_DOCUMENT_CONTENT),
+                    R.string.document_content_search
+                )
+            }
             KEY_UNUSED_APPS -> {
                 val days = prefs.getInt(
                     PreferencesConstants.KEY_UNUSED_APPS_DAYS,
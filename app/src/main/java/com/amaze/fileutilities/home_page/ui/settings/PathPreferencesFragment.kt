@@ -95,13 +95,16 @@ class PathPreferencesFragment : PreferenceFragmentCompat() {
             preferencesList?.order = 2
             val enablePreference = addEnablePreference()
             preferenceScreen.addPreference(enablePreference)
-            if (PathPreferences.MIGRATION_PREF_MAP.containsKey(featureName)) {
+            if (PathPreferences.MIGRATION_PREF_MAP.containsKey(featureName) ||
+                featureName == PathPreferences.FEATURE_DOCUMENT_CONTENT
+            ) {
                 val resetPreference = addResetAnalysisPreference()
                 preferenceScreen.addPreference(resetPreference)
                 resetPreference.dependency = PathPreferences.getEnablePreferenceKey(featureName!!)
             }
             preferencesList?.dependency = PathPreferences.getEnablePreferenceKey(featureName!!)
-        } else {
+        }
+        if (PathPreferences.EXCLUDE_FEATURES_LIST.contains(featureName!!)) {
             preferencesList?.title = resources.getString(R.string.paths_excluded)
         }
         reload()
@@ -181,10 +184,14 @@ class PathPreferencesFragment : PreferenceFragmentCompat() {
                     log.warn("failed to get context", e)
                     WeakReference(null)
                 }
-                PathPreferences.deleteAnalysisData(
-                    ArrayList(preferenceDbMap.values),
-                    context
-                )
+                if (featureName == PathPreferences.FEATURE_DOCUMENT_CONTENT) {
+                    context.get()?.let { PathPreferences.resetDocumentContent(it) }
+                } else {
+                    PathPreferences.deleteAnalysisData(
+                        ArrayList(preferenceDbMap.values),
+                        context
+                    )
+                }
                 dialog.dismiss()
             }
             .setNegativeButton(
@@ -232,7 +239,7 @@ class PathPreferencesFragment : PreferenceFragmentCompat() {
             file ->
             val pathPreferences = PathPreferences(
                 file.path, featureName!!,
-                featureName == PathPreferences.FEATURE_AUDIO_PLAYER
+                PathPreferences.EXCLUDE_FEATURES_LIST.contains(featureName!!)
             )
             var overrideExisting = false
             dao.findByFeature(featureName!!).forEach {
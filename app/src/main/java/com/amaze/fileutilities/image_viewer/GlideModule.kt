@@ -21,8 +21,13 @@
 package com.amaze.fileutilities.image_viewer
 
 import android.content.Context
+import android.graphics.Bitmap
 import android.util.Log
+import com.amaze.fileutilities.audio_player.AlbumArtCache
+import com.amaze.fileutilities.audio_player.AlbumArtModelLoader
+import com.bumptech.glide.Glide
 import com.bumptech.glide.GlideBuilder
+import com.bumptech.glide.Registry
 import com.bumptech.glide.annotation.GlideModule
 import com.bumptech.glide.module.AppGlideModule
 
@@ -33,4 +38,11 @@ class GlideModule : AppGlideModule() {
     override fun applyOptions(context: Context, builder: GlideBuilder) {
         builder.setLogLevel(Log.ERROR)
     }
+
+    override fun registerComponents(context: Context, glide: Glide, registry: Registry) {
+        registry.prepend(
+            AlbumArtCache.AlbumArt::class.java, Bitmap::class.java,
+            AlbumArtModelLoader.Factory(context)
+        )
+    }
 }
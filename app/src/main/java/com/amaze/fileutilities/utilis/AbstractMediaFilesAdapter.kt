@@ -267,6 +267,11 @@ abstract class AbstractMediaFilesAdapter(
                             MediaFileInfo.MEDIA_TYPE_DOCUMENT -> {
                                 holder.infoSummary.text = "$formattedDate | $formattedSize"
                                 holder.extraInfo.text = ""
+                                extraInfo.documentContentMetaData?.let {
+                                    if (!isGrid) {
+                                        holder.infoSubSummary.text = it.snippet
+                                    }
+                                }
                             }
                             MediaFileInfo.MEDIA_TYPE_UNKNOWN -> {
                                 holder.infoSummary.text = "$formattedDate | $formattedSize"
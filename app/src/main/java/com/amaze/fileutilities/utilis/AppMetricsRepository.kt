@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageInfo
+import android.graphics.drawable.Drawable
+import android.os.Build
+import android.util.SparseLongArray
+import androidx.annotation.RequiresApi
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Snapshot of metrics of installed apps (label, icon, size, network bytes, install times),
+ * shared by all app analyses so that storage and network stats are queried once per app instead
+ * of once per analysis. Metrics are collected in parallel batches and kept for
+ * [SNAPSHOT_TTL_MILLIS], a package being installed, updated or removed invalidates them
+ * (see [InstalledAppsRepository.registerPackageChangeReceiver]).
+ */
+object AppMetricsRepository {
+
+    private val log: Logger = LoggerFactory.getLogger(AppMetricsRepository::class.java)
+
+    private const val SNAPSHOT_TTL_MILLIS = 5 * 60 * 1000L
+    private const val COLLECT_PARALLELISM = 4
+
+    data class AppMetrics(
+        val applicationInfo: ApplicationInfo,
+        val packageInfo: PackageInfo?,
+        val label: String,
+        val icon: Drawable?,
+        val size: Long,
+        val networkBytes: Long,
+        val lastModified: Long
+    ) {
+        val packageName: String
+            get() = applicationInfo.packageName
+    }
+
+    class Snapshot(
+        private val context: Context,
+        val apps: List<AppMetrics>,
+        val createdAt: Long = System.currentTimeMillis()
+    ) {
+        private val appsByPackage = apps.associateBy { it.packageName }
+        private val usageByDays = ConcurrentHashMap<Int, Map<String, Long>>()
+
+        fun find(packageName: String): AppMetrics? {
+            return appsByPackage[packageName]
+        }
+
+        /**
+         * Foreground time of packages used in last [days], keyed by package name.
+         * Usage stats are queried once per window for the lifetime of snapshot.
+         */
+        @RequiresApi(Build.VERSION_CODES.LOLLIPOP_MR1)
+        fun getUsage(days: Int): Map<String, Long> {
+            return usageByDays.getOrPut(days) {
+                val freqMap = linkedMapOf<String, Long>()
+                Utils.getAppsUsageStats(context, days).filter {
+                    it.lastTimeUsed != 0L
+                }.forEach {
+                    val timeForeground = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+                        it.totalTimeVisible else it.totalTimeInForeground
+                    freqMap[it.packageName] = (freqMap[it.packageName] ?: 0L) + timeForeground
+                }
+                freqMap
+            }
+        }
+
+        fun isExpired(): Boolean {
+            return System.currentTimeMillis() - createdAt > SNAPSHOT_TTL_MILLIS
+        }
+    }
+
+    private val mutex = Mutex()
+    private val generation = AtomicInteger()
+
+    @Volatile
+    private var snapshot: Snapshot? = null
+
+    /**
+     * Cached snapshot, or metrics collected for [apps] if there's none or it's expired.
+     * Concurrent callers wait on the same collection instead of starting their own.
+     */
+    suspend fun getSnapshot(
+        context: Context,
+        apps: List<Pair<ApplicationInfo, PackageInfo?>>
+    ): Snapshot {
+        val appContext = context.applicationContext
+        InstalledAppsRepository.registerPackageChangeReceiver(appContext)
+        return mutex.withLock {
+            snapshot?.takeIf { !it.isExpired() } ?: run {
+                val collectGeneration = generation.get()
+                val collected = Snapshot(appContext, collect(appContext, apps))
+                // don't cache metrics if a package changed while collecting
+                if (generation.get() == collectGeneration) {
+                    snapshot = collected
+                }
+                collected
+            }
+        }
+    }
+
+    fun invalidate() {
+        generation.incrementAndGet()
+        snapshot = null
+    }
+
+    private suspend fun collect(
+        context: Context,
+        apps: List<Pair<ApplicationInfo, PackageInfo?>>
+    ): List<AppMetrics> {
+        if (apps.isEmpty()) {
+            return emptyList()
+        }
+        val networkBytesByUid = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            try {
+                NetworkUsageAggregator.getNetworkBytesByUid(context)
+            } catch (e: Exception) {
+                log.warn("failed to aggregate network usage", e)
+                null
+            }
+        } else {
+            null
+        }
+        val batchSize = (apps.size + COLLECT_PARALLELISM - 1) / COLLECT_PARALLELISM
+        return coroutineScope {
+            apps.chunked(batchSize).map {
+                batch ->
+                async(Dispatchers.IO) {
+                    batch.mapNotNull {
+                        collectMetrics(context, it.first, it.second, networkBytesByUid)
+                    }
+                }
+            }.awaitAll().flatten()
+        }
+    }
+
+    private fun collectMetrics(
+        context: Context,
+        applicationInfo: ApplicationInfo,
+        packageInfo: PackageInfo?,
+        networkBytesByUid: SparseLongArray?
+    ): AppMetrics? {
+        if (applicationInfo.sourceDir == null) {
+            return null
+        }
+        return try {
+            val packageManager = context.packageManager
+            AppMetrics(
+                applicationInfo,
+                packageInfo,
+                applicationInfo.loadLabel(packageManager).toString(),
+                packageManager.getApplicationIcon(applicationInfo.packageName),
+                Utils.findApplicationInfoSize(context, applicationInfo),
+                networkBytesByUid?.get(applicationInfo.uid, 0L)
+                    ?: Utils.getApplicationNetworkBytes(context, applicationInfo),
+                File(applicationInfo.sourceDir).lastModified()
+            )
+        } catch (e: Exception) {
+            log.warn("failed to collect metrics for {}", applicationInfo.packageName, e)
+            null
+        }
+    }
+}
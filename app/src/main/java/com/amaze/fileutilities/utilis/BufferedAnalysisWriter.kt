@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import com.amaze.fileutilities.home_page.database.AppDatabase
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * Buffers analysis results and writes them to database in batches, using [writeBatch] which is
+ * expected to insert the whole list in a single transaction (eg. a list @Insert in a dao).
+ * A batch is written on the thread calling [write] as soon as [batchSize] results are buffered,
+ * or once [maxDelayMillis] have passed since the first result was buffered, whichever comes
+ * first, so [write] must not be called on main thread.
+ * Call [flush] once analysis is complete, or cancelled, to write any leftover results.
+ */
+class BufferedAnalysisWriter<T>(
+    private val batchSize: Int = AppDatabase.BATCH_SIZE,
+    private val maxDelayMillis: Long = DEFAULT_MAX_DELAY_MILLIS,
+    private val writeBatch: (List<T>) -> Unit
+) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(BufferedAnalysisWriter::class.java)
+
+        const val DEFAULT_MAX_DELAY_MILLIS = 5000L
+    }
+
+    private val buffer = ArrayList<T>()
+    private var firstBufferedTime = 0L
+
+    fun write(result: T) {
+        val isDue = synchronized(buffer) {
+            if (buffer.isEmpty()) {
+                firstBufferedTime = System.currentTimeMillis()
+            }
+            buffer.add(result)
+            buffer.size >= batchSize ||
+                System.currentTimeMillis() - firstBufferedTime >= maxDelayMillis
+        }
+        if (isDue) {
+            flush()
+        }
+    }
+
+    /**
+     * Writes all buffered results on the calling thread
+     */
+    fun flush() {
+        val batch = synchronized(buffer) {
+            val batch = ArrayList(buffer)
+            buffer.clear()
+            batch
+        }
+        if (batch.isEmpty()) {
+            return
+        }
+        try {
+            writeBatch.invoke(batch)
+        } catch (e: Exception) {
+            log.warn("failed to write batch of {} analysis results", batch.size, e)
+        }
+    }
+}
@@ -70,12 +70,11 @@ class CursorUtils {
                 MediaStore.Images.Media.DATA, MediaStore.Images.ImageColumns.WIDTH,
                 MediaStore.Images.ImageColumns.HEIGHT
             )
-            return listMediaCommon(
+            return listMediaIndexed(
                 context,
                 MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                projection,
-                null, null, BASE_SELECTION_IMAGES, null,
-                MediaFileInfo.MEDIA_TYPE_IMAGE, null
+                projection, BASE_SELECTION_IMAGES, null,
+                MediaFileInfo.MEDIA_TYPE_IMAGE
             )
         }
 
@@ -92,12 +91,11 @@ class CursorUtils {
                 MediaStore.Video.VideoColumns.WIDTH,
                 MediaStore.Video.VideoColumns.HEIGHT
             )
-            return listMediaCommon(
+            return listMediaIndexed(
                 context,
                 MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                projection, null, null, BASE_SELECTION_VIDEOS,
-                null,
-                MediaFileInfo.MEDIA_TYPE_VIDEO, null
+                projection, BASE_SELECTION_VIDEOS, null,
+                MediaFileInfo.MEDIA_TYPE_VIDEO
             )
         }
 
@@ -115,44 +113,11 @@ class CursorUtils {
                 MediaStore.Audio.AudioColumns.ALBUM, MediaStore.Audio.AudioColumns.ARTIST,
                 MediaStore.Audio.AudioColumns.ALBUM_ID
             )
-            return listMediaCommon(
+            return listMediaIndexed(
                 context,
                 MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                projection,
-                null,
-                null, BASE_SELECTION_AUDIO, blacklistPaths,
-                MediaFileInfo.MEDIA_TYPE_AUDIO, null
-            )
-        }
-
-        fun listPlaylists(
-            context: Context,
-            playlistId: Long,
-            blacklistPaths: List<String>
-        ):
-            Pair<FilesViewModel.StorageSummary,
-                ArrayList<MediaFileInfo>> {
-            val projection = arrayOf(
-                MediaStore.Audio.Playlists.Members.AUDIO_ID,
-                MediaStore.MediaColumns.TITLE,
-                MediaStore.MediaColumns.DISPLAY_NAME,
-                MediaStore.MediaColumns.DATE_MODIFIED,
-                MediaStore.MediaColumns.SIZE,
-                MediaStore.Audio.Media.DATA,
-                MediaStore.Audio.AudioColumns.DURATION,
-                MediaStore.Audio.AudioColumns.ALBUM,
-                MediaStore.Audio.AudioColumns.ARTIST,
-                MediaStore.Audio.AudioColumns.ALBUM_ID,
-//                MediaStore.Audio.Playlists.Members._ID,
-            )
-            return listMediaCommon(
-                context,
-                MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId),
-                projection,
-                null,
-                null, BASE_SELECTION_AUDIO, blacklistPaths,
-                MediaFileInfo.MEDIA_TYPE_AUDIO,
-                MediaStore.Audio.Playlists.Members.DEFAULT_SORT_ORDER
+                projection, BASE_SELECTION_AUDIO, blacklistPaths,
+                MediaFileInfo.MEDIA_TYPE_AUDIO
             )
         }
 
@@ -181,7 +146,15 @@ class CursorUtils {
         }*/
 
         fun listAll(context: Context): ArrayList<MediaFileInfo> {
-            return listFilesWithExtension(context)
+            return ArrayList(
+                MediaStoreIndex.sync(
+                    context, MediaFileInfo.MEDIA_TYPE_UNKNOWN,
+                    MediaStore.Files.getContentUri("external"), null
+                ) {
+                    selection, selectionValues ->
+                    listFilesWithExtension(context, selection, selectionValues)
+                }
+            )
         }
 
         fun listRecentFiles(context: Context): ArrayList<MediaFileInfo> {
@@ -281,6 +254,8 @@ class CursorUtils {
 
         private fun listFilesWithExtension(
             context: Context,
+            selection: String?,
+            selectionValues: Array<String?>?,
             mediaType: Int = MediaFileInfo.MEDIA_TYPE_UNKNOWN
         ):
             ArrayList<MediaFileInfo> {
@@ -298,7 +273,7 @@ class CursorUtils {
                 .contentResolver
                 .query(
                     MediaStore.Files.getContentUri("external"),
-                    projection, null, null, null
+                    projection, selection, selectionValues, null
                 )
             var longSize = 0L
             if (cursor == null) {
@@ -341,6 +316,39 @@ class CursorUtils {
             return docs
         }
 
+        /**
+         * Lists media of [contentUri] through [MediaStoreIndex], so only rows changed since
+         * last listing are queried from media store
+         */
+        private fun listMediaIndexed(
+            context: Context,
+            contentUri: Uri,
+            projection: Array<String>,
+            baseSelection: String,
+            blacklistPaths: List<String>?,
+            mediaType: Int
+        ): Pair<FilesViewModel.StorageSummary, ArrayList<MediaFileInfo>> {
+            val mediaFileInfoList = MediaStoreIndex.sync(
+                context, mediaType, contentUri, baseSelection
+            ) {
+                selection, selectionValues ->
+                listMediaCommon(
+                    context, contentUri, projection, selection, selectionValues,
+                    baseSelection, null, mediaType, null
+                ).second
+            }.filter {
+                mediaFileInfo ->
+                blacklistPaths?.none { mediaFileInfo.path.startsWith(it) } ?: true
+            }
+            return Pair(
+                FilesViewModel.StorageSummary(
+                    mediaFileInfoList.size, 0,
+                    mediaFileInfoList.sumOf { it.longSize }
+                ),
+                ArrayList(mediaFileInfoList)
+            )
+        }
+
         private fun listMediaCommon(
             context: Context,
             contentUri: Uri,
@@ -614,7 +622,7 @@ class CursorUtils {
                         audioMetaData = MediaFileInfo
                             .AudioMetaData(
                                 audioAlbum, audioArtist, audioDuration, albumId,
-                                null, idInPlaylist, null
+                                idInPlaylist, null
                             )
                     }
                     MediaFileInfo.MEDIA_TYPE_VIDEO -> {
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.graphics.Typeface
+import android.text.SpannableStringBuilder
+import android.text.Spanned
+import android.text.style.StyleSpan
+import com.amaze.fileutilities.home_page.database.DocumentContentDao
+import com.amaze.fileutilities.home_page.database.DocumentContentMatch
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Full text search over documents indexed by [DocumentContentWorker]
+ */
+object DocumentContentSearch {
+
+    private const val SNIPPET_START = "\u0002"
+    private const val SNIPPET_END = "\u0003"
+    private const val SNIPPET_TOKENS = 16
+    const val MAX_RESULTS = 200
+
+    data class Result(val filePath: String, val snippet: CharSequence, val rank: Double)
+
+    /**
+     * Documents containing all words of [query] (words are matched by prefix),
+     * best ranked first, with a snippet of matching text with matches in bold
+     */
+    fun search(documentContentDao: DocumentContentDao, query: String): List<Result> {
+        val matchQuery = toMatchQuery(query) ?: return emptyList()
+        return documentContentDao.search(matchQuery, SNIPPET_START, SNIPPET_END, SNIPPET_TOKENS)
+            .map {
+                Result(it.filePath, highlightSnippet(it.snippet), rank(it))
+            }.sortedByDescending { it.rank }.take(MAX_RESULTS)
+    }
+
+    /**
+     * Quotes each word as a prefix query, so that user input isn't parsed as fts query syntax
+     */
+    private fun toMatchQuery(query: String): String? {
+        val words = query.split(Regex("\\s+")).map { it.replace("\"", "") }
+            .filter { it.isNotBlank() }
+        if (words.isEmpty()) {
+            return null
+        }
+        // prefix star has to be inside the quotes, fts discards one following a phrase
+        return words.joinToString(" ") { "\"$it*\"" }
+    }
+
+    /**
+     * Sum of each phrase's hits in document relative to it's hits in all documents,
+     * from matchinfo 'pcx' (phrases, columns, then hits in row, hits in all rows and
+     * rows with hits for each phrase and column)
+     */
+    private fun rank(match: DocumentContentMatch): Double {
+        val matchInfo = ByteBuffer.wrap(match.matchInfo).order(ByteOrder.nativeOrder())
+            .asIntBuffer()
+        val phrases = matchInfo.get(0)
+        val columns = matchInfo.get(1)
+        var rank = 0.0
+        for (phrase in 0 until phrases) {
+            for (column in 0 until columns) {
+                val index = 2 + (phrase * columns + column) * 3
+                val hitsInRow = matchInfo.get(index)
+                val hitsInAllRows = matchInfo.get(index + 1)
+                if (hitsInRow > 0) {
+                    rank += hitsInRow.toDouble() / hitsInAllRows
+                }
+            }
+        }
+        return rank
+    }
+
+    private fun highlightSnippet(matchedSnippet: String): CharSequence {
+        // extracted text keeps document's line breaks, show snippet in a single line
+        val snippet = matchedSnippet.replace(Regex("\\s+"), " ")
+        val builder = SpannableStringBuilder()
+        var index = 0
+        while (index < snippet.length) {
+            val start = snippet.indexOf(SNIPPET_START, index)
+            if (start == -1) {
+                builder.append(snippet, index, snippet.length)
+                break
+            }
+            val end = snippet.indexOf(SNIPPET_END, start).let {
+                if (it == -1) snippet.length else it
+            }
+            builder.append(snippet, index, start)
+            val spanStart = builder.length
+            builder.append(snippet, start + SNIPPET_START.length, end)
+            builder.setSpan(
+                StyleSpan(Typeface.BOLD), spanStart, builder.length,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
+            )
+            index = end + SNIPPET_END.length
+        }
+        return builder
+    }
+}
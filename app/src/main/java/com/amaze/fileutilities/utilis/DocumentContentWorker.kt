@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import androidx.work.CoroutineWorker
+import androidx.work.WorkerParameters
+import com.amaze.fileutilities.home_page.database.AppDatabase
+import com.amaze.fileutilities.home_page.database.DocumentContent
+import com.amaze.fileutilities.home_page.database.PathPreferences
+import com.artifex.mupdf.fitz.Document
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.zwobble.mammoth.DocumentConverter
+import java.io.File
+
+/**
+ * A [CoroutineWorker] extracting text of documents into [DocumentContent] for full text search.
+ * Only documents added or modified since they were last extracted are read, newest first, and
+ * each document is written as soon as it's extracted, so that a stopped run (eg. constraints no
+ * longer met) resumes with documents not yet extracted.
+ * Documents under paths excluded for [PathPreferences.FEATURE_DOCUMENT_CONTENT], or no longer
+ * in media store, are removed from index.
+ */
+class DocumentContentWorker(
+    context: Context,
+    workerParameters: WorkerParameters
+) : CoroutineWorker(context, workerParameters) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(DocumentContentWorker::class.java)
+
+        const val NAME: String = "document_content_worker"
+        private const val EXTENSION_PDF = ".pdf"
+        private const val EXTENSION_DOCX = ".docx"
+        private const val EXTENSION_TXT = ".txt"
+        private val EXTENSIONS = listOf(EXTENSION_PDF, EXTENSION_DOCX, EXTENSION_TXT)
+
+        // text beyond this length isn't indexed, so that huge documents don't exhaust memory
+        private const val MAX_CONTENT_LENGTH = 1_000_000
+    }
+
+    override suspend fun doWork(): Result {
+        val prefs = applicationContext.getAppCommonSharedPreferences()
+        if (!PathPreferences.isEnabled(prefs, PathPreferences.FEATURE_DOCUMENT_CONTENT)) {
+            return Result.success()
+        }
+        val appDatabase = AppDatabase.getInstance(applicationContext)
+        val documentContentDao = appDatabase.documentContentDao()
+        val exclusions = appDatabase.pathPreferencesDao()
+            .findByFeature(PathPreferences.FEATURE_DOCUMENT_CONTENT)
+        val documents = CursorUtils.listAll(applicationContext).filter {
+            mediaFileInfo ->
+            EXTENSIONS.any { mediaFileInfo.path.endsWith(it, true) } &&
+                Utils.containsInPreferences(mediaFileInfo.path, exclusions, false)
+        }.sortedByDescending { it.date }
+
+        val documentPaths = documents.map { it.path }.toHashSet()
+        val extractedStates = documentContentDao.findAllStates()
+        extractedStates.filter { !documentPaths.contains(it.filePath) }
+            .chunked(AppDatabase.BATCH_SIZE).forEach {
+                documentContentDao.delete(it)
+            }
+        val lastModifiedMap = extractedStates.associate { it.filePath to it.lastModified }
+
+        for (document in documents) {
+            if (isStopped) {
+                return Result.retry()
+            }
+            val file = File(document.path)
+            val lastModified = file.lastModified()
+            if (lastModifiedMap[document.path] == lastModified || !file.canRead()) {
+                continue
+            }
+            val content = extractText(file) ?: ""
+            if (isStopped) {
+                // extraction may have been cut short, don't save partial content
+                return Result.retry()
+            }
+            documentContentDao.replace(DocumentContent(document.path, lastModified, content))
+        }
+        return Result.success()
+    }
+
+    private fun extractText(file: File): String? {
+        return try {
+            when {
+                file.path.endsWith(EXTENSION_PDF, true) -> extractPdfText(file)
+                file.path.endsWith(EXTENSION_DOCX, true) ->
+                    DocumentConverter().extractRawText(file).value.take(MAX_CONTENT_LENGTH)
+                else -> extractPlainText(file)
+            }
+        } catch (e: Exception) {
+            log.warn("failed to extract text from {}", file.path, e)
+            null
+        }
+    }
+
+    private fun extractPlainText(file: File): String {
+        val buffer = CharArray(MAX_CONTENT_LENGTH)
+        var length = 0
+        file.bufferedReader().use {
+            reader ->
+            while (length < buffer.size) {
+                val read = reader.read(buffer, length, buffer.size - length)
+                if (read == -1) {
+                    break
+                }
+                length += read
+            }
+        }
+        return String(buffer, 0, length)
+    }
+
+    /**
+     * Text of pdf's structured text, empty for scanned documents (no text layer)
+     * and null for password protected ones
+     */
+    private fun extractPdfText(file: File): String? {
+        val document = Document.openDocument(file.path)
+        try {
+            if (document.needsPassword()) {
+                return null
+            }
+            val text = StringBuilder()
+            for (pageIndex in 0 until document.countPages()) {
+                if (isStopped || text.length >= MAX_CONTENT_LENGTH) {
+                    break
+                }
+                val page = document.loadPage(pageIndex)
+                val structuredText = page.toStructuredText()
+                structuredText.blocks.forEach {
+                    block ->
+                    block.lines?.forEach {
+                        line ->
+                        line.chars?.forEach {
+                            textChar ->
+                            text.appendCodePoint(textChar.c)
+                        }
+                        text.append('\n')
+                    }
+                }
+                structuredText.destroy()
+                page.destroy()
+            }
+            return text.take(MAX_CONTENT_LENGTH).toString()
+        } finally {
+            document.destroy()
+        }
+    }
+}
@@ -50,16 +50,16 @@ import com.amaze.fileutilities.home_page.database.BlurAnalysis
 import com.amaze.fileutilities.home_page.database.BlurAnalysisDao
 import com.amaze.fileutilities.home_page.database.ImageAnalysis
 import com.amaze.fileutilities.home_page.database.ImageAnalysisDao
-import com.amaze.fileutilities.home_page.database.InternalStorageAnalysis
 import com.amaze.fileutilities.home_page.database.InternalStorageAnalysisDao
+import com.amaze.fileutilities.home_page.database.InternalStorageAnalysisWithFiles
 import com.amaze.fileutilities.home_page.database.LowLightAnalysis
 import com.amaze.fileutilities.home_page.database.LowLightAnalysisDao
 import com.amaze.fileutilities.home_page.database.MemeAnalysis
 import com.amaze.fileutilities.home_page.database.MemeAnalysisDao
-import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysis
 import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisDao
 import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisMetadata
 import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisMetadataDao
+import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisWithFiles
 import com.amaze.fileutilities.utilis.dialog_picker.FileFilter
 import com.amaze.fileutilities.utilis.dialog_picker.fileChooser
 import com.amaze.fileutilities.utilis.dialog_picker.folderChooser
@@ -535,8 +535,8 @@ fun SimilarImagesAnalysisMetadata.invalidate(dao: SimilarImagesAnalysisMetadataD
     }
 }
 
-fun SimilarImagesAnalysis.invalidate(dao: SimilarImagesAnalysisDao): Boolean {
-    val validFiles = mutableSetOf<String>()
+fun SimilarImagesAnalysisWithFiles.invalidate(dao: SimilarImagesAnalysisDao): Boolean {
+    val validFiles = mutableListOf<String>()
     for (imageFilePath in files) {
         val imageFile = File(imageFilePath)
         if (imageFile.exists()) {
@@ -544,16 +544,16 @@ fun SimilarImagesAnalysis.invalidate(dao: SimilarImagesAnalysisDao): Boolean {
         }
     }
     if (validFiles.size <= 1) {
-        dao.delete(this)
+        dao.delete(analysis)
         return false
     } else if (validFiles.size != files.size) {
+        dao.deleteFiles(analysis.uid, files - validFiles.toSet())
         this.files = validFiles
-        dao.insert(this)
     }
     return true
 }
 
-fun InternalStorageAnalysis.invalidate(dao: InternalStorageAnalysisDao): Boolean {
+fun InternalStorageAnalysisWithFiles.invalidate(dao: InternalStorageAnalysisDao): Boolean {
     val validFiles = mutableListOf<String>()
     for (imageFilePath in files) {
         val imageFile = File(imageFilePath)
@@ -562,11 +562,11 @@ fun InternalStorageAnalysis.invalidate(dao: InternalStorageAnalysisDao): Boolean
         }
     }
     if (validFiles.size <= 1) {
-        dao.delete(this)
+        dao.delete(analysis)
         return false
     } else if (validFiles.size != files.size) {
+        dao.deleteFiles(analysis.uid, files - validFiles.toSet())
         this.files = validFiles
-        dao.insert(this)
     }
     return true
 }
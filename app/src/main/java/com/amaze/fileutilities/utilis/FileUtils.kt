@@ -35,12 +35,16 @@ import android.text.format.Formatter
 import androidx.annotation.DrawableRes
 import androidx.core.content.FileProvider
 import com.amaze.fileutilities.R
+import com.amaze.fileutilities.home_page.database.AppDatabase
+import com.amaze.fileutilities.home_page.database.FileChecksum
+import com.amaze.fileutilities.home_page.database.FileChecksumDao
 import com.amaze.fileutilities.home_page.database.PathPreferences
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.io.File
 import java.io.IOException
 import java.io.InputStream
+import java.io.RandomAccessFile
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
 import java.util.Collections
@@ -53,6 +57,8 @@ class FileUtils {
 
         private const val INTERNAL_SHARED_STORAGE = "Internal shared storage"
         const val DEFAULT_BUFFER_SIZE = 8192
+        const val SAMPLED_CHECKSUM_CHUNK_SIZE = 4096
+        const val SAMPLED_CHECKSUM_FULL_READ_THRESHOLD = SAMPLED_CHECKSUM_CHUNK_SIZE * 3L
 
         private const val DEFAULT_FALLBACK_STORAGE_PATH = "/storage/sdcard0"
         private const val WHATSAPP_BASE_ANDROID = "Android/media/com.whatsapp"
@@ -327,16 +333,120 @@ class FileUtils {
                 while (inputStream.read(input).also { length = it } != -1) {
                     if (length > 0) messageDigest.update(input, 0, length)
                 }
-                val hash = messageDigest.digest()
-                val hexString = StringBuilder()
-                for (aHash in hash) {
-                    // convert hash to base 16
-                    val hex = Integer.toHexString(0xff and aHash.toInt())
-                    if (hex.length == 1) hexString.append('0')
-                    hexString.append(hex)
+                return toHexString(messageDigest.digest())
+            }
+        }
+
+        /**
+         * Cheap pre-filter checksum for duplicate detection, hashes only the head, middle and tail
+         * [SAMPLED_CHECKSUM_CHUNK_SIZE] bytes of the file along with it's length.
+         * Files not larger than [SAMPLED_CHECKSUM_FULL_READ_THRESHOLD] are hashed completely,
+         * so for those the result is same as [getSHA256Checksum].
+         * Two files having same sampled checksum are only probable duplicates.
+         */
+        @Throws(NoSuchAlgorithmException::class, IOException::class)
+        fun getSampledChecksum(file: File): String {
+            val fileLength = file.length()
+            if (fileLength <= SAMPLED_CHECKSUM_FULL_READ_THRESHOLD) {
+                return getSHA256Checksum(file.inputStream())
+            }
+            val messageDigest = MessageDigest.getInstance("SHA-256")
+            val input = ByteArray(SAMPLED_CHECKSUM_CHUNK_SIZE)
+            RandomAccessFile(file, "r").use {
+                randomAccessFile ->
+                for (
+                    offset in longArrayOf(
+                        0,
+                        (fileLength - SAMPLED_CHECKSUM_CHUNK_SIZE) / 2,
+                        fileLength - SAMPLED_CHECKSUM_CHUNK_SIZE
+                    )
+                ) {
+                    randomAccessFile.seek(offset)
+                    randomAccessFile.readFully(input)
+                    messageDigest.update(input)
                 }
-                return hexString.toString()
             }
+            messageDigest.update(fileLength.toString().toByteArray())
+            return toHexString(messageDigest.digest())
+        }
+
+        /**
+         * Returns SHA-256 checksum for [file] from [dao] if the file hasn't changed since it was
+         * last hashed, otherwise computes it and saves it in [dao]
+         */
+        @Throws(NoSuchAlgorithmException::class, IOException::class)
+        fun getSHA256Checksum(dao: FileChecksumDao, file: File): String {
+            val fileLength = file.length()
+            val lastModified = file.lastModified()
+            val fileChecksum = dao.findByPathAndFingerprint(file.path, fileLength, lastModified)
+            fileChecksum?.sha256Checksum?.let {
+                return it
+            }
+            val checksum = getSHA256Checksum(file.inputStream())
+            dao.insert(
+                FileChecksum(
+                    file.path, fileLength, lastModified,
+                    fileChecksum?.sampledChecksum, checksum
+                )
+            )
+            return checksum
+        }
+
+        /**
+         * Returns sampled checksum for [file] from [dao] if the file hasn't changed since it was
+         * last hashed, otherwise computes it and saves it in [dao]
+         * @see getSampledChecksum
+         */
+        @Throws(NoSuchAlgorithmException::class, IOException::class)
+        fun getSampledChecksum(dao: FileChecksumDao, file: File): String {
+            val fileLength = file.length()
+            val lastModified = file.lastModified()
+            val fileChecksum = dao.findByPathAndFingerprint(file.path, fileLength, lastModified)
+            fileChecksum?.sampledChecksum?.let {
+                return it
+            }
+            val checksum = getSampledChecksum(file)
+            dao.insert(
+                FileChecksum(
+                    file.path, fileLength, lastModified, checksum,
+                    if (fileLength <= SAMPLED_CHECKSUM_FULL_READ_THRESHOLD) checksum
+                    else fileChecksum?.sha256Checksum
+                )
+            )
+            return checksum
+        }
+
+        /**
+         * Deletes cached checksums of files which were deleted or changed since they were hashed,
+         * as those would never be looked up again
+         */
+        fun pruneFileChecksums(dao: FileChecksumDao) {
+            val batchSize = AppDatabase.BATCH_SIZE
+            var afterUid = 0
+            do {
+                val fileChecksums = dao.findAfter(afterUid, batchSize)
+                val staleUids = fileChecksums.filter {
+                    val file = File(it.filePath)
+                    file.length() != it.fileLength || file.lastModified() != it.lastModified
+                }.map { it.uid }
+                if (staleUids.isNotEmpty()) {
+                    dao.deleteByUids(staleUids)
+                }
+                fileChecksums.lastOrNull()?.let {
+                    afterUid = it.uid
+                }
+            } while (fileChecksums.size == batchSize)
+        }
+
+        private fun toHexString(hash: ByteArray): String {
+            val hexString = StringBuilder()
+            for (aHash in hash) {
+                // convert hash to base 16
+                val hex = Integer.toHexString(0xff and aHash.toInt())
+                if (hex.length == 1) hexString.append('0')
+                hexString.append(hex)
+            }
+            return hexString.toString()
         }
 
         /**
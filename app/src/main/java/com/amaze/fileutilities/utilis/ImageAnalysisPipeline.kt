@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import org.opencv.core.Mat
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * Runs all requested analysis of an image on a single decode of it.
+ * Image is read once at the generic analysis size (see [ImgUtils.readImageForAnalysis]) and
+ * the same matrix, and bitmap for ml kit analysis, is handed to every analysis instead of
+ * each of them reading the full resolution image from disk.
+ */
+object ImageAnalysisPipeline {
+
+    private var log: Logger = LoggerFactory.getLogger(ImageAnalysisPipeline::class.java)
+
+    enum class Analysis {
+        FEATURES, MEME, BLUR, LOW_LIGHT, HISTOGRAM
+    }
+
+    /**
+     * Results of analysis done on an image, null for analysis not requested or failed.
+     */
+    data class Result(
+        val features: ImgUtils.ImageFeatures? = null,
+        val isMeme: Boolean? = null,
+        val isBlur: Boolean? = null,
+        val isLowLight: Boolean? = null,
+        val histogramPeaks: List<List<Pair<Int, Int>>>? = null,
+        val perceptualHash: Long? = null
+    )
+
+    /**
+     * Blocks until all [analysis] are done on image at [path], must not be called
+     * from main thread as ml kit analysis are awaited.
+     */
+    fun analyse(path: String, analysis: Set<Analysis>): Result {
+        var matrix: Mat? = null
+        return try {
+            matrix = ImgUtils.readImageForAnalysis(path)
+            if (matrix == null) {
+                log.warn("failed to read image for analysis at path {}", path)
+                // mark unreadable images as analysed so that they aren't read again
+                return Result(
+                    isMeme = if (analysis.contains(Analysis.MEME)) false else null,
+                    isBlur = if (analysis.contains(Analysis.BLUR)) false else null,
+                    isLowLight = if (analysis.contains(Analysis.LOW_LIGHT)) false else null
+                )
+            }
+            val bitmap = if (analysis.contains(Analysis.FEATURES) ||
+                analysis.contains(Analysis.MEME)
+            ) {
+                ImgUtils.convertMatToBitmap(matrix)
+            } else {
+                null
+            }
+            Result(
+                features = if (analysis.contains(Analysis.FEATURES) && bitmap != null) {
+                    MLUtils.getImageFeatures(bitmap)
+                } else null,
+                isMeme = if (analysis.contains(Analysis.MEME) && bitmap != null) {
+                    MLUtils.isImageMeme(bitmap)
+                } else null,
+                isBlur = if (analysis.contains(Analysis.BLUR)) {
+                    ImgUtils.isImageBlur(matrix)
+                } else null,
+                isLowLight = if (analysis.contains(Analysis.LOW_LIGHT)) {
+                    ImgUtils.isImageLowLight(matrix)
+                } else null,
+                histogramPeaks = if (analysis.contains(Analysis.HISTOGRAM)) {
+                    ImgUtils.getHistogramChannelsWithPeaks(matrix)
+                } else null,
+                perceptualHash = if (analysis.contains(Analysis.HISTOGRAM)) {
+                    ImgUtils.getPerceptualHash(matrix)
+                } else null
+            ).also {
+                bitmap?.recycle()
+            }
+        } catch (e: Exception) {
+            log.warn("failed to analyse image at path {}", path, e)
+            Result()
+        } catch (oom: OutOfMemoryError) {
+            log.warn("failed to analyse image at path {} due to oom", path, oom)
+            Result()
+        } finally {
+            matrix?.release()
+        }
+    }
+}
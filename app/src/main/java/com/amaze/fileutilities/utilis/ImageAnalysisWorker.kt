@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.work.CoroutineWorker
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import com.amaze.fileutilities.BuildConfig
+import com.amaze.fileutilities.home_page.database.AppDatabase
+import com.amaze.fileutilities.home_page.database.BlurAnalysis
+import com.amaze.fileutilities.home_page.database.ImageAnalysis
+import com.amaze.fileutilities.home_page.database.LowLightAnalysis
+import com.amaze.fileutilities.home_page.database.MemeAnalysis
+import com.amaze.fileutilities.home_page.database.PathPreferences
+import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysis
+import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisDao
+import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisMetadata
+import com.amaze.fileutilities.home_page.database.SimilarImagesAnalysisMetadataDao
+import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * A [CoroutineWorker] running all enabled image analysis in a single pass over images of
+ * media store, so that each image is read from disk only once, see [ImageAnalysisPipeline].
+ * Images are analysed newest first, in chunks bounded by [CHUNK_SIZE] images and
+ * [CHUNK_TIME_BUDGET_MILLIS], results of each chunk are written in a single transaction and
+ * position of last analysed image is checkpointed in preferences, so that a stopped run
+ * (eg. constraints no longer met) resumes where it left off.
+ * Progress is published as [androidx.work.WorkInfo] progress, see [KEY_PROGRESS_ANALYSED].
+ */
+class ImageAnalysisWorker(
+    context: Context,
+    workerParameters: WorkerParameters
+) : CoroutineWorker(context, workerParameters) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(ImageAnalysisWorker::class.java)
+
+        const val NAME: String = "image_analysis_worker"
+        const val KEY_PROGRESS_ANALYSED = "progress_analysed"
+        const val KEY_PROGRESS_TOTAL = "progress_total"
+
+        // names of ImageAnalysisPipeline.Analysis still running
+        const val KEY_PROGRESS_ANALYSIS = "progress_analysis"
+
+        private const val CHUNK_SIZE = 50
+        private const val CHUNK_TIME_BUDGET_MILLIS = 20_000L
+
+        // analysis stopped by user, skipped by runs till next app start
+        private val stoppedAnalysis = mutableSetOf<ImageAnalysisPipeline.Analysis>()
+
+        /**
+         * Stops [analysis] in running and upcoming runs till next app start,
+         * other enabled analysis keep running
+         */
+        fun stopAnalysis(analysis: ImageAnalysisPipeline.Analysis) {
+            synchronized(stoppedAnalysis) {
+                stoppedAnalysis.add(analysis)
+            }
+        }
+
+        private fun isAnalysisStopped(analysis: ImageAnalysisPipeline.Analysis): Boolean {
+            synchronized(stoppedAnalysis) {
+                return stoppedAnalysis.contains(analysis)
+            }
+        }
+    }
+
+    override suspend fun doWork(): Result {
+        // decoding and ml kit calls block, so keep them off the default dispatcher
+        return withContext(Dispatchers.IO) {
+            analyseImages()
+        }
+    }
+
+    private suspend fun analyseImages(): Result {
+        val prefs = applicationContext.getAppCommonSharedPreferences()
+        val appDatabase = AppDatabase.getInstance(applicationContext)
+        val tasks = getEnabledTasks(prefs, appDatabase)
+        if (tasks.isEmpty()) {
+            return Result.success()
+        }
+        val pathPreferencesList = appDatabase.pathPreferencesDao().getAll()
+        val mediaFileInfoList = CursorUtils.listImages(applicationContext).second
+            .sortedWith(compareByDescending<MediaFileInfo> { it.date }.thenBy { it.path })
+        tasks.forEach {
+            task ->
+            val pathPrefsList = pathPreferencesList.filter { pref ->
+                pref.feature == task.feature
+            }
+            task.paths = mediaFileInfoList.map { it.path }.filter {
+                Utils.containsInPreferences(it, pathPrefsList, true)
+            }.toSet()
+        }
+
+        // similar images are matched once histograms of all images are saved
+        val similarImagesMetadataDao = appDatabase.similarImagesAnalysisMetadataDao()
+        val histogramTask = tasks.find {
+            it.analysis == ImageAnalysisPipeline.Analysis.HISTOGRAM
+        }
+        val shouldMatchSimilarImages = histogramTask != null &&
+            histogramTask.paths.size == similarImagesMetadataDao.getAllHashedCount()
+        var analysisTasks = if (shouldMatchSimilarImages) tasks - histogramTask!! else tasks
+
+        val pendingList = getPendingAfterCheckpoint(prefs, mediaFileInfoList)
+        val passStartDate = prefs.getLong(PreferencesConstants.KEY_IMAGE_ANALYSIS_PASS_DATE, 0)
+        val newestDate = mediaFileInfoList.firstOrNull()?.date ?: 0
+        var analysed = mediaFileInfoList.size - pendingList.size
+        publishProgress(analysed, mediaFileInfoList.size, tasks)
+        var index = 0
+        while (index < pendingList.size) {
+            if (isStopped) {
+                return Result.retry()
+            }
+            analysisTasks = analysisTasks.filter { !isAnalysisStopped(it.analysis) }
+            if (analysisTasks.isEmpty() && !shouldMatchSimilarImages) {
+                // every analysis stopped by user, pass resumes from checkpoint next time
+                return Result.success()
+            }
+            val chunk = pendingList.subList(index, minOf(index + CHUNK_SIZE, pendingList.size))
+            val chunkAnalysed = analyseChunk(appDatabase, analysisTasks, chunk)
+            index += chunkAnalysed
+            analysed += chunkAnalysed
+            saveCheckpoint(prefs, pendingList[index - 1], passStartDate, newestDate)
+            publishProgress(analysed, mediaFileInfoList.size, analysisTasks)
+        }
+        if (shouldMatchSimilarImages && !isAnalysisStopped(histogramTask!!.analysis)) {
+            publishProgress(analysed, mediaFileInfoList.size, listOf(histogramTask))
+            matchSimilarImages(appDatabase, histogramTask.paths)
+            if (isStopped) {
+                return Result.retry()
+            }
+        }
+        clearCheckpoint(prefs)
+        return Result.success()
+    }
+
+    private fun getEnabledTasks(
+        prefs: SharedPreferences,
+        appDatabase: AppDatabase
+    ): List<ImageAnalysisTask> {
+        return listOf(
+            ImageAnalysisTask(
+                ImageAnalysisPipeline.Analysis.FEATURES,
+                PathPreferences.FEATURE_ANALYSIS_IMAGE_FEATURES,
+                appDatabase.analysisDao()::findAnalysedPaths
+            ),
+            ImageAnalysisTask(
+                ImageAnalysisPipeline.Analysis.MEME,
+                PathPreferences.FEATURE_ANALYSIS_MEME,
+                appDatabase.memesAnalysisDao()::findAnalysedPaths
+            ),
+            ImageAnalysisTask(
+                ImageAnalysisPipeline.Analysis.BLUR,
+                PathPreferences.FEATURE_ANALYSIS_BLUR,
+                appDatabase.blurAnalysisDao()::findAnalysedPaths
+            ),
+            ImageAnalysisTask(
+                ImageAnalysisPipeline.Analysis.LOW_LIGHT,
+                PathPreferences.FEATURE_ANALYSIS_LOW_LIGHT,
+                appDatabase.lowLightAnalysisDao()::findAnalysedPaths
+            ),
+            ImageAnalysisTask(
+                ImageAnalysisPipeline.Analysis.HISTOGRAM,
+                PathPreferences.FEATURE_ANALYSIS_SIMILAR_IMAGES,
+                appDatabase.similarImagesAnalysisMetadataDao()::findAnalysedPaths
+            )
+        ).filter {
+            if (BuildConfig.IS_VERSION_FDROID &&
+                (
+                    it.analysis == ImageAnalysisPipeline.Analysis.FEATURES ||
+                        it.analysis == ImageAnalysisPipeline.Analysis.MEME
+                    )
+            ) {
+                false
+            } else if (!PathPreferences.isEnabled(prefs, it.feature)) {
+                log.info("analyse {} not enabled", it.analysis)
+                false
+            } else if (isAnalysisStopped(it.analysis)) {
+                log.info("analyse {} stopped by user", it.analysis)
+                false
+            } else {
+                true
+            }
+        }
+    }
+
+    /**
+     * Returns images in [mediaFileInfoList] (sorted newest first) still to be analysed in current
+     * pass: images added since the pass started, followed by images after the checkpoint.
+     * Starts a new pass if there's no checkpoint.
+     */
+    private fun getPendingAfterCheckpoint(
+        prefs: SharedPreferences,
+        mediaFileInfoList: List<MediaFileInfo>
+    ): List<MediaFileInfo> {
+        val passStartDate = prefs.getLong(PreferencesConstants.KEY_IMAGE_ANALYSIS_PASS_DATE, -1)
+        val cursorPath = prefs.getString(PreferencesConstants.KEY_IMAGE_ANALYSIS_CURSOR_PATH, null)
+        if (passStartDate == -1L || cursorPath == null) {
+            prefs.edit().putLong(
+                PreferencesConstants.KEY_IMAGE_ANALYSIS_PASS_DATE,
+                mediaFileInfoList.firstOrNull()?.date ?: 0
+            ).apply()
+            return mediaFileInfoList
+        }
+        val cursorDate = prefs.getLong(PreferencesConstants.KEY_IMAGE_ANALYSIS_CURSOR_DATE, 0)
+        log.info("resuming image analysis from {} at {}", cursorPath, cursorDate)
+        return mediaFileInfoList.filter {
+            it.date > passStartDate || it.date < cursorDate ||
+                (it.date == cursorDate && it.path > cursorPath)
+        }
+    }
+
+    /**
+     * Saves [mediaFileInfo] as last analysed image of current pass.
+     * Images added since the pass started are analysed first and aren't checkpointed, as
+     * the cursor only tracks the pass over older images. Once analysis moves past them, pass
+     * start date is moved to [newestDate] so that they aren't picked up as new again.
+     */
+    private fun saveCheckpoint(
+        prefs: SharedPreferences,
+        mediaFileInfo: MediaFileInfo,
+        passStartDate: Long,
+        newestDate: Long
+    ) {
+        if (mediaFileInfo.date > passStartDate) {
+            return
+        }
+        prefs.edit()
+            .putLong(
+                PreferencesConstants.KEY_IMAGE_ANALYSIS_PASS_DATE,
+                maxOf(passStartDate, newestDate)
+            )
+            .putLong(PreferencesConstants.KEY_IMAGE_ANALYSIS_CURSOR_DATE, mediaFileInfo.date)
+            .putString(PreferencesConstants.KEY_IMAGE_ANALYSIS_CURSOR_PATH, mediaFileInfo.path)
+            .apply()
+    }
+
+    private fun clearCheckpoint(prefs: SharedPreferences) {
+        prefs.edit()
+            .remove(PreferencesConstants.KEY_IMAGE_ANALYSIS_PASS_DATE)
+            .remove(PreferencesConstants.KEY_IMAGE_ANALYSIS_CURSOR_DATE)
+            .remove(PreferencesConstants.KEY_IMAGE_ANALYSIS_CURSOR_PATH)
+            .apply()
+    }
+
+    private suspend fun publishProgress(
+        analysed: Int,
+        total: Int,
+        tasks: List<ImageAnalysisTask>
+    ) {
+        setProgress(
+            workDataOf(
+                KEY_PROGRESS_ANALYSED to analysed,
+                KEY_PROGRESS_TOTAL to total,
+                KEY_PROGRESS_ANALYSIS to tasks.map { it.analysis.name }.toTypedArray()
+            )
+        )
+    }
+
+    /**
+     * Analyses images from start of [chunk] until [CHUNK_TIME_BUDGET_MILLIS] is spent,
+     * and writes results in a single transaction.
+     * Returns count of images from [chunk] processed, at least one.
+     */
+    private fun analyseChunk(
+        appDatabase: AppDatabase,
+        tasks: List<ImageAnalysisTask>,
+        chunk: List<MediaFileInfo>
+    ): Int {
+        val deadline = System.currentTimeMillis() + CHUNK_TIME_BUDGET_MILLIS
+        val pendingPaths = tasks.associateWith {
+            it.findPendingPaths(chunk)
+        }
+        val results = ArrayList<Pair<MediaFileInfo, ImageAnalysisPipeline.Result>>()
+        var processed = 0
+        try {
+            for (mediaFileInfo in chunk) {
+                if (processed > 0 && (isStopped || System.currentTimeMillis() > deadline)) {
+                    break
+                }
+                val analysis = pendingPaths.filter {
+                    (_, paths) ->
+                    paths.contains(mediaFileInfo.path)
+                }.keys.map { it.analysis }.toSet()
+                if (analysis.isNotEmpty()) {
+                    results.add(
+                        Pair(
+                            mediaFileInfo,
+                            ImageAnalysisPipeline.analyse(mediaFileInfo.path, analysis)
+                        )
+                    )
+                }
+                processed++
+            }
+        } finally {
+            // next chunk may run on another thread of the dispatcher
+            MatPool.releaseForCurrentThread()
+        }
+        try {
+            writeImageAnalysisResults(appDatabase, results)
+        } catch (e: Exception) {
+            log.warn("failed to write batch of {} analysis results", results.size, e)
+        }
+        return processed
+    }
+
+    private fun writeImageAnalysisResults(
+        appDatabase: AppDatabase,
+        results: List<Pair<MediaFileInfo, ImageAnalysisPipeline.Result>>
+    ) {
+        if (results.isEmpty()) {
+            return
+        }
+        appDatabase.runInTransaction {
+            appDatabase.analysisDao().insertAll(
+                results.mapNotNull {
+                    (mediaFileInfo, result) ->
+                    result.features?.let {
+                        ImageAnalysis(
+                            mediaFileInfo.path,
+                            it.isSad,
+                            it.isDistracted,
+                            it.isSleeping,
+                            it.facesCount
+                        )
+                    }
+                }
+            )
+            appDatabase.memesAnalysisDao().insertAll(
+                results.mapNotNull {
+                    (mediaFileInfo, result) ->
+                    result.isMeme?.let { MemeAnalysis(mediaFileInfo.path, it) }
+                }
+            )
+            appDatabase.blurAnalysisDao().insertAll(
+                results.mapNotNull {
+                    (mediaFileInfo, result) ->
+                    result.isBlur?.let { BlurAnalysis(mediaFileInfo.path, it) }
+                }
+            )
+            appDatabase.lowLightAnalysisDao().insertAll(
+                results.mapNotNull {
+                    (mediaFileInfo, result) ->
+                    result.isLowLight?.let { LowLightAnalysis(mediaFileInfo.path, it) }
+                }
+            )
+            appDatabase.similarImagesAnalysisMetadataDao().insertAll(
+                results.mapNotNull {
+                    (mediaFileInfo, result) ->
+                    if (result.histogramPeaks != null && result.perceptualHash != null) {
+                        SimilarImagesAnalysisMetadata(
+                            mediaFileInfo.getParentPath(),
+                            mediaFileInfo.path,
+                            result.histogramPeaks[0], result.histogramPeaks[1],
+                            result.histogramPeaks[2], ImgUtils.DATAPOINTS,
+                            ImgUtils.THRESHOLD, result.perceptualHash
+                        )
+                    } else {
+                        null
+                    }
+                }
+            )
+        }
+    }
+
+    /**
+     * We find histogram for a given image, divide it in 256/8 windows.
+     * For each window of this histogram, we find the red, green and blue channel peaks individually, along with it's position for a given window.
+     * All these data points are then saved in database table for all images.
+     * This process runs in background whenever device is idle and charging (ofcourse there are multiple optimisations done so as to not fill up RAM, for all the background running analysis in the app).
+     * Then once we have all the histograms data (all analysis resumes from last point in case user closes the app, or users take new images till the time we have processed all the images), so however multiple runs the app takes, once we have all the histogram data, it's time to figure out the similar images.
+     * To figure out the similar images, we compare the peaks of the rgb channel of each window, once we have x number of windows that matches, say 6 out of 8 windows, we can say that image may be similar (the number was decided based on multiple tests in real life).
+     * In order to make results more realistic, we also compare the position of peak along with the peak rgb channel for a given window. Ofcourse, you can't have the exact same pixel position for a peak, so a normalization was also done.
+     * Images to compare histograms with are found through a perceptual hash (see [ImgUtils.getPerceptualHash]) saved along with the histogram, only images across the whole library with a hash within [ImgUtils.PERCEPTUAL_HASH_MAX_DISTANCE] bits are compared. These are looked up by indexed hash segments, so we don't compare every pair of images and no longer need to limit matching to images in the same directory.
+     * Finally, when we have a matching image that satisfies above criteria, we take a checksum of all the rgb channel windows along with it's parent path, and then save checksum value of all the images in the table.
+     * This second part of the analysis is also done in the background.
+     * So till here we have figured out the similar images and can uniquely identify them from their checksum, so that we don't have to repeat the second step at the runtime.
+     * Finally when a user opens the analysis section of the app, all we have to do is to group images by same checksum and list them to the user.
+     * Ofcourse there may be some false positives in this (or any other) analysis algorithm in the app, so we already have a feature where all user have to do is select the analysis result, and press the thumbs down button at top of the screen, and then that analysis will be marked false positive in the database and will not be shown to user again.
+     * Phew, this was something, I had to write this down so that I don't forget in future again instead of going through the code.
+     * I know there are multiple algorithms online, too complicated for me to understand and write from scratch in java (they're native functions in python). So I had to resort to write on my own.
+     */
+    private fun matchSimilarImages(appDatabase: AppDatabase, paths: Set<String>) {
+        val dao = appDatabase.similarImagesAnalysisMetadataDao()
+        val similarImagesAnalysisDao = appDatabase.similarImagesAnalysisDao()
+        // paths marked analysed while matching earlier images in this run
+        val matchedPaths = mutableSetOf<String>()
+        paths.chunked(AppDatabase.BATCH_SIZE).forEach {
+            chunk ->
+            dao.findAllNotAnalysedByPaths(chunk).forEach {
+                savedInfo ->
+                if (!isStopped &&
+                    !matchedPaths.contains(savedInfo.filePath)
+                ) {
+                    matchedPaths.addAll(
+                        analyseHistogramForMatch(
+                            similarImagesAnalysisDao, dao,
+                            savedInfo
+                        )
+                    )
+                }
+            }
+        }
+    }
+
+    private fun analyseHistogramForMatch(
+        similarImagesAnalysisDao: SimilarImagesAnalysisDao,
+        similarAnalysisMetadataDao:
+            SimilarImagesAnalysisMetadataDao,
+        analysisMetadata: SimilarImagesAnalysisMetadata
+    ): Set<String> {
+        val perceptualHash = analysisMetadata.perceptualHash ?: return setOf()
+        val candidateFiles = similarAnalysisMetadataDao.findAllByHashSegments(
+            ImgUtils.getPerceptualHashSegmentProbes(perceptualHash, 0),
+            ImgUtils.getPerceptualHashSegmentProbes(perceptualHash, 1),
+            ImgUtils.getPerceptualHashSegmentProbes(perceptualHash, 2),
+            ImgUtils.getPerceptualHashSegmentProbes(perceptualHash, 3)
+        ).filter {
+            it.filePath != analysisMetadata.filePath && !it.isAnalysed &&
+                it.perceptualHash != null &&
+                ImgUtils.getHammingDistance(perceptualHash, it.perceptualHash) <=
+                ImgUtils.PERCEPTUAL_HASH_MAX_DISTANCE
+        }
+        if (candidateFiles.isEmpty()) {
+            return setOf()
+        }
+        log.info(
+            "analysing image with candidate files {} path at {}", candidateFiles.size,
+            analysisMetadata.filePath
+        )
+        // normalize channels
+        val normalizedChannels = listOf(
+            analysisMetadata.blueChannel, analysisMetadata.greenChannel,
+            analysisMetadata.redChannel
+        ).map {
+            channel ->
+            val normalizedMap = mutableMapOf<Int, Int>()
+            channel.forEach {
+                normalizedMap[it.first / ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR] =
+                    it.second / ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
+            }
+            normalizedMap
+        }
+        val histChecksum = ImgUtils.getHistogramChecksum(
+            normalizedChannels[0], normalizedChannels[1],
+            normalizedChannels[2], analysisMetadata.parentPath
+        )
+
+        val similarFilesMetadata = candidateFiles.filter {
+            currentFile ->
+            val isMatch = listOf(
+                currentFile.blueChannel, currentFile.greenChannel, currentFile.redChannel
+            ).withIndex().all {
+                (index, channel) ->
+                channel.count {
+                    normalizedChannels[index][
+                        it.first / ImgUtils.PIXEL_POSITION_NORMALIZE_FACTOR
+                    ] == it.second / ImgUtils.PIXEL_INTENSITY_NORMALIZE_FACTOR
+                } >= ImgUtils.ASSERT_DATAPOINTS
+            }
+            if (isMatch) {
+                log.info(
+                    "matched datapoints for all channels for path {} and {}",
+                    analysisMetadata.filePath, currentFile.filePath
+                )
+            }
+            isMatch
+        }.toMutableSet()
+        if (similarFilesMetadata.isEmpty()) {
+            return setOf()
+        }
+        similarFilesMetadata.add(analysisMetadata)
+        similarImagesAnalysisDao.insert(
+            SimilarImagesAnalysis(histChecksum),
+            similarFilesMetadata.map { it.filePath }
+        )
+        similarFilesMetadata.forEach {
+            it.isAnalysed = true
+        }
+        similarAnalysisMetadataDao.insertAll(similarFilesMetadata.toList())
+        return similarFilesMetadata.map { it.filePath }.toSet()
+    }
+
+    /**
+     * State of a single analysis of a [doWork] run
+     */
+    private class ImageAnalysisTask(
+        val analysis: ImageAnalysisPipeline.Analysis,
+        val feature: Int,
+        val findAnalysedPaths: (List<String>) -> List<String>
+    ) {
+        // paths this analysis is enabled for in path preferences
+        var paths: Set<String> = setOf()
+
+        /**
+         * Returns paths in [chunk] which are enabled for this analysis and not yet analysed,
+         * using a single query for whole chunk
+         */
+        fun findPendingPaths(chunk: List<MediaFileInfo>): Set<String> {
+            val enabledPaths = chunk.map { it.path }.filter { paths.contains(it) }
+            if (enabledPaths.isEmpty()) {
+                return setOf()
+            }
+            return enabledPaths.toSet() - findAnalysedPaths.invoke(enabledPaths).toSet()
+        }
+    }
+}
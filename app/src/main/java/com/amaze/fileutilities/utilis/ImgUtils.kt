@@ -21,6 +21,7 @@
 package com.amaze.fileutilities.utilis
 
 import android.graphics.Bitmap
+import android.graphics.BitmapFactory
 import org.opencv.android.Utils
 import org.opencv.core.Core
 import org.opencv.core.CvType
@@ -38,6 +39,8 @@ import org.opencv.imgproc.Imgproc
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.util.PriorityQueue
+import kotlin.math.max
+import kotlin.math.min
 import kotlin.math.pow
 import kotlin.math.roundToInt
 
@@ -52,6 +55,25 @@ class ImgUtils {
         const val ASSERT_DATAPOINTS = 6
         const val PIXEL_POSITION_NORMALIZE_FACTOR = 20
         const val PIXEL_INTENSITY_NORMALIZE_FACTOR = 50
+        const val GENERIC_LONG_SIDE = 620.0
+        const val GENERIC_SHORT_SIDE = 480.0
+
+        // segments are probed within 1 bit, so by pigeonhole principle any hash within
+        // 2 * segments - 1 bits has at least one probed segment in common
+        const val PERCEPTUAL_HASH_SEGMENTS = 4
+        const val PERCEPTUAL_HASH_MAX_DISTANCE = PERCEPTUAL_HASH_SEGMENTS * 2 - 1
+        private const val PERCEPTUAL_HASH_SEGMENT_BITS = 64 / PERCEPTUAL_HASH_SEGMENTS
+        private const val PERCEPTUAL_HASH_SIZE = 8
+
+        private const val POOL_SLOT_RESIZE = 0
+        private const val POOL_SLOT_GRAY = 1
+        private const val POOL_SLOT_LAPLACIAN = 2
+        private const val POOL_SLOT_BLUR = 3
+        private const val POOL_SLOT_THRESHOLD = 4
+        private const val POOL_SLOT_HISTOGRAM_BLUE = 5
+        private const val POOL_SLOT_HISTOGRAM_GREEN = 6
+        private const val POOL_SLOT_HISTOGRAM_RED = 7
+        private const val POOL_SLOT_HASH = 8
 
 //        private var tessBaseApi: TessBaseAPI? = null
         val wordRegex = "^[A-Za-z]*$".toRegex()
@@ -82,6 +104,74 @@ class ImgUtils {
             return mat
         }
 
+        /**
+         * Reads image at [path] at the lowest of 1/2, 1/4 or 1/8 scale which still covers
+         * [minLongSide] x [minShortSide], so that large photos aren't decoded at their
+         * full resolution. Jpeg images are decoded directly at the reduced scale.
+         */
+        fun readImage(path: String, minLongSide: Double, minShortSide: Double): Mat? {
+            if (!path.doesFileExist()) {
+                log.warn("failed to read matrix from path as file not found")
+                return null
+            }
+            val options = BitmapFactory.Options()
+            options.inJustDecodeBounds = true
+            BitmapFactory.decodeFile(path, options)
+            val mat = Imgcodecs.imread(
+                path,
+                getReducedReadFlag(
+                    options.outWidth, options.outHeight,
+                    minLongSide, minShortSide
+                )
+            )
+            if (mat.empty() || mat.height() == 0 || mat.width() == 0) {
+                log.warn("failed to read matrix from path as image parameters empty")
+                return null
+            }
+            return mat
+        }
+
+        /**
+         * Returns [Imgcodecs] read flag for the lowest scale at which image of [width] x [height]
+         * still covers [minLongSide] x [minShortSide], full scale if image size is unknown
+         */
+        fun getReducedReadFlag(
+            width: Int,
+            height: Int,
+            minLongSide: Double,
+            minShortSide: Double
+        ): Int {
+            if (width <= 0 || height <= 0) {
+                return Imgcodecs.IMREAD_COLOR
+            }
+            val longSide = max(width, height)
+            val shortSide = min(width, height)
+            var scale = 1
+            while (scale < 8 && longSide / (scale * 2) >= minLongSide &&
+                shortSide / (scale * 2) >= minShortSide
+            ) {
+                scale *= 2
+            }
+            return when (scale) {
+                2 -> Imgcodecs.IMREAD_REDUCED_COLOR_2
+                4 -> Imgcodecs.IMREAD_REDUCED_COLOR_4
+                8 -> Imgcodecs.IMREAD_REDUCED_COLOR_8
+                else -> Imgcodecs.IMREAD_COLOR
+            }
+        }
+
+        /**
+         * Reads image at [path] once, scaled to the generic size every image analysis works on,
+         * so that the same matrix can be shared by all of them. Caller is responsible to
+         * release the returned matrix.
+         */
+        fun readImageForAnalysis(path: String): Mat? {
+            val mat = readImage(path, GENERIC_LONG_SIDE, GENERIC_SHORT_SIDE) ?: return null
+            val resizeimage = resize(mat, getGenericWidth(mat), getGenericHeight(mat))
+            mat.release()
+            return resizeimage
+        }
+
         fun convertBitmapToMat(input: Bitmap): Mat? {
             val mat = Mat()
             val bmp32: Bitmap = input.copy(Bitmap.Config.ARGB_8888, true)
@@ -163,11 +253,32 @@ class ImgUtils {
             path: String
         ): Boolean? {
             return try {
-                val matrix = readImage(path)
+                val matrix = readImageForAnalysis(path)
                 if (matrix == null) {
                     log.warn("failure to find blur for input")
                     return false
                 }
+                try {
+                    isImageBlur(matrix)
+                } finally {
+                    matrix.release()
+                }
+            } catch (e: Exception) {
+                log.warn("Failed to check for blurry image", e)
+                null
+            } catch (oom: OutOfMemoryError) {
+                log.warn("Failed to check for blurry image", oom)
+                null
+            }
+        }
+
+        /**
+         * Same as [isImageBlur] for an already read [matrix], which is not released
+         */
+        fun isImageBlur(
+            matrix: Mat
+        ): Boolean? {
+            return try {
                 val factor = laplace(matrix)
                 if (factor == Double.MAX_VALUE) {
                     return null
@@ -189,11 +300,32 @@ class ImgUtils {
             path: String
         ): Boolean? {
             return try {
-                val matrix = readImage(path)
+                val matrix = readImageForAnalysis(path)
                 if (matrix == null) {
                     log.warn("failure to find low light for input")
                     return false
                 }
+                try {
+                    isImageLowLight(matrix)
+                } finally {
+                    matrix.release()
+                }
+            } catch (e: Exception) {
+                log.warn("Failed to check for low light image", e)
+                null
+            } catch (oom: OutOfMemoryError) {
+                log.warn("Failed to check for low light image", oom)
+                null
+            }
+        }
+
+        /**
+         * Same as [isImageLowLight] for an already read [matrix], which is not released
+         */
+        fun isImageLowLight(
+            matrix: Mat
+        ): Boolean? {
+            return try {
                 processForLowLight(matrix)
             } catch (e: Exception) {
                 log.warn("Failed to check for low light image", e)
@@ -269,7 +401,9 @@ class ImgUtils {
                 draw = draw.reshape(3, resizeimage.rows())
                 draw.convertTo(draw, CvType.CV_8U)
 
-                processForLowLight(matrix)
+                processForLowLight(matrix).also {
+                    matrix.release()
+                }
             } catch (e: Exception) {
                 log.warn("Failed to check for low light image", e)
                 null
@@ -281,7 +415,7 @@ class ImgUtils {
 
         fun getHistogram(inputPath: String, widthPx: Double, heightPx: Double): Bitmap? {
             return try {
-                val matrix = readImage(inputPath)
+                val matrix = readImageForAnalysis(inputPath)
                 if (matrix == null) {
                     log.warn("failure to find input for histogram for path {}", inputPath)
                     return null
@@ -354,7 +488,6 @@ class ImgUtils {
                 resultBitmapFiltered.release()
                 resultBitmap.release()
                 histMatBitmap.release()
-                histograms.forEach { it.release() }
                 matrix.release()
                 return histBitmap
             } catch (e: Exception) {
@@ -363,16 +496,38 @@ class ImgUtils {
             } catch (oom: OutOfMemoryError) {
                 log.warn("Failed to get histogram for {}", inputPath, oom)
                 null
+            } finally {
+                MatPool.releaseForCurrentThread()
             }
         }
 
         fun getHistogramChannelsWithPeaks(inputPath: String): List<List<Pair<Int, Int>>>? {
             return try {
-                val matrix = readImage(inputPath)
+                val matrix = readImageForAnalysis(inputPath)
                 if (matrix == null) {
                     log.warn("failure to find input for histogram for path {}", inputPath)
                     return null
                 }
+                try {
+                    getHistogramChannelsWithPeaks(matrix)
+                } finally {
+                    matrix.release()
+                }
+            } catch (e: Exception) {
+                log.warn("Failed to process similar images histogram for {}", inputPath, e)
+                null
+            } catch (oom: OutOfMemoryError) {
+                log.warn("Failed to process similar images histogram for {}", inputPath, oom)
+                null
+            }
+        }
+
+        /**
+         * Same as [getHistogramChannelsWithPeaks] for an already read [matrix],
+         * which is not released
+         */
+        fun getHistogramChannelsWithPeaks(matrix: Mat): List<List<Pair<Int, Int>>>? {
+            return try {
                 val histograms = processHistogram(
                     matrix,
                     THRESHOLD.toDouble()
@@ -441,56 +596,107 @@ class ImgUtils {
                     redTopValues.add(priorityQueueRed.remove())
                     priorityQueueRed.clear()
                 }
-                histograms.forEach { it.release() }
-                matrix.release()
                 return mutableListOf(blueTopValues, greenTopValues, redTopValues)
             } catch (e: Exception) {
-                log.warn("Failed to process similar images histogram for {}", inputPath, e)
+                log.warn("Failed to process similar images histogram", e)
                 null
             } catch (oom: OutOfMemoryError) {
-                log.warn("Failed to process similar images histogram for {}", inputPath, oom)
+                log.warn("Failed to process similar images histogram", oom)
                 null
             }
         }
 
+        /**
+         * Returns normalized blue, green and red histograms of [inputMat], which are pooled
+         * per thread (see [MatPool]) and must not be released
+         */
         private fun processHistogram(inputMat: Mat, heightPx: Double): List<Mat> {
-            val bHist = Mat()
-            val gHist = Mat()
-            val rHist = Mat()
-            val bgrPlane = ArrayList<Mat>(3)
-            Core.split(inputMat, bgrPlane)
-            Imgproc.calcHist(
-                arrayListOf(bgrPlane[0]), MatOfInt(0), Mat(), bHist,
-                MatOfInt(256), MatOfFloat(0f, 256f), false
-            )
-            Imgproc.calcHist(
-                arrayListOf(bgrPlane[1]), MatOfInt(0), Mat(), gHist,
-                MatOfInt(256), MatOfFloat(0f, 256f), false
-            )
-            Imgproc.calcHist(
-                arrayListOf(bgrPlane[2]), MatOfInt(0), Mat(), rHist,
-                MatOfInt(256), MatOfFloat(0f, 256f), false
-            )
-            Core.normalize(
-                bHist, bHist, heightPx,
-                0.0, Core.NORM_INF
+            val pool = MatPool.forCurrentThread()
+            val histograms = arrayListOf(
+                pool.get(POOL_SLOT_HISTOGRAM_BLUE),
+                pool.get(POOL_SLOT_HISTOGRAM_GREEN),
+                pool.get(POOL_SLOT_HISTOGRAM_RED)
             )
-            Core.normalize(
-                gHist, gHist, heightPx,
-                0.0, Core.NORM_INF
-            )
-            Core.normalize(
-                rHist, rHist, heightPx,
-                0.0, Core.NORM_INF
-            )
-            return arrayListOf(bHist, gHist, rHist)
+            // histogram of each channel directly, instead of splitting image in new planes
+            histograms.forEachIndexed { channel, hist ->
+                Imgproc.calcHist(
+                    arrayListOf(inputMat), MatOfInt(channel), Mat(), hist,
+                    MatOfInt(256), MatOfFloat(0f, 256f), false
+                )
+                Core.normalize(
+                    hist, hist, heightPx,
+                    0.0, Core.NORM_INF
+                )
+            }
+            return histograms
+        }
+
+        /**
+         * Difference hash of [matrix], every bit tells whether a pixel is brighter than it's
+         * right neighbour in a 9x8 gray scale thumbnail of the image.
+         * Similar images have hashes within a small hamming distance of each other.
+         */
+        fun getPerceptualHash(matrix: Mat): Long? {
+            return try {
+                val pool = MatPool.forCurrentThread()
+                val matGray = pool.get(POOL_SLOT_GRAY)
+                Imgproc.cvtColor(matrix, matGray, Imgproc.COLOR_BGR2GRAY)
+                val thumbnail = pool.get(POOL_SLOT_HASH)
+                Imgproc.resize(
+                    matGray, thumbnail,
+                    Size(PERCEPTUAL_HASH_SIZE + 1.0, PERCEPTUAL_HASH_SIZE.toDouble()),
+                    0.0, 0.0, Imgproc.INTER_AREA
+                )
+                val rowSize = PERCEPTUAL_HASH_SIZE + 1
+                val pixels = ByteArray(rowSize * PERCEPTUAL_HASH_SIZE)
+                thumbnail.get(0, 0, pixels)
+                var hash = 0L
+                for (row in 0 until PERCEPTUAL_HASH_SIZE) {
+                    for (col in 0 until PERCEPTUAL_HASH_SIZE) {
+                        val pixel = pixels[row * rowSize + col].toInt() and 0xFF
+                        val nextPixel = pixels[row * rowSize + col + 1].toInt() and 0xFF
+                        hash = hash shl 1
+                        if (pixel > nextPixel) {
+                            hash = hash or 1L
+                        }
+                    }
+                }
+                hash
+            } catch (e: Exception) {
+                log.warn("Failed to get perceptual hash", e)
+                null
+            }
+        }
+
+        fun getPerceptualHashSegment(hash: Long, segment: Int): Int {
+            return (
+                (hash ushr (segment * PERCEPTUAL_HASH_SEGMENT_BITS)) and
+                    ((1L shl PERCEPTUAL_HASH_SEGMENT_BITS) - 1)
+                ).toInt()
+        }
+
+        /**
+         * Returns values within 1 bit of [segment] of [hash], images having any of these values
+         * for any of the segments are the candidates to be within
+         * [PERCEPTUAL_HASH_MAX_DISTANCE] of [hash]
+         */
+        fun getPerceptualHashSegmentProbes(hash: Long, segment: Int): List<Int> {
+            val value = getPerceptualHashSegment(hash, segment)
+            val probes = arrayListOf(value)
+            for (bit in 0 until PERCEPTUAL_HASH_SEGMENT_BITS) {
+                probes.add(value xor (1 shl bit))
+            }
+            return probes
+        }
+
+        fun getHammingDistance(first: Long, second: Long): Int {
+            return java.lang.Long.bitCount(first xor second)
         }
 
         private fun processForLowLight(matrix: Mat): Boolean? {
             return try {
                 val zerosPair = getTotalAndZeros(matrix)
                 val ratio = (zerosPair.second.toDouble() / zerosPair.first.toDouble())
-                matrix.release()
                 return ratio >= 0.8
             } catch (e: Exception) {
                 log.warn("Failed to check for low light image", e)
@@ -509,27 +715,20 @@ class ImgUtils {
         }
 
         private fun laplace(image: Mat): Double {
-            val destination = Mat()
-            val matGray = Mat()
             return try {
-                val resizeimage = resize(image, getGenericWidth(image), getGenericHeight(image))
-                if (resizeimage != null) {
-                    Imgproc.cvtColor(resizeimage, matGray, Imgproc.COLOR_BGR2GRAY)
-                    Imgproc.Laplacian(matGray, destination, 3)
-                    val median = MatOfDouble()
-                    val std = MatOfDouble()
-                    Core.meanStdDev(destination, median, std)
-
-                    resizeimage.release()
-                    matGray.release()
-                    destination.release()
-                    image.release()
-
-                    std[0, 0][0].pow(2.0)
-                } else {
-                    log.warn("Failed to check for blurry image due to empty image")
-                    Double.MAX_VALUE
-                }
+                val pool = MatPool.forCurrentThread()
+                val resizeimage = resizeToGeneric(image, pool)
+                val matGray = pool.get(POOL_SLOT_GRAY)
+                Imgproc.cvtColor(resizeimage, matGray, Imgproc.COLOR_BGR2GRAY)
+                val destination = pool.get(POOL_SLOT_LAPLACIAN)
+                Imgproc.Laplacian(matGray, destination, 3)
+                val median = MatOfDouble()
+                val std = MatOfDouble()
+                Core.meanStdDev(destination, median, std)
+                val variance = std[0, 0][0].pow(2.0)
+                median.release()
+                std.release()
+                variance
             } catch (e: Exception) {
                 log.warn("Failed to check for blurry image", e)
                 Double.MAX_VALUE
@@ -597,20 +796,20 @@ class ImgUtils {
 
         private fun getTotalAndZeros(matrix: Mat): Pair<Int, Int> {
             try {
-                val resizeimage = resize(
-                    matrix, getGenericWidth(matrix),
-                    getGenericHeight(matrix)
+                val pool = MatPool.forCurrentThread()
+                val resizeimage = resizeToGeneric(matrix, pool)
+                val matGray = pool.get(POOL_SLOT_GRAY)
+                Imgproc.cvtColor(resizeimage, matGray, Imgproc.COLOR_BGR2GRAY)
+                val blur = pool.get(POOL_SLOT_BLUR)
+                Imgproc.blur(matGray, blur, Size(9.0, 9.0))
+                val threshold = pool.get(POOL_SLOT_THRESHOLD)
+                Imgproc.threshold(
+                    blur, threshold, 100.0, 255.0,
+                    Imgproc.THRESH_BINARY
                 )
-                val matGray = gray(resizeimage)
-                val threshold = thresholdInvert(matGray, 100.0)
                 val nonZeros = Core.countNonZero(threshold)
                 val total = resizeimage.width() * resizeimage.height()
 
-                resizeimage.release()
-                matGray.release()
-                threshold.release()
-                matrix.release()
-
                 return Pair(total, total - nonZeros)
             } catch (e: Exception) {
                 log.warn("cannot get zeros and total count from img", e)
@@ -618,16 +817,6 @@ class ImgUtils {
             return Pair(1, 0)
         }
 
-        private fun thresholdInvert(matrix: Mat, intensity: Double): Mat {
-            val blur = blur(matrix)
-            val threshold = Mat()
-            Imgproc.threshold(
-                blur, threshold, intensity, 255.0,
-                Imgproc.THRESH_BINARY
-            )
-            return threshold
-        }
-
         fun getHistogramChecksum(
             blueChannelMap: Map<Int, Int>,
             greenChannelMap: Map<Int, Int>,
@@ -680,11 +869,23 @@ class ImgUtils {
         }
 
         fun getGenericWidth(matrix: Mat): Double {
-            return if (matrix.width() > matrix.height()) 620.0 else 480.0
+            return if (matrix.width() > matrix.height()) GENERIC_LONG_SIDE else GENERIC_SHORT_SIDE
         }
 
         fun getGenericHeight(matrix: Mat): Double {
-            return if (matrix.height() > matrix.width()) 620.0 else 480.0
+            return if (matrix.height() > matrix.width()) GENERIC_LONG_SIDE else GENERIC_SHORT_SIDE
+        }
+
+        /**
+         * Resizes [matrix] to generic size in a pooled matrix, unless it's already of that size
+         */
+        private fun resizeToGeneric(matrix: Mat, pool: MatPool): Mat {
+            val width = getGenericWidth(matrix)
+            val height = getGenericHeight(matrix)
+            if (matrix.width() == width.toInt() && matrix.height() == height.toInt()) {
+                return matrix
+            }
+            return resize(matrix, width, height, pool.get(POOL_SLOT_RESIZE))
         }
 
         private fun processCanny(matrix: Mat): Mat {
@@ -731,8 +932,7 @@ class ImgUtils {
             return destination
         }
 
-        fun resize(matrix: Mat, width: Double, height: Double): Mat {
-            val resizeMat = Mat()
+        fun resize(matrix: Mat, width: Double, height: Double, resizeMat: Mat = Mat()): Mat {
             val sz = Size(width, height)
             Imgproc.resize(
                 matrix, resizeMat, sz, 0.0, 0.0,
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import android.content.pm.Signature
+import android.os.Build
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.security.MessageDigest
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Installed packages classified as user, system or this app, enumerated once per process using
+ * a single [PackageManager.getInstalledPackages] call.
+ * Packages added, replaced or removed afterwards are only recorded by a receiver, and applied
+ * to cache on next access by querying just those packages.
+ */
+object InstalledAppsRepository {
+
+    private val log: Logger = LoggerFactory.getLogger(InstalledAppsRepository::class.java)
+
+    const val CLASSIFICATION_USER: Byte = 0
+    const val CLASSIFICATION_SYSTEM: Byte = 1
+    const val CLASSIFICATION_SELF: Byte = 2
+
+    private const val SYSTEM_PACKAGE_NAME = "android"
+
+    private class InstalledApp(val packageInfo: PackageInfo, val classification: Byte)
+
+    private val installedApps = HashMap<String, InstalledApp>()
+    private val changedPackages = Collections.newSetFromMap(ConcurrentHashMap<String, Boolean>())
+    private val receiverRegistered = AtomicBoolean(false)
+    private var systemSignatureDigests: Set<String> = emptySet()
+    private var isLoaded = false
+    private var userApps: List<Pair<ApplicationInfo, PackageInfo?>>? = null
+
+    private val packageChangeReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context?, intent: Intent?) {
+            intent?.data?.schemeSpecificPart?.let {
+                changedPackages.add(it)
+            }
+            AppMetricsRepository.invalidate()
+        }
+    }
+
+    /**
+     * Apps installed by user, ie. not in system partition, not signed with platform key,
+     * and not this app. Same list instance is returned until a package changes.
+     * Null if packages couldn't be enumerated.
+     */
+    @Synchronized
+    fun getUserApps(context: Context): List<Pair<ApplicationInfo, PackageInfo?>>? {
+        if (!ensureLoaded(context.applicationContext)) {
+            return null
+        }
+        return userApps ?: installedApps.values.filter {
+            it.classification == CLASSIFICATION_USER
+        }.mapNotNull {
+            installedApp ->
+            installedApp.packageInfo.applicationInfo?.let {
+                Pair(it, installedApp.packageInfo)
+            }
+        }.also {
+            userApps = it
+        }
+    }
+
+    /**
+     * Uids of all installed packages, including system ones.
+     * Null if packages couldn't be enumerated.
+     */
+    @Synchronized
+    fun getInstalledUids(context: Context): Set<Int>? {
+        if (!ensureLoaded(context.applicationContext)) {
+            return null
+        }
+        return installedApps.values.mapNotNullTo(HashSet()) {
+            it.packageInfo.applicationInfo?.uid
+        }
+    }
+
+    private fun ensureLoaded(appContext: Context): Boolean {
+        registerPackageChangeReceiver(appContext)
+        if (!isLoaded) {
+            // changes received while enumerating are applied on next access
+            changedPackages.clear()
+            isLoaded = loadAll(appContext)
+        } else if (changedPackages.isNotEmpty()) {
+            applyChanges(appContext)
+        }
+        return isLoaded
+    }
+
+    /**
+     * Registers the single receiver of package changes, which marks changed packages for
+     * reload here and invalidates [AppMetricsRepository]
+     */
+    fun registerPackageChangeReceiver(appContext: Context) {
+        if (receiverRegistered.compareAndSet(false, true)) {
+            val intentFilter = IntentFilter()
+            intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED)
+            intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED)
+            intentFilter.addAction(Intent.ACTION_PACKAGE_REPLACED)
+            intentFilter.addDataScheme("package")
+            appContext.registerReceiver(packageChangeReceiver, intentFilter)
+        }
+    }
+
+    private fun loadAll(appContext: Context): Boolean {
+        val packageManager = appContext.packageManager
+        val packages = try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                packageManager.getInstalledPackages(
+                    PackageManager.PackageInfoFlags.of(getPackageInfoFlags().toLong())
+                )
+            } else {
+                packageManager.getInstalledPackages(getPackageInfoFlags())
+            }
+        } catch (e: Exception) {
+            log.warn("failed to load all installed packages", e)
+            return false
+        }
+        // system package is part of installed packages, no need to query it separately
+        systemSignatureDigests = packages.find { it.packageName == SYSTEM_PACKAGE_NAME }
+            ?.let { getSignatureDigests(it) } ?: emptySet()
+        installedApps.clear()
+        packages.forEach {
+            installedApps[it.packageName] = InstalledApp(it, classify(appContext, it))
+        }
+        userApps = null
+        return true
+    }
+
+    private fun applyChanges(appContext: Context) {
+        val packageManager = appContext.packageManager
+        val packageNames = ArrayList(changedPackages)
+        changedPackages.removeAll(packageNames.toSet())
+        packageNames.forEach {
+            packageName ->
+            try {
+                val packageInfo = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    packageManager.getPackageInfo(
+                        packageName,
+                        PackageManager.PackageInfoFlags.of(getPackageInfoFlags().toLong())
+                    )
+                } else {
+                    packageManager.getPackageInfo(packageName, getPackageInfoFlags())
+                }
+                installedApps[packageName] =
+                    InstalledApp(packageInfo, classify(appContext, packageInfo))
+            } catch (e: PackageManager.NameNotFoundException) {
+                installedApps.remove(packageName)
+            }
+        }
+        log.debug("applied changes of packages {}", packageNames)
+        userApps = null
+    }
+
+    private fun classify(appContext: Context, packageInfo: PackageInfo): Byte {
+        val applicationInfo = packageInfo.applicationInfo
+        return when {
+            packageInfo.packageName == appContext.packageName -> CLASSIFICATION_SELF
+            applicationInfo == null || Utils.isAppInSystemPartition(applicationInfo) ->
+                CLASSIFICATION_SYSTEM
+            getSignatureDigests(packageInfo).any { systemSignatureDigests.contains(it) } ->
+                CLASSIFICATION_SYSTEM
+            else -> CLASSIFICATION_USER
+        }
+    }
+
+    private fun getPackageInfoFlags(): Int {
+        return PackageManager.GET_META_DATA or
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P)
+                PackageManager.GET_SIGNATURES
+            else PackageManager.GET_SIGNING_CERTIFICATES
+    }
+
+    private fun getSignatureDigests(packageInfo: PackageInfo): Set<String> {
+        val signatures: Array<Signature>? = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            packageInfo.signingInfo?.let {
+                if (it.hasMultipleSigners()) it.apkContentsSigners
+                else it.signingCertificateHistory
+            }
+        } else {
+            packageInfo.signatures
+        }
+        return signatures?.map {
+            MessageDigest.getInstance("SHA-256").digest(it.toByteArray())
+                .joinToString("") { byte -> "%02x".format(byte) }
+        }?.toSet() ?: emptySet()
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import org.opencv.core.Mat
+
+/**
+ * Intermediate matrices of image analysis, reused across images analysed on the same thread.
+ * OpenCV only reallocates a destination matrix if it's size or type differ, and as analysis
+ * works on images of the generic size, buffers are allocated once per thread instead of
+ * once per image.
+ * Matrices returned by [get] must not be released or kept beyond the analysis call.
+ * Native memory of a thread's matrices is only freed by [releaseForCurrentThread], which callers
+ * running analysis call once they are done with a batch of images, as pooled threads outlive it.
+ */
+class MatPool private constructor() {
+
+    companion object {
+        private val pools = object : ThreadLocal<MatPool>() {
+            override fun initialValue(): MatPool {
+                return MatPool()
+            }
+        }
+
+        fun forCurrentThread(): MatPool {
+            return pools.get()!!
+        }
+
+        /**
+         * Releases all matrices of this thread, next [forCurrentThread] starts with an empty pool
+         */
+        fun releaseForCurrentThread() {
+            pools.get()!!.mats.values.forEach {
+                it.release()
+            }
+            pools.remove()
+        }
+    }
+
+    private val mats = HashMap<Int, Mat>()
+
+    /**
+     * Returns matrix of this thread for [slot], callers on the same thread must use distinct
+     * slots for matrices in use at the same time
+     */
+    fun get(slot: Int): Mat {
+        return mats.getOrPut(slot) { Mat() }
+    }
+}
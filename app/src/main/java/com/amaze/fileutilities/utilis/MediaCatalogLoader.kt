@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import com.amaze.fileutilities.home_page.ui.files.FilesViewModel
+import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * Lists media store rows backing images, videos, audios and documents tabs.
+ * Concurrent requests for same listing (eg. from home tabs, search and viewers each holding
+ * their own view model) share a single in-flight query instead of walking media store again.
+ * Every caller gets it's own copy of the lists and of their items, as lists are sorted and
+ * grouped with headers in place and callers update items (eg. their media type). Results aren't
+ * kept once a load completes, [MediaStoreIndex] already keeps repeated listings cheap.
+ * Loads run in their own scope, so a caller going away doesn't cancel the load for others.
+ */
+object MediaCatalogLoader {
+
+    private val log: Logger = LoggerFactory.getLogger(MediaCatalogLoader::class.java)
+
+    private const val KEY_IMAGES = "images"
+    private const val KEY_VIDEOS = "videos"
+    private const val KEY_AUDIOS = "audios"
+    private const val KEY_ALL = "all"
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val inFlight = HashMap<String, Deferred<Any>>()
+
+    suspend fun listImages(context: Context):
+        Pair<FilesViewModel.StorageSummary, ArrayList<MediaFileInfo>> {
+        return copyOf(
+            load(KEY_IMAGES) {
+                CursorUtils.listImages(context.applicationContext)
+            }
+        )
+    }
+
+    suspend fun listVideos(context: Context):
+        Pair<FilesViewModel.StorageSummary, ArrayList<MediaFileInfo>> {
+        return copyOf(
+            load(KEY_VIDEOS) {
+                CursorUtils.listVideos(context.applicationContext)
+            }
+        )
+    }
+
+    suspend fun listAudio(context: Context, blacklistPaths: List<String>):
+        Pair<FilesViewModel.StorageSummary, ArrayList<MediaFileInfo>> {
+        // audios and playlists tabs list with same blacklist, so they share a load
+        val key = "$KEY_AUDIOS:${blacklistPaths.sorted().joinToString("\n")}"
+        return copyOf(
+            load(key) {
+                CursorUtils.listAudio(context.applicationContext, blacklistPaths)
+            }
+        )
+    }
+
+    suspend fun listAll(context: Context): ArrayList<MediaFileInfo> {
+        return copyOf(
+            load(KEY_ALL) {
+                CursorUtils.listAll(context.applicationContext)
+            }
+        )
+    }
+
+    private fun copyOf(
+        pair: Pair<FilesViewModel.StorageSummary, ArrayList<MediaFileInfo>>
+    ): Pair<FilesViewModel.StorageSummary, ArrayList<MediaFileInfo>> {
+        return Pair(pair.first.copy(), copyOf(pair.second))
+    }
+
+    /**
+     * Copies items along with their mutable extra info
+     */
+    private fun copyOf(mediaFileInfoList: List<MediaFileInfo>): ArrayList<MediaFileInfo> {
+        val copy = ArrayList<MediaFileInfo>(mediaFileInfoList.size)
+        mediaFileInfoList.forEach {
+            copy.add(
+                it.copy(
+                    extraInfo = it.extraInfo?.let {
+                        extraInfo ->
+                        extraInfo.copy(audioMetaData = extraInfo.audioMetaData?.copy())
+                    }
+                )
+            )
+        }
+        return copy
+    }
+
+    /**
+     * Awaits in-flight load of [key] if there's one, else starts a new one using [loader]
+     */
+    private suspend fun <T : Any> load(key: String, loader: () -> T): T {
+        val deferred = synchronized(inFlight) {
+            inFlight[key] ?: scope.async<Any> {
+                val startTime = System.currentTimeMillis()
+                val result = loader.invoke()
+                log.debug(
+                    "loaded {} in {} ms", key.substringBefore(':'),
+                    System.currentTimeMillis() - startTime
+                )
+                result
+            }.also {
+                newDeferred ->
+                inFlight[key] = newDeferred
+                newDeferred.invokeOnCompletion {
+                    synchronized(inFlight) {
+                        if (inFlight[key] === newDeferred) {
+                            inFlight.remove(key)
+                        }
+                    }
+                }
+            }
+        }
+        @Suppress("UNCHECKED_CAST")
+        return deferred.await() as T
+    }
+}
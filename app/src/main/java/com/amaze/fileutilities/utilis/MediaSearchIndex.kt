@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import com.amaze.fileutilities.home_page.ui.AggregatedMediaFileInfoObserver
+import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
+import java.util.Locale
+import java.util.TreeMap
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * In memory index over titles of aggregated media files, so that search doesn't scan every
+ * title on each keystroke.
+ * Titles are case folded and indexed by their trigrams (for "contains" queries) and in a sorted
+ * map (for prefix queries, which rank first in hints).
+ * Index is updated incrementally by [update], only files added, removed or changed since last
+ * update are indexed / unindexed. Safe to query concurrently from multiple threads.
+ */
+class MediaSearchIndex {
+
+    companion object {
+        const val TYPE_IMAGES = 0
+        const val TYPE_VIDEOS = 1
+        const val TYPE_AUDIOS = 2
+        const val TYPE_DOCS = 3
+        private const val TYPES_COUNT = 4
+        private const val GRAM_SIZE = 3
+    }
+
+    private class Entry(
+        val type: Int,
+        val mediaFileInfo: MediaFileInfo,
+        val foldedTitle: String
+    )
+
+    /**
+     * Growable list of ascending entry ids, avoids boxing every id of a posting list
+     */
+    private class IntList {
+        var values = IntArray(4)
+        var size = 0
+
+        fun add(value: Int) {
+            if (size == values.size) {
+                values = values.copyOf(size * 2)
+            }
+            values[size++] = value
+        }
+
+        fun contains(value: Int): Boolean {
+            return values.binarySearch(value, 0, size) >= 0
+        }
+    }
+
+    private val lock = ReentrantReadWriteLock()
+
+    // entry id is it's position in this list, removed entries are left as null until compaction
+    private val entries = ArrayList<Entry?>()
+    private var removedCount = 0
+    private val trigrams = HashMap<Long, IntList>()
+    private val prefixes = TreeMap<String, IntList>()
+    private val pathToId = Array(TYPES_COUNT) { HashMap<String, Int>() }
+    private val indexedLists = arrayOfNulls<List<MediaFileInfo>>(TYPES_COUNT)
+
+    /**
+     * Brings index in sync with [aggregatedMediaFiles], lists which weren't loaded yet are skipped,
+     * and lists unchanged since last update are a no-op.
+     */
+    fun update(aggregatedMediaFiles: AggregatedMediaFileInfoObserver.AggregatedMediaFiles) {
+        update(TYPE_IMAGES, aggregatedMediaFiles.imagesMediaFilesList)
+        update(TYPE_VIDEOS, aggregatedMediaFiles.videosMediaFilesList)
+        update(TYPE_AUDIOS, aggregatedMediaFiles.audiosMediaFilesList)
+        update(TYPE_DOCS, aggregatedMediaFiles.docsMediaFilesList)
+    }
+
+    fun update(type: Int, mediaFileInfoList: List<MediaFileInfo>?) {
+        if (mediaFileInfoList == null) {
+            return
+        }
+        lock.write {
+            if (indexedLists[type] === mediaFileInfoList) {
+                return
+            }
+            indexedLists[type] = mediaFileInfoList
+            val typePaths = pathToId[type]
+            val currentPaths = HashSet<String>(mediaFileInfoList.size * 2)
+            mediaFileInfoList.forEach {
+                currentPaths.add(it.path)
+            }
+            val removedPaths = typePaths.keys.filter { !currentPaths.contains(it) }
+            removedPaths.forEach {
+                typePaths.remove(it)?.let {
+                    id ->
+                    entries[id] = null
+                    removedCount++
+                }
+            }
+            mediaFileInfoList.forEach {
+                val id = typePaths[it.path]
+                val entry = id?.let { entries[id] }
+                if (id == null || entry == null) {
+                    typePaths[it.path] = addEntry(Entry(type, it, fold(it.title)))
+                } else if (entry.mediaFileInfo !== it) {
+                    val foldedTitle = fold(it.title)
+                    if (entry.foldedTitle == foldedTitle) {
+                        // same grams, only results need to point to the new object
+                        entries[id] = Entry(type, it, foldedTitle)
+                    } else {
+                        entries[id] = null
+                        removedCount++
+                        typePaths[it.path] = addEntry(Entry(type, it, foldedTitle))
+                    }
+                }
+            }
+            if (removedCount > entries.size / 2) {
+                compact()
+            }
+        }
+    }
+
+    /**
+     * Files of types accepted by [typeFilter] whose title contains [query], ignoring case,
+     * in the order they were indexed.
+     */
+    fun search(
+        query: String,
+        typeFilter: (type: Int) -> Boolean,
+        limit: Int = Int.MAX_VALUE
+    ): List<MediaFileInfo> {
+        lock.read {
+            val results = ArrayList<MediaFileInfo>()
+            forEachMatch(fold(query), typeFilter) {
+                _, entry ->
+                results.add(entry.mediaFileInfo)
+                results.size < limit
+            }
+            return results
+        }
+    }
+
+    /**
+     * At most [limit] titles for search hints, titles starting with [query] come first,
+     * followed by titles containing it.
+     */
+    fun hints(
+        query: String,
+        typeFilter: (type: Int) -> Boolean,
+        limit: Int
+    ): List<String> {
+        lock.read {
+            val foldedQuery = fold(query)
+            val hintIds = LinkedHashSet<Int>()
+            val prefixMatches = prefixes.subMap(foldedQuery, true, foldedQuery + '\uffff', false)
+            prefixMatches@ for (ids in prefixMatches.values) {
+                for (i in 0 until ids.size) {
+                    if (hintIds.size >= limit) {
+                        break@prefixMatches
+                    }
+                    val entry = entries[ids.values[i]]
+                    if (entry != null && typeFilter.invoke(entry.type)) {
+                        hintIds.add(ids.values[i])
+                    }
+                }
+            }
+            if (hintIds.size < limit) {
+                forEachMatch(foldedQuery, typeFilter) {
+                    id, _ ->
+                    hintIds.add(id)
+                    hintIds.size < limit
+                }
+            }
+            return hintIds.map { entries[it]!!.mediaFileInfo.title }
+        }
+    }
+
+    /**
+     * Invokes [onMatch] for every entry containing [foldedQuery] in ascending id order,
+     * until it returns false.
+     */
+    private fun forEachMatch(
+        foldedQuery: String,
+        typeFilter: (type: Int) -> Boolean,
+        onMatch: (id: Int, entry: Entry) -> Boolean
+    ) {
+        if (foldedQuery.length < GRAM_SIZE) {
+            for (id in entries.indices) {
+                val entry = entries[id] ?: continue
+                if (typeFilter.invoke(entry.type) && entry.foldedTitle.contains(foldedQuery)) {
+                    if (!onMatch.invoke(id, entry)) {
+                        return
+                    }
+                }
+            }
+            return
+        }
+        val postingLists = ArrayList<IntList>()
+        for (key in gramKeys(foldedQuery)) {
+            // no title has this trigram, so none can contain the query
+            val ids = trigrams[key] ?: return
+            postingLists.add(ids)
+        }
+        postingLists.sortBy { it.size }
+        val smallest = postingLists[0]
+        for (i in 0 until smallest.size) {
+            val id = smallest.values[i]
+            val entry = entries[id] ?: continue
+            if (!typeFilter.invoke(entry.type)) {
+                continue
+            }
+            if (postingLists.all { it.contains(id) } &&
+                // trigrams may match out of order, confirm actual match
+                entry.foldedTitle.contains(foldedQuery)
+            ) {
+                if (!onMatch.invoke(id, entry)) {
+                    return
+                }
+            }
+        }
+    }
+
+    private fun addEntry(entry: Entry): Int {
+        val id = entries.size
+        entries.add(entry)
+        for (key in gramKeys(entry.foldedTitle)) {
+            trigrams.getOrPut(key) { IntList() }.add(id)
+        }
+        prefixes.getOrPut(entry.foldedTitle) { IntList() }.add(id)
+        return id
+    }
+
+    /**
+     * Re-indexes live entries once most of the index is removed entries, so that posting lists
+     * don't keep growing with ids which will be skipped anyway.
+     */
+    private fun compact() {
+        val liveEntries = entries.filterNotNull()
+        entries.clear()
+        removedCount = 0
+        trigrams.clear()
+        prefixes.clear()
+        pathToId.forEach { it.clear() }
+        liveEntries.forEach {
+            pathToId[it.type][it.mediaFileInfo.path] = addEntry(it)
+        }
+    }
+
+    private fun gramKeys(foldedText: String): Set<Long> {
+        val keys = HashSet<Long>()
+        for (i in 0..foldedText.length - GRAM_SIZE) {
+            keys.add(
+                (foldedText[i].code.toLong() shl 32) or
+                    (foldedText[i + 1].code.toLong() shl 16) or
+                    foldedText[i + 2].code.toLong()
+            )
+        }
+        return keys
+    }
+
+    private fun fold(text: String): String {
+        return text.toLowerCase(Locale.ROOT)
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import android.net.Uri
+import android.os.Build.VERSION
+import android.os.Build.VERSION_CODES
+import android.provider.MediaStore
+import androidx.annotation.RequiresApi
+import com.amaze.fileutilities.home_page.database.AppDatabase
+import com.amaze.fileutilities.home_page.database.MediaStoreIndexEntry
+import com.amaze.fileutilities.home_page.ui.files.MediaFileInfo
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.TreeMap
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Local copy of media store rows in [MediaStoreIndexEntry], so that listing media after first
+ * sync costs a query for rows changed since last sync, instead of a cursor walk over whole
+ * media store.
+ * On Android R and above changed rows are the ones with
+ * [MediaStore.MediaColumns.GENERATION_MODIFIED] greater than last seen [MediaStore.getGeneration],
+ * deleted rows are found by comparing ids, only when row count shows some were deleted.
+ * Index is rebuilt whenever [MediaStore.getVersion] changes, as generations are reset then.
+ * Generations aren't available below R, so media store is queried fully every time there.
+ */
+object MediaStoreIndex {
+
+    private val log: Logger = LoggerFactory.getLogger(MediaStoreIndex::class.java)
+
+    // syncs of collections hold the read side, clearing whole index on a version change takes
+    // the write side, so that it never interleaves with a collection sync
+    private val indexLock = ReentrantReadWriteLock()
+    private val collectionLocks = HashMap<Int, Any>()
+
+    // entries of each collection as last synced, so that a listing doesn't read whole
+    // collection back from database every time
+    private val cachedEntries = HashMap<Int, TreeMap<Long, MediaStoreIndexEntry>>()
+
+    /**
+     * Returns all media of [collection] after applying changes since last sync.
+     * [query] lists rows of [contentUri] matching [baseSelection] and given additional selection,
+     * null selection meaning all rows.
+     */
+    fun sync(
+        context: Context,
+        collection: Int,
+        contentUri: Uri,
+        baseSelection: String?,
+        query: (selection: String?, selectionValues: Array<String?>?) -> List<MediaFileInfo>
+    ): List<MediaFileInfo> {
+        if (VERSION.SDK_INT < VERSION_CODES.R) {
+            return query.invoke(null, null)
+        }
+        if (isVersionChanged(context)) {
+            indexLock.write {
+                // checked again, another sync may have cleared the index meanwhile
+                if (isVersionChanged(context)) {
+                    clearIndex(context)
+                }
+            }
+        }
+        // each collection syncs under it's own lock, so that different collections can be
+        // listed concurrently while concurrent syncs of same collection wait for each other
+        val collectionLock = synchronized(collectionLocks) {
+            collectionLocks.getOrPut(collection) { Any() }
+        }
+        indexLock.read {
+            synchronized(collectionLock) {
+                return syncIndex(context, collection, contentUri, baseSelection, query)
+            }
+        }
+    }
+
+    @RequiresApi(VERSION_CODES.R)
+    private fun isVersionChanged(context: Context): Boolean {
+        return MediaStore.getVersion(context) != context.getAppCommonSharedPreferences()
+            .getString(PreferencesConstants.KEY_MEDIA_STORE_INDEX_VERSION, null)
+    }
+
+    /**
+     * Clears whole index and generations of all collections, as they're reset on a
+     * [MediaStore.getVersion] change
+     */
+    @RequiresApi(VERSION_CODES.R)
+    private fun clearIndex(context: Context) {
+        val prefs = context.getAppCommonSharedPreferences()
+        val version = MediaStore.getVersion(context)
+        log.info("media store version changed to {}, rebuilding index", version)
+        AppDatabase.getInstance(context).mediaStoreIndexEntryDao().deleteAll()
+        synchronized(cachedEntries) {
+            cachedEntries.clear()
+        }
+        val editor = prefs.edit()
+        prefs.all.keys.filter {
+            it.startsWith(PreferencesConstants.KEY_MEDIA_STORE_INDEX_GENERATION) ||
+                it.startsWith(PreferencesConstants.KEY_MEDIA_STORE_INDEX_COUNT)
+        }.forEach {
+            editor.remove(it)
+        }
+        editor.putString(PreferencesConstants.KEY_MEDIA_STORE_INDEX_VERSION, version).apply()
+    }
+
+    @RequiresApi(VERSION_CODES.R)
+    private fun syncIndex(
+        context: Context,
+        collection: Int,
+        contentUri: Uri,
+        baseSelection: String?,
+        query: (selection: String?, selectionValues: Array<String?>?) -> List<MediaFileInfo>
+    ): List<MediaFileInfo> {
+        val prefs = context.getAppCommonSharedPreferences()
+        val appDatabase = AppDatabase.getInstance(context)
+        val dao = appDatabase.mediaStoreIndexEntryDao()
+        val generationKey = "${PreferencesConstants.KEY_MEDIA_STORE_INDEX_GENERATION}_$collection"
+        val countKey = "${PreferencesConstants.KEY_MEDIA_STORE_INDEX_COUNT}_$collection"
+        val lastGeneration = prefs.getLong(generationKey, -1)
+        // read before querying, so that rows changed while querying are fetched again next time
+        val generation = MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL)
+        val mediaCount = queryMediaCount(context, contentUri, baseSelection, null)
+        if (lastGeneration == -1L) {
+            val entries = query.invoke(null, null).map { MediaStoreIndexEntry(collection, it) }
+            appDatabase.runInTransaction {
+                dao.deleteByCollection(collection)
+                dao.insertAll(entries)
+            }
+            val indexedEntries = entries.associateByTo(TreeMap()) { it.mediaId }
+            synchronized(cachedEntries) {
+                cachedEntries[collection] = indexedEntries
+            }
+            prefs.edit().putLong(generationKey, generation).putInt(countKey, mediaCount).apply()
+            log.info("indexed {} media in collection {}", entries.size, collection)
+            return indexedEntries.values.map { it.toMediaFileInfo(context) }
+        }
+
+        val indexedEntries = synchronized(cachedEntries) {
+            cachedEntries.getOrPut(collection) {
+                dao.findByCollection(collection).associateByTo(TreeMap()) { it.mediaId }
+            }
+        }
+        var changedList = emptyList<MediaFileInfo>()
+        val removedIds = HashSet<Long>()
+        var addedCount = 0
+        if (generation != lastGeneration) {
+            val changedSelection = "${MediaStore.MediaColumns.GENERATION_MODIFIED} > ?"
+            val generationArgs = arrayOf<String?>(lastGeneration.toString())
+            changedList = query.invoke(changedSelection, generationArgs)
+            // changed rows left out by query (eg. no longer passing it's filters) are dropped
+            val listedIds = changedList.map { it.id }.toHashSet()
+            queryMediaIds(
+                context, contentUri, and(baseSelection, changedSelection), generationArgs
+            ).filterTo(removedIds) {
+                !listedIds.contains(it) && indexedEntries.containsKey(it)
+            }
+            addedCount = queryMediaCount(
+                context, contentUri,
+                and(baseSelection, "${MediaStore.MediaColumns.GENERATION_ADDED} > ?"),
+                generationArgs
+            )
+        }
+        // deletions don't show up in generations, but any of them leaves media store with
+        // fewer rows than last seen plus the ones added since, only then ids are compared
+        if (mediaCount != prefs.getInt(countKey, -1) + addedCount) {
+            val mediaIds = queryMediaIds(context, contentUri, baseSelection, null)
+            indexedEntries.keys.filterTo(removedIds) { !mediaIds.contains(it) }
+        }
+        if (changedList.isNotEmpty() || removedIds.isNotEmpty()) {
+            val changedEntries = changedList.map { MediaStoreIndexEntry(collection, it) }
+            appDatabase.runInTransaction {
+                dao.insertAll(changedEntries)
+                removedIds.chunked(AppDatabase.BATCH_SIZE).forEach {
+                    dao.deleteByMediaIds(collection, it)
+                }
+            }
+            removedIds.forEach { indexedEntries.remove(it) }
+            changedEntries.forEach { indexedEntries[it.mediaId] = it }
+            log.info(
+                "synced {} changed and {} removed media in collection {}",
+                changedList.size, removedIds.size, collection
+            )
+        }
+        prefs.edit().putLong(generationKey, generation).putInt(countKey, mediaCount).apply()
+        return indexedEntries.values.map { it.toMediaFileInfo(context) }
+    }
+
+    private fun and(selection: String?, otherSelection: String): String {
+        return if (selection.isNullOrBlank()) otherSelection else "$selection AND $otherSelection"
+    }
+
+    private fun queryMediaCount(
+        context: Context,
+        contentUri: Uri,
+        selection: String?,
+        selectionArgs: Array<String?>?
+    ): Int {
+        return context.contentResolver.query(
+            contentUri, arrayOf(MediaStore.MediaColumns._ID),
+            selection, selectionArgs, null
+        )?.use { it.count } ?: 0
+    }
+
+    private fun queryMediaIds(
+        context: Context,
+        contentUri: Uri,
+        selection: String?,
+        selectionArgs: Array<String?>?
+    ): Set<Long> {
+        val mediaIds = HashSet<Long>()
+        context.contentResolver.query(
+            contentUri, arrayOf(MediaStore.MediaColumns._ID),
+            selection, selectionArgs, null
+        )?.use {
+            cursor ->
+            while (cursor.moveToNext()) {
+                mediaIds.add(cursor.getLong(0))
+            }
+        }
+        return mediaIds
+    }
+}
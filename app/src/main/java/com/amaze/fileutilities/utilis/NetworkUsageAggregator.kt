@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.app.usage.NetworkStats
+import android.app.usage.NetworkStatsManager
+import android.content.Context
+import android.net.ConnectivityManager
+import android.os.Build
+import android.util.SparseLongArray
+import androidx.annotation.RequiresApi
+import com.amaze.fileutilities.home_page.database.AppDatabase
+import com.amaze.fileutilities.home_page.database.NetworkUsage
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * Network bytes of all apps keyed by uid over a rolling window of last [WINDOW_PERIODS] weeks,
+ * about as long as system keeps network stats of uids, using one
+ * [NetworkStatsManager.querySummary] per network type instead of querying details of every uid.
+ * Usage of each completed week is persisted in [NetworkUsage], so that following runs only
+ * query weeks completed since, and the weeks still growing. Weeks falling out of the window are
+ * deleted, as is usage of uids no longer installed, so that an app later installed with a
+ * reused uid doesn't inherit it.
+ */
+@RequiresApi(Build.VERSION_CODES.M)
+object NetworkUsageAggregator {
+
+    private val log: Logger = LoggerFactory.getLogger(NetworkUsageAggregator::class.java)
+
+    // duration of buckets in which system persists uid network stats
+    private const val BUCKET_DURATION_MILLIS = 2 * 60 * 60 * 1000L
+    private const val PERIOD_MILLIS = 7 * 24 * 60 * 60 * 1000L
+    private const val WINDOW_PERIODS = 13
+
+    @Synchronized
+    fun getNetworkBytesByUid(context: Context): SparseLongArray {
+        val dao = AppDatabase.getInstance(context).networkUsageDao()
+        val now = System.currentTimeMillis()
+        val currentPeriodStart = now - now % PERIOD_MILLIS
+        val windowStart = currentPeriodStart - (WINDOW_PERIODS - 1) * PERIOD_MILLIS
+        dao.deleteOlderThan(windowStart)
+        InstalledAppsRepository.getInstalledUids(context)?.let {
+            installedUids ->
+            dao.findAppUids().filter { !installedUids.contains(it) }
+                .chunked(AppDatabase.BATCH_SIZE).forEach {
+                    dao.deleteByAppUids(it)
+                }
+        }
+
+        // last buckets of a period may still be growing for a while after it ends
+        val settledUntil = now - BUCKET_DURATION_MILLIS
+        var periodStart = maxOf(
+            dao.findLastPeriodStart()?.plus(PERIOD_MILLIS) ?: windowStart,
+            windowStart
+        )
+        while (periodStart + PERIOD_MILLIS <= settledUntil) {
+            val periodUsage = querySummary(context, periodStart, periodStart + PERIOD_MILLIS)
+            val networkUsages = ArrayList<NetworkUsage>(periodUsage.size())
+            for (i in 0 until periodUsage.size()) {
+                networkUsages.add(
+                    NetworkUsage(periodUsage.keyAt(i), periodStart, periodUsage.valueAt(i))
+                )
+            }
+            dao.insertAll(networkUsages)
+            periodStart += PERIOD_MILLIS
+        }
+
+        val totals = SparseLongArray()
+        dao.findTotalsSince(windowStart).forEach {
+            totals.put(it.appUid, it.networkBytes)
+        }
+        val recent = querySummary(context, periodStart, now)
+        for (i in 0 until recent.size()) {
+            val appUid = recent.keyAt(i)
+            totals.put(appUid, totals.get(appUid, 0L) + recent.valueAt(i))
+        }
+        return totals
+    }
+
+    /**
+     * Bytes received and sent over mobile and wifi between [startTime] and [endTime] by uid
+     */
+    private fun querySummary(context: Context, startTime: Long, endTime: Long): SparseLongArray {
+        val networkStatsManager =
+            context.getSystemService(Context.NETWORK_STATS_SERVICE) as NetworkStatsManager
+        val result = SparseLongArray()
+        val bucket = NetworkStats.Bucket()
+        val networkTypes = arrayOf(ConnectivityManager.TYPE_MOBILE, ConnectivityManager.TYPE_WIFI)
+        for (networkType in networkTypes) {
+            val networkStats = try {
+                networkStatsManager.querySummary(
+                    networkType,
+                    Utils.getSubscriberId(context, networkType),
+                    startTime, endTime
+                )
+            } catch (e: Exception) {
+                log.info("failed to query network summary for type {}", networkType, e)
+                continue
+            } ?: continue
+            try {
+                while (networkStats.hasNextBucket()) {
+                    networkStats.getNextBucket(bucket)
+                    result.put(
+                        bucket.uid,
+                        result.get(bucket.uid, 0L) + bucket.rxBytes + bucket.txBytes
+                    )
+                }
+            } finally {
+                networkStats.close()
+            }
+        }
+        return result
+    }
+}
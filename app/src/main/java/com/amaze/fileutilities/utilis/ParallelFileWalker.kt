@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Walks a directory tree listing directories concurrently.
+ * Every sub directory is launched as it's own coroutine on [Dispatchers.IO], so idle workers pick
+ * up pending directories instead of waiting on a single deep branch, while at most [parallelism]
+ * directories are listed at any given time.
+ * Files and directories deeper than [maxDepth] are skipped, root is at depth 0.
+ * Walk stops listing new directories as soon as [isCancelled] returns true.
+ */
+class ParallelFileWalker(
+    private val parallelism: Int = DEFAULT_WALKER_PARALLELISM,
+    private val maxDepth: Int = Int.MAX_VALUE,
+    private val isCancelled: () -> Boolean
+) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(ParallelFileWalker::class.java)
+
+        const val DEFAULT_WALKER_PARALLELISM = 4
+        const val DEFAULT_HASHING_PARALLELISM = 2
+        const val DEFAULT_HASHING_QUEUE_CAPACITY = 256
+        private const val PROGRESS_REPORT_INTERVAL_MILLIS = 1000L
+    }
+
+    /**
+     * Suspends until whole tree under [root] is walked.
+     * [onFile] may suspend (eg. when next stage of pipeline is full), it's called concurrently
+     * from multiple coroutines, as is [onUnreadableDirectory].
+     */
+    suspend fun walk(
+        root: File,
+        onUnreadableDirectory: (directory: File, depth: Int) -> Unit,
+        onFile: suspend (file: File, depth: Int) -> Unit
+    ) {
+        val semaphore = Semaphore(parallelism)
+        coroutineScope {
+            if (root.isDirectory) {
+                launchDirectoryWalk(root, 0, semaphore, onUnreadableDirectory, onFile)
+            } else {
+                onFile.invoke(root, 0)
+            }
+        }
+    }
+
+    private fun CoroutineScope.launchDirectoryWalk(
+        directory: File,
+        depth: Int,
+        semaphore: Semaphore,
+        onUnreadableDirectory: (directory: File, depth: Int) -> Unit,
+        onFile: suspend (file: File, depth: Int) -> Unit
+    ) {
+        launch(Dispatchers.IO) {
+            if (isCancelled.invoke()) {
+                return@launch
+            }
+            val filesInDir = semaphore.withPermit {
+                directory.listFiles()
+            }
+            if (filesInDir == null) {
+                onUnreadableDirectory.invoke(directory, depth)
+                return@launch
+            }
+            if (depth + 1 > maxDepth) {
+                return@launch
+            }
+            for (currFile in filesInDir) {
+                if (isCancelled.invoke()) {
+                    return@launch
+                }
+                if (currFile.isDirectory) {
+                    launchDirectoryWalk(
+                        currFile, depth + 1, semaphore,
+                        onUnreadableDirectory, onFile
+                    )
+                } else {
+                    onFile.invoke(currFile, depth + 1)
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread safe counters for files listed and bytes hashed during a walk, reports a
+     * [Snapshot] of them to [onReport] at most once per second, on the calling worker thread.
+     */
+    class Progress(private val onReport: (Snapshot) -> Unit = {}) {
+        private val startTime = System.currentTimeMillis()
+        private val lastReportTime = AtomicLong(startTime)
+        private val filesListed = AtomicLong()
+        private val filesHashed = AtomicLong()
+        private val bytesHashed = AtomicLong()
+
+        val filesListedCount: Long
+            get() = filesListed.get()
+        val filesHashedCount: Long
+            get() = filesHashed.get()
+        val bytesHashedCount: Long
+            get() = bytesHashed.get()
+
+        /**
+         * Files listed per second since walk started
+         */
+        val filesPerSecond: Long
+            get() = filesListed.get() * 1000 / elapsedMillis()
+
+        /**
+         * Bytes hashed per second since walk started
+         */
+        val bytesPerSecond: Long
+            get() = bytesHashed.get() * 1000 / elapsedMillis()
+
+        fun onFileListed() {
+            filesListed.incrementAndGet()
+            maybeReport()
+        }
+
+        fun onFileHashed(length: Long) {
+            filesHashed.incrementAndGet()
+            bytesHashed.addAndGet(length)
+            maybeReport()
+        }
+
+        /**
+         * Reports final counters, to be called once walk is complete
+         */
+        fun finish() {
+            report()
+        }
+
+        private fun elapsedMillis(): Long {
+            return (System.currentTimeMillis() - startTime).coerceAtLeast(1)
+        }
+
+        private fun maybeReport() {
+            val now = System.currentTimeMillis()
+            val lastReport = lastReportTime.get()
+            if (now - lastReport >= PROGRESS_REPORT_INTERVAL_MILLIS &&
+                lastReportTime.compareAndSet(lastReport, now)
+            ) {
+                report()
+            }
+        }
+
+        private fun report() {
+            val snapshot = Snapshot(
+                filesListedCount, filesHashedCount, bytesHashedCount,
+                filesPerSecond, bytesPerSecond
+            )
+            log.debug("walk progress {}", snapshot)
+            onReport.invoke(snapshot)
+        }
+
+        /**
+         * Immutable copy of [Progress] counters, safe to hand over to other threads
+         */
+        data class Snapshot(
+            val filesListed: Long,
+            val filesHashed: Long,
+            val bytesHashed: Long,
+            val filesPerSecond: Long,
+            val bytesPerSecond: Long
+        )
+    }
+}
@@ -58,6 +58,14 @@ class PreferencesConstants {
         const val KEY_TRASH_BIN_RETENTION_NUM_OF_FILES = "trash_bin_retention_num_of_files"
         const val KEY_TRASH_BIN_CLEANUP_INTERVAL_HOURS = "trash_bin_cleanup_interval_hours"
         const val KEY_CONFIRM_BEFORE_EXIT = "pref_confirm_before_exit"
+        const val KEY_IMAGE_ANALYSIS_PASS_DATE = "image_analysis_pass_date"
+        const val KEY_IMAGE_ANALYSIS_CURSOR_DATE = "image_analysis_cursor_date"
+        const val KEY_IMAGE_ANALYSIS_CURSOR_PATH = "image_analysis_cursor_path"
+        const val KEY_MEDIA_STORE_INDEX_VERSION = "media_store_index_version"
+
+        // suffixed by collection of media store index
+        const val KEY_MEDIA_STORE_INDEX_GENERATION = "media_store_index_generation"
+        const val KEY_MEDIA_STORE_INDEX_COUNT = "media_store_index_count"
 
         const val VAL_SEARCH_DUPLICATES_MEDIA_STORE = 0
         const val VAL_SEARCH_DUPLICATES_INTERNAL_SHALLOW = 1
@@ -31,8 +31,9 @@ import java.time.ZonedDateTime
 import java.util.Date
 
 /**
- * A [CoroutineWorker] to insert the size of each app into the database and
- * delete entries that are older than [PreferencesConstants.MAX_LARGE_SIZE_DIFF_APPS_DAYS] days.
+ * A [CoroutineWorker] to insert the size of each app into the database, if it changed since
+ * last run, and delete entries that are older than
+ * [PreferencesConstants.MAX_LARGE_SIZE_DIFF_APPS_DAYS] days or of apps no longer installed.
  */
 class QueryAppSizeWorker(
     context: Context,
@@ -56,21 +57,30 @@ class QueryAppSizeWorker(
         } else {
             packageManager.getInstalledApplications(PackageManager.GET_META_DATA)
         }
-        // Find the current size of each app and store them in the database
+        // Find the current size of each app and store changed ones in a single transaction
+        val sizes = HashMap<String, Long>()
         for (appInfo in allApps) {
-            val currentSize = Utils.findApplicationInfoSize(applicationContext, appInfo)
-            val timestamp = Date.from(ZonedDateTime.now().toInstant())
-            appStorageStatsDao.insert(appInfo.packageName, timestamp, currentSize)
+            if (isStopped) {
+                return Result.retry()
+            }
+            sizes[appInfo.packageName] = Utils.findApplicationInfoSize(applicationContext, appInfo)
         }
+        appStorageStatsDao.insertChanged(sizes, Date.from(ZonedDateTime.now().toInstant()))
 
-        // Delete all AppStorageStats entries that are older than MAX_LARGE_SIZE_DIFF_APPS_DAYS
+        // Delete all AppStorageStats entries that are older than MAX_LARGE_SIZE_DIFF_APPS_DAYS,
+        // latest entry before that is kept as it's the size at start of analysis period
         val minDate = Date.from(
             ZonedDateTime
                 .now()
                 .minusDays(PreferencesConstants.MAX_LARGE_SIZE_DIFF_APPS_DAYS.toLong())
                 .toInstant()
         )
-        appStorageStatsDao.deleteOlderThan(minDate)
+        appStorageStatsDao.deleteOlderThanKeepingLatest(minDate)
+        appStorageStatsDao.findPackageNames().filter {
+            !sizes.containsKey(it)
+        }.chunked(AppDatabase.BATCH_SIZE).forEach {
+            appStorageStatsDao.deleteByPackageNames(it)
+        }
 
         return Result.success()
     }
@@ -38,7 +38,6 @@ import android.content.Intent
 import android.content.pm.ActivityInfo
 import android.content.pm.ApplicationInfo
 import android.content.pm.IPackageStatsObserver
-import android.content.pm.PackageInfo
 import android.content.pm.PackageManager
 import android.content.pm.PackageStats
 import android.content.res.Configuration
@@ -83,9 +82,13 @@ import androidx.core.graphics.drawable.toBitmap
 import androidx.core.view.isVisible
 import androidx.palette.graphics.Palette
 import androidx.recyclerview.widget.GridLayoutManager
+import androidx.work.Constraints
 import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
 import androidx.work.PeriodicWorkRequestBuilder
 import androidx.work.WorkManager
+import androidx.work.workDataOf
 import com.abedelazizshe.lightcompressorlibrary.VideoQuality
 import com.amaze.fileutilities.BuildConfig
 import com.amaze.fileutilities.R
@@ -1067,18 +1070,6 @@ class Utils {
                 )
         }
 
-        /** Check if an App is signed by system or not.  */
-        fun isSignedBySystem(piApp: PackageInfo?, piSys: PackageInfo?): Boolean {
-            if (piApp == null || piSys == null) {
-                return false
-            }
-            return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                piApp.signingInfo != null && piSys.signingInfo == piApp.signingInfo
-            } else {
-                piApp.signatures != null && piSys.signatures[0] == piApp.signatures[0]
-            }
-        }
-
         fun openExternalApp(context: Context, packageName: String): Boolean {
             try {
                 val it = context.packageManager.getLaunchIntentForPackage(packageName)
@@ -1548,6 +1539,68 @@ class Utils {
             )
         }
 
+        /**
+         * Schedules image analysis to run while device is charging and idle,
+         * resuming from last checkpoint if a previous run was stopped
+         */
+        fun scheduleImageAnalysisWorker(context: Context, policy: ExistingWorkPolicy) {
+            val constraints = Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                constraints.setRequiresDeviceIdle(true)
+            }
+            val workRequest = OneTimeWorkRequestBuilder<ImageAnalysisWorker>()
+                .setConstraints(constraints.build())
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                ImageAnalysisWorker.NAME, policy, workRequest
+            )
+        }
+
+        /**
+         * Schedules extracting text of documents for content search to run while device is
+         * charging and idle, see [DocumentContentWorker]
+         */
+        fun scheduleDocumentContentWorker(context: Context, policy: ExistingWorkPolicy) {
+            val constraints = Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                constraints.setRequiresDeviceIdle(true)
+            }
+            val workRequest = OneTimeWorkRequestBuilder<DocumentContentWorker>()
+                .setConstraints(constraints.build())
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                DocumentContentWorker.NAME, policy, workRequest
+            )
+        }
+
+        /**
+         * Schedules processing waveform samples of [uris] ahead of playback, replaces any
+         * pending run for previous track, see [WaveformPrecomputeWorker]
+         */
+        fun scheduleWaveformPrecomputeWorker(context: Context, uris: List<Uri>) {
+            if (uris.isEmpty()) {
+                return
+            }
+            val constraints = Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+            val workRequest = OneTimeWorkRequestBuilder<WaveformPrecomputeWorker>()
+                .setConstraints(constraints.build())
+                .setInputData(
+                    workDataOf(
+                        WaveformPrecomputeWorker.KEY_URIS to uris.map { it.toString() }
+                            .toTypedArray()
+                    )
+                )
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                WaveformPrecomputeWorker.NAME, ExistingWorkPolicy.REPLACE, workRequest
+            )
+        }
+
         fun convertMillisToHoursMinutes(millis: Long): String {
             val hours = TimeUnit.MILLISECONDS.toHours(millis)
             val minutes = TimeUnit.MILLISECONDS.toMinutes(millis) % 60
@@ -1771,7 +1824,7 @@ class Utils {
             return txBytes
         }
 
-        private fun getSubscriberId(context: Context, networkType: Int): String? {
+        fun getSubscriberId(context: Context, networkType: Int): String? {
             try {
                 if (ConnectivityManager.TYPE_MOBILE == networkType) {
                     val tm = context.getSystemService(Context.TELEPHONY_SERVICE) as TelephonyManager
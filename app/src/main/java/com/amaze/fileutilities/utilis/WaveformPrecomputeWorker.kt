@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2021-2024 Arpit Khurana <arpitkh96@gmail.com>, Vishal Nehra <vishalmeham2@gmail.com>,
+ * Emmanuel Messulam<emmanuelbendavid@gmail.com>, Raymond Lai <airwave209gt at gmail.com> and Contributors.
+ *
+ * This file is part of Amaze File Utilities.
+ *
+ * Amaze File Utilities is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.amaze.fileutilities.utilis
+
+import android.content.Context
+import android.net.Uri
+import androidx.work.CoroutineWorker
+import androidx.work.WorkerParameters
+import com.amaze.fileutilities.audio_player.WaveformCache
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * A [CoroutineWorker] processing waveform samples of tracks queued next in audio player into
+ * [WaveformCache], so that waveform seekbar shows up right away once they're played.
+ */
+class WaveformPrecomputeWorker(
+    context: Context,
+    workerParameters: WorkerParameters
+) : CoroutineWorker(context, workerParameters) {
+
+    companion object {
+        private val log: Logger = LoggerFactory.getLogger(WaveformPrecomputeWorker::class.java)
+
+        const val NAME: String = "waveform_precompute_worker"
+        const val KEY_URIS = "uris"
+
+        // tracks after the one currently playing to precompute
+        const val UPCOMING_TRACKS_COUNT = 2
+    }
+
+    override suspend fun doWork(): Result {
+        val uris = inputData.getStringArray(KEY_URIS) ?: return Result.success()
+        // resolving content uris and decoding audio block, keep them off the default dispatcher
+        withContext(Dispatchers.IO) {
+            for (uri in uris) {
+                if (isStopped) {
+                    break
+                }
+                val file = Uri.parse(uri).getFileFromUri(applicationContext)
+                if (file == null || !file.canRead() ||
+                    WaveformCache.isCached(applicationContext, file)
+                ) {
+                    continue
+                }
+                if (WaveformCache.getSample(applicationContext, file) == null) {
+                    log.debug("failed to precompute waveform for {}", uri)
+                }
+            }
+        }
+        return Result.success()
+    }
+}
@@ -38,9 +38,7 @@ class CloudStreamerServiceConnection(
         specificService = binder.service
         specificService?.let {
             service ->
-            activityRef.get()?.apply {
-                this.cloudStreamerService = service
-            }
+            activityRef.get()?.onCloudStreamerServiceConnected(service)
         }
     }
 
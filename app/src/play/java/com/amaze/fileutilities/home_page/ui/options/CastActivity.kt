@@ -63,6 +63,9 @@ abstract class CastActivity :
     var cloudStreamerService: CloudStreamerService? = null
     private var cloudStreamer: CloudStreamer? = null
 
+    // cast request made before streamer service was bound, played once it's bound
+    private var pendingCastPlayback: Pair<MediaFileInfo, Int>? = null
+
     private lateinit var streamerServiceConnection: ServiceConnection
 
     abstract fun getFilesModel(): FilesViewModel
@@ -264,85 +267,91 @@ abstract class CastActivity :
         }
     }
 
-    private fun submitStreamSrc(mediaFileInfo: MediaFileInfo) {
-        cloudStreamerService?.setStreamSrc(mediaFileInfo)
+    fun onCloudStreamerServiceConnected(service: CloudStreamerService) {
+        cloudStreamerService = service
+        pendingCastPlayback?.let {
+            (mediaFileInfo, mediaType) ->
+            pendingCastPlayback = null
+            startCastPlayback(mediaFileInfo, mediaType)
+        }
+    }
+
+    private fun submitStreamSrc(mediaFileInfo: MediaFileInfo): String? {
+        return cloudStreamerService?.registerStreamSrc(mediaFileInfo)
     }
 
     private fun startCastPlayback(mediaFileInfo: MediaFileInfo, mediaType: Int) {
         initCastContext()
         if (cloudStreamerService == null) {
+            // played once service is started and bound, see onCloudStreamerServiceConnected
+            pendingCastPlayback = Pair(mediaFileInfo, mediaType)
             CloudStreamerService.runService(this)
+            return
         }
         val remoteMediaClient = mCastSession?.remoteMediaClient ?: return
-        submitStreamSrc(mediaFileInfo)
+        val streamPath = submitStreamSrc(mediaFileInfo) ?: return
         getFilesModel().wifiIpAddress?.let {
             ipAddress ->
-            mediaFileInfo.getContentUri(this)?.let {
-                mediaFileUri ->
-                val uri = Uri.parse(
-                    "http://$ipAddress:${CloudStreamer.PORT}" +
-                        "${mediaFileUri.encodedPath}"
-                )
-                val metadata: MediaMetadata
-                var mediaInfo: MediaInfo? = null
-                when (mediaType) {
-                    MediaFileAdapter.MEDIA_TYPE_IMAGES -> {
-                        metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_PHOTO)
-                        metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
-                        metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
-
-                        mediaInfo = MediaInfo.Builder(uri.toString())
-                            .setStreamType(MediaInfo.STREAM_TYPE_NONE)
-                            .setMetadata(metadata)
-                            .setContentType(MimeTypes.IMAGE_JPEG)
-                            .build()
-                    }
-                    MediaFileAdapter.MEDIA_TYPE_AUDIO -> {
-                        metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_MUSIC_TRACK)
-                        metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
-                        metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
+            val uri = Uri.parse("http://$ipAddress:${CloudStreamer.PORT}$streamPath")
+            val metadata: MediaMetadata
+            var mediaInfo: MediaInfo? = null
+            when (mediaType) {
+                MediaFileAdapter.MEDIA_TYPE_IMAGES -> {
+                    metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_PHOTO)
+                    metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
+                    metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
+
+                    mediaInfo = MediaInfo.Builder(uri.toString())
+                        .setStreamType(MediaInfo.STREAM_TYPE_NONE)
+                        .setMetadata(metadata)
+                        .setContentType(MimeTypes.IMAGE_JPEG)
+                        .build()
+                }
+                MediaFileAdapter.MEDIA_TYPE_AUDIO -> {
+                    metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_MUSIC_TRACK)
+                    metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
+                    metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
 //                    metadata.addImage(WebImage(Uri.fromFile()))
-                        val duration = mediaFileInfo.extraInfo?.audioMetaData?.duration ?: 0
+                    val duration = mediaFileInfo.extraInfo?.audioMetaData?.duration ?: 0
 
-                        mediaInfo = MediaInfo.Builder(uri.toString())
-                            .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
-                            .setMetadata(metadata)
+                    mediaInfo = MediaInfo.Builder(uri.toString())
+                        .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
+                        .setMetadata(metadata)
 //                        .setStreamDuration(duration)
-                            .setContentType(MimeTypes.BASE_TYPE_AUDIO)
-                            .build()
-                    }
-                    MediaFileAdapter.MEDIA_TYPE_VIDEO -> {
-                        metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_MOVIE)
-                        metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
-                        metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
-
-                        val duration = mediaFileInfo.extraInfo?.audioMetaData?.duration ?: 0
-
-                        mediaInfo = MediaInfo.Builder(uri.toString())
-                            .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
-                            .setMetadata(metadata)
-                            .setContentType(MimeTypes.BASE_TYPE_VIDEO)
-                            //            .setStreamDuration(1000 * duration)
-                            .build()
-                    }
-                    MediaFileAdapter.MEDIA_TYPE_DOCS -> {
-                        metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_GENERIC)
-                        metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
-                        metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
-
-                        mediaInfo = MediaInfo.Builder(uri.toString())
-                            .setStreamType(MediaInfo.STREAM_TYPE_NONE)
-                            .setMetadata(metadata)
-                            .setContentType(MimeTypes.BASE_TYPE_APPLICATION)
-                            .build()
-                    }
+                        .setContentType(MimeTypes.BASE_TYPE_AUDIO)
+                        .build()
+                }
+                MediaFileAdapter.MEDIA_TYPE_VIDEO -> {
+                    metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_MOVIE)
+                    metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
+                    metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
+
+                    val duration = mediaFileInfo.extraInfo?.audioMetaData?.duration ?: 0
+
+                    mediaInfo = MediaInfo.Builder(uri.toString())
+                        .setStreamType(MediaInfo.STREAM_TYPE_BUFFERED)
+                        .setMetadata(metadata)
+                        .setContentType(MimeTypes.BASE_TYPE_VIDEO)
+                        //            .setStreamDuration(1000 * duration)
+                        .build()
+                }
+                MediaFileAdapter.MEDIA_TYPE_DOCS -> {
+                    metadata = MediaMetadata(MediaMetadata.MEDIA_TYPE_GENERIC)
+                    metadata.putString(MediaMetadata.KEY_TITLE, mediaFileInfo.title)
+                    metadata.putString(MediaMetadata.KEY_SUBTITLE, mediaFileInfo.path)
+
+                    mediaInfo = MediaInfo.Builder(uri.toString())
+                        .setStreamType(MediaInfo.STREAM_TYPE_NONE)
+                        .setMetadata(metadata)
+                        .setContentType(MimeTypes.BASE_TYPE_APPLICATION)
+                        .build()
                 }
-
-                remoteMediaClient.load(
-                    MediaLoadRequestData
-                        .Builder().setMediaInfo(mediaInfo).setAutoplay(true).build()
-                )
             }
+
+            remoteMediaClient.load(
+                MediaLoadRequestData
+                    .Builder().setMediaInfo(mediaInfo).setAutoplay(true).build()
+            )
         }
         /*remoteMediaClient.registerCallback(object : RemoteMediaClient.Callback() {
             override fun onStatusUpdated() {
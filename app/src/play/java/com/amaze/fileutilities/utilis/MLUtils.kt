@@ -20,19 +20,21 @@
 
 package com.amaze.fileutilities.utilis
 
+import android.graphics.Bitmap
+import com.google.android.gms.tasks.Tasks
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.face.FaceDetection
 import com.google.mlkit.vision.face.FaceDetectorOptions
-import com.google.mlkit.vision.text.Text
 import com.google.mlkit.vision.text.TextRecognition
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import java.io.IOException
 import java.util.concurrent.TimeUnit
 
 object MLUtils {
 
+    private const val PROCESS_TIMEOUT_SECONDS = 30L
+
     private val highAccuracyOpts = FaceDetectorOptions.Builder()
         .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
         .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
@@ -41,179 +43,88 @@ object MLUtils {
     private val textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS)
     private var log: Logger = LoggerFactory.getLogger(MLUtils::class.java)
 
-    fun processImageFeatures(path: String, successCallback: (ImgUtils.ImageFeatures) -> Unit) {
-        getImageFeatures(
-            path
-        ) { isSuccess, imageFeatures ->
-            if (isSuccess) {
-                var features = ImgUtils.ImageFeatures()
-                imageFeatures?.run {
-                    features = this
-                }
-                successCallback.invoke(features)
-            }
+    /**
+     * Blocks until text is recognized in [bitmap], must not be called from main thread.
+     * Returns false for images too small to recognize text or if recognition fails.
+     */
+    fun isImageMeme(bitmap: Bitmap): Boolean {
+        if (bitmap.width < 32 || bitmap.height < 32) {
+            log.info("skip extract text due to small image size")
+            return false
         }
-    }
-
-    fun isImageMeme(
-        path: String,
-        callback: (isMeme: Boolean) -> Unit
-    ) {
-        TimeUnit.SECONDS.sleep(1L)
-        extractTextFromImg(path) { isSuccess, extractedText ->
-            if (isSuccess) {
-                extractedText?.run {
-                    for (block in textBlocks) {
-                        for (line in block.lines) {
-                            for (element in line.elements) {
-                                val elementText = element.text
-                                if (elementText.matches(ImgUtils.wordRegex) &&
-                                    elementText.length > 10 &&
-                                    !elementText.contains("shot on", true)
-                                ) {
-                                    callback.invoke(true)
-                                    return@extractTextFromImg
-                                }
-                            }
+        try {
+            val extractedText = Tasks.await(
+                textRecognizer.process(bitmap, 0),
+                PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS
+            )
+            log.debug(extractedText.text)
+            for (block in extractedText.textBlocks) {
+                for (line in block.lines) {
+                    for (element in line.elements) {
+                        val elementText = element.text
+                        if (elementText.matches(ImgUtils.wordRegex) &&
+                            elementText.length > 10 &&
+                            !elementText.contains("shot on", true)
+                        ) {
+                            return true
                         }
                     }
                 }
-                callback.invoke(false)
-            } else {
-                callback.invoke(false)
             }
+        } catch (e: Exception) {
+            log.warn("extract text from img failure", e)
         }
+        return false
     }
 
-    private fun extractTextFromImg(
-        path: String,
-        callback: ((isSuccess: Boolean, extractedText: Text?) -> Unit)?
-    ) {
-        try {
-//                val image = InputImage.fromFilePath(context, uri)
-            val mat = ImgUtils.readImage(path)
-            if (mat == null) {
-                log.warn("Failure to extract text from input image")
-                callback?.invoke(false, null)
-                return
-            }
-            val resizeimage =
-                ImgUtils.resize(mat, ImgUtils.getGenericWidth(mat), ImgUtils.getGenericHeight(mat))
-            val bitmap = ImgUtils.convertMatToBitmap(resizeimage)
-            if (bitmap != null) {
-                if (bitmap.width < 32 || bitmap.height < 32) {
-                    log.info("skip extract text due to small image size")
-                    callback?.invoke(true, null)
-                    return
-                }
-                val result = textRecognizer.process(bitmap, 0)
-                    .addOnSuccessListener { visionText ->
-                        // Task completed successfully
-                        log.debug(visionText.text)
-                        mat.release()
-                        resizeimage.release()
-                        callback?.invoke(true, visionText)
-                    }
-                    .addOnFailureListener { e ->
-                        // Task failed with an exception
-                        // ...
-                        log.warn("extract text from img failure", e)
-                        mat.release()
-                        resizeimage.release()
-                        callback?.invoke(false, null)
+    /**
+     * Blocks until faces are detected in [bitmap], must not be called from main thread.
+     * Returns null if detection fails.
+     */
+    fun getImageFeatures(bitmap: Bitmap): ImgUtils.ImageFeatures? {
+        return try {
+            val faces = Tasks.await(
+                faceDetector.process(InputImage.fromBitmap(bitmap, 0)),
+                PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS
+            )
+            var isSad = false
+            var isDistracted = false
+            var leftEyeOpen = false
+            var rightEyeOpen = false
+            faces.forEach {
+                face ->
+                face.smilingProbability?.let {
+                    if (it < 0.7) {
+                        isSad = true
                     }
-            } else {
-                log.warn("Failed to extract text from empty bitmap")
-                callback?.invoke(false, null)
-            }
-        } catch (e: IOException) {
-            log.warn("extract text from img ioexception", e)
-            callback?.invoke(true, null)
-            return
-        }
-    }
-
-    private fun getImageFeatures(
-        path: String,
-        callback: ((isSuccess: Boolean, imageFeatures: ImgUtils.ImageFeatures?) -> Unit)
-    ) {
-//            val image = InputImage.fromBitmap(bitmap, 0)
-        try {
-            TimeUnit.SECONDS.sleep(1L)
-//                val image = InputImage.fromFilePath(context, uri)
-            val mat = ImgUtils.readImage(path)
-            if (mat == null) {
-                log.warn("failure to find image analysis")
-                callback.invoke(false, null)
-                return
-            }
-            val resizeimage =
-                ImgUtils.resize(mat, ImgUtils.getGenericWidth(mat), ImgUtils.getGenericHeight(mat))
-            val bitmap = ImgUtils.convertMatToBitmap(resizeimage)
-            if (bitmap != null) {
-                val image = InputImage.fromBitmap(bitmap, 0)
-                faceDetector.process(image)
-                    .addOnSuccessListener { faces ->
-                        // Task completed successfully
-                        // ...
-                        var isSad = false
-                        var isDistracted = false
-                        var leftEyeOpen = false
-                        var rightEyeOpen = false
-                        faces.forEach {
-                            face ->
-                            face.smilingProbability?.let {
-                                if (it < 0.7) {
-                                    isSad = true
-                                }
-                            }
-                            if (face.headEulerAngleX > 36 || face.headEulerAngleX < -36 ||
-                                face.headEulerAngleY > 36 || face.headEulerAngleY < -36 ||
-                                face.headEulerAngleZ > 36 || face.headEulerAngleZ < -36
-                            ) {
-                                isDistracted = true
-                            }
-                            face.leftEyeOpenProbability?.let {
-                                if (it < 0.7) {
-                                    leftEyeOpen = true
-                                }
-                            }
-                            face.rightEyeOpenProbability?.let {
-                                if (it < 0.7) {
-                                    rightEyeOpen = true
-                                }
-                            }
-                        }
-                        mat.release()
-                        resizeimage.release()
-                        callback.invoke(
-                            true,
-                            ImgUtils.ImageFeatures(
-                                isSad, leftEyeOpen && rightEyeOpen,
-                                isDistracted, faces.count()
-                            )
-                        )
+                }
+                if (face.headEulerAngleX > 36 || face.headEulerAngleX < -36 ||
+                    face.headEulerAngleY > 36 || face.headEulerAngleY < -36 ||
+                    face.headEulerAngleZ > 36 || face.headEulerAngleZ < -36
+                ) {
+                    isDistracted = true
+                }
+                face.leftEyeOpenProbability?.let {
+                    if (it < 0.7) {
+                        leftEyeOpen = true
                     }
-                    .addOnFailureListener { e ->
-                        // Task failed with an exception
-                        // ...
-                        log.warn("get image features failure", e)
-                        mat.release()
-                        resizeimage.release()
-                        callback.invoke(false, null)
+                }
+                face.rightEyeOpenProbability?.let {
+                    if (it < 0.7) {
+                        rightEyeOpen = true
                     }
-            } else {
-                log.warn("failed to find features of empty bitmap")
-                mat.release()
-                resizeimage.release()
-                callback.invoke(false, null)
+                }
             }
+            ImgUtils.ImageFeatures(
+                isSad, leftEyeOpen && rightEyeOpen,
+                isDistracted, faces.count()
+            )
         } catch (e: Exception) {
-            log.warn("Failed to check for image features due to exception", e)
-            callback.invoke(false, null)
+            log.warn("get image features failure", e)
+            null
         } catch (oom: OutOfMemoryError) {
             log.warn("Failed to check for image features due to oom", oom)
-            callback.invoke(false, null)
+            null
         }
     }
 }